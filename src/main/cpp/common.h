@@ -6,12 +6,12 @@
 #import <numeric>
 #import <vector>
 
+#define LOG_TAG "OCR_NDK"
+
 #ifdef __ANDROID__
 
 #include <android/log.h>
 
-#define LOG_TAG "OCR_NDK"
-
 #define LOGI(...) __android_log_print(ANDROID_LOG_INFO, LOG_TAG, __VA_ARGS__)
 #define LOGW(...) __android_log_print(ANDROID_LOG_WARN, LOG_TAG, __VA_ARGS__)
 #define LOGE(...) __android_log_print(ANDROID_LOG_ERROR, LOG_TAG, __VA_ARGS__)
@@ -4,32 +4,162 @@
 
 #include "native.h"
 #include "ocr_ppredictor.h"
+#include "ocr_tracker.h"
+#include "preprocess.h"
 #include <algorithm>
+#include <android/asset_manager_jni.h>
+#include <memory>
 #include <paddle_api.h>
 #include <string>
 
 static paddle::lite_api::PowerMode str_to_cpu_mode(const std::string &cpu_mode);
 
+/**
+ * 从 APK assets 读取模型。未压缩存放的 asset 由 AAsset_getBuffer 直接映射，
+ * 只复制一次到 Paddle Lite 需要的 std::string；持有 AssetManager 的全局引用，
+ * 保证延迟加载时仍然有效
+ */
+class AssetReader {
+public:
+  AssetReader(JNIEnv *env, jobject manager) {
+    env->GetJavaVM(&_vm);
+    _manager_ref = env->NewGlobalRef(manager);
+    _manager = AAssetManager_fromJava(env, _manager_ref);
+  }
+
+  ~AssetReader() {
+    JNIEnv *env = nullptr;
+    if (_vm->GetEnv(reinterpret_cast<void **>(&env), JNI_VERSION_1_6) ==
+        JNI_OK) {
+      env->DeleteGlobalRef(_manager_ref);
+    }
+  }
+
+  bool read(const std::string &name, std::string &content) const {
+    AAsset *asset =
+        AAssetManager_open(_manager, name.c_str(), AASSET_MODE_BUFFER);
+    if (asset == nullptr) {
+      LOGE("open asset %s failed", name.c_str());
+      return false;
+    }
+    const void *buffer = AAsset_getBuffer(asset);
+    if (buffer != nullptr) {
+      content.assign(static_cast<const char *>(buffer),
+                     size_t(AAsset_getLength64(asset)));
+      if (AAsset_isAllocated(asset)) {
+        // 压缩存放时需先整体解压，应在 build.gradle 中设置 noCompress
+        LOGI("asset %s is compressed in apk", name.c_str());
+      }
+    } else {
+      LOGE("read asset %s failed", name.c_str());
+    }
+    AAsset_close(asset);
+    return buffer != nullptr;
+  }
+
+private:
+  JavaVM *_vm = nullptr;
+  jobject _manager_ref = nullptr;
+  AAssetManager *_manager = nullptr;
+};
+
 extern "C" JNIEXPORT jlong JNICALL
 Java_com_fsyang_paddleocr_OCRPredictorNative_init(
-    JNIEnv *env, jobject thiz, jstring j_det_model_path,
-    jstring j_rec_model_path, jstring j_cls_model_path, jint j_use_opencl, jint j_thread_num,
-    jstring j_cpu_mode) {
+    JNIEnv *env, jobject thiz, jobject j_asset_manager, jstring j_det_model_path,
+    jstring j_rec_model_path, jstring j_cls_model_path, jstring j_label_path,
+    jint j_use_opencl, jint j_thread_num, jint j_det_thread_num,
+    jint j_rec_thread_num, jint j_cls_thread_num, jint j_rec_batch_num,
+    jint j_rec_worker_num, jint j_rec_width_step, jint j_rec_max_width,
+    jlong j_rec_cache_bytes, jint j_det_worker_num, jint j_det_tile_size, jint j_det_tile_overlap,
+    jint j_det_probe_size, jint j_det_min_text_height, jint j_det_auto_max_size,
+    jfloat j_det_threshold, jfloat j_det_box_thresh, jfloat j_det_unclip_ratio,
+    jint j_det_max_candidates, jint j_det_min_size, jint j_det_score_mode,
+    jint j_preload_stages, jstring j_cpu_mode) {
   std::string det_model_path = jstring_to_cpp_string(env, j_det_model_path);
   std::string rec_model_path = jstring_to_cpp_string(env, j_rec_model_path);
   std::string cls_model_path = jstring_to_cpp_string(env, j_cls_model_path);
+  std::string label_path = jstring_to_cpp_string(env, j_label_path);
   int thread_num = j_thread_num;
   std::string cpu_mode = jstring_to_cpp_string(env, j_cpu_mode);
   ppredictor::OCR_Config conf;
   conf.use_opencl = j_use_opencl;
   conf.thread_num = thread_num;
+  conf.det_thread_num = j_det_thread_num;
+  conf.rec_thread_num = j_rec_thread_num;
+  conf.cls_thread_num = j_cls_thread_num;
+  conf.rec_batch_num = j_rec_batch_num;
+  conf.rec_worker_num = j_rec_worker_num;
+  conf.rec_width_step = j_rec_width_step;
+  conf.rec_max_width = j_rec_max_width;
+  conf.rec_cache_bytes = j_rec_cache_bytes;
+  conf.det_worker_num = j_det_worker_num;
+  conf.det_tile_size = j_det_tile_size;
+  conf.det_tile_overlap = j_det_tile_overlap;
+  conf.det_probe_size = j_det_probe_size;
+  conf.det_min_text_height = j_det_min_text_height;
+  conf.det_auto_max_size = j_det_auto_max_size;
+  conf.det.threshold = j_det_threshold;
+  conf.det.box_thresh = j_det_box_thresh;
+  conf.det.unclip_ratio = j_det_unclip_ratio;
+  conf.det.max_candidates = j_det_max_candidates;
+  conf.det.min_size = j_det_min_size;
+  conf.det.score_mode = j_det_score_mode;
+  conf.preload_stages = j_preload_stages;
   conf.mode = str_to_cpu_mode(cpu_mode);
   ppredictor::OCR_PPredictor *orc_predictor =
       new ppredictor::OCR_PPredictor{conf};
-  orc_predictor->init_from_file(det_model_path, rec_model_path, cls_model_path);
+  int ret;
+  if (j_asset_manager != nullptr) {
+    // 路径为 assets 中的路径，模型在各阶段首次使用时才读取
+    std::shared_ptr<AssetReader> reader =
+        std::make_shared<AssetReader>(env, j_asset_manager);
+    ret = orc_predictor->init_from_reader(
+        [reader](const std::string &name, std::string &content) {
+          return reader->read(name, content);
+        },
+        det_model_path, rec_model_path, cls_model_path);
+    std::string label;
+    if (ret == RETURN_OK && !label_path.empty() &&
+        (!reader->read(label_path, label) ||
+         orc_predictor->init_dict(label) != RETURN_OK)) {
+      LOGE("ocr cpp load dict %s failed", label_path.c_str());
+      ret = -1;
+    }
+  } else {
+    ret = orc_predictor->init_from_file(det_model_path, rec_model_path,
+                                        cls_model_path);
+    if (ret == RETURN_OK && !label_path.empty() &&
+        orc_predictor->init_dict_from_file(label_path) != RETURN_OK) {
+      LOGE("ocr cpp load dict %s failed", label_path.c_str());
+      ret = -1;
+    }
+  }
+  // 预加载的模型或字典加载失败时 java 层收到 0
+  if (ret != RETURN_OK) {
+    LOGE("ocr cpp init failed, preload stages %d", (int)j_preload_stages);
+    delete orc_predictor;
+    return 0;
+  }
   return reinterpret_cast<jlong>(orc_predictor);
 }
 
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_clonePredictor(
+    JNIEnv *env, jobject thiz, jlong java_pointer) {
+  if (java_pointer == 0) {
+    LOGE("JAVA pointer is NULL");
+    return 0;
+  }
+  ppredictor::OCR_PPredictor *ppredictor =
+      (ppredictor::OCR_PPredictor *)java_pointer;
+  std::unique_ptr<ppredictor::OCR_PPredictor> cloned = ppredictor->clone();
+  if (!cloned) {
+    LOGE("ocr cpp clone predictor failed");
+    return 0;
+  }
+  return reinterpret_cast<jlong>(cloned.release());
+}
+
 /**
  * "LITE_POWER_HIGH" convert to paddle::lite_api::LITE_POWER_HIGH
  * @param cpu_mode
@@ -56,19 +186,220 @@ str_to_cpu_mode(const std::string &cpu_mode) {
   }
 }
 
-extern "C" JNIEXPORT jfloatArray JNICALL
-Java_com_fsyang_paddleocr_OCRPredictorNative_forward(
-    JNIEnv *env, jobject thiz, jlong java_pointer, jobject original_image,jint j_max_size_len, jint j_run_det, jint j_run_cls, jint j_run_rec) {
-  LOGI("begin to run native forward");
-  if (java_pointer == 0) {
-    LOGE("JAVA pointer is NULL");
-    return cpp_array_to_jfloatarray(env, nullptr, 0);
+/**
+ * 结果缓冲区布局（与 OcrResultBuffer.java 保持一致，均为本机字节序）
+ * header: int32 version, int32 header_bytes, int32 byte_length, int32 box_count,
+ *         int32 cls_policy, int32 cls_runs, int32 cls_skipped, int32 page_cls_label,
+ *         int32 det_size
+ *         （header_bytes 之后的字段为追加字段，读取方按 header_bytes 跳过不认识的部分）
+ * record: int32 point_num, int32 word_num, int32 text_bytes, float32 score,
+ *         int32 cls_label, float32 cls_score, int32 points[point_num * 2],
+ *         int32 words[word_num], uint8 text[text_bytes]（补齐到 4 字节）
+ */
+static const int32_t RESULT_BUFFER_VERSION = 2;
+static const int32_t RESULT_HEADER_BYTES = 9 * sizeof(int32_t);
+static const int32_t RESULT_RECORD_BYTES = 6 * sizeof(int32_t);
+
+static inline size_t align4(size_t size) { return (size + 3) & ~(size_t)3; }
+
+static size_t
+result_buffer_size(const std::vector<ppredictor::OCRPredictResult> &results) {
+  size_t size = RESULT_HEADER_BYTES;
+  for (const ppredictor::OCRPredictResult &r : results) {
+    size += RESULT_RECORD_BYTES;
+    size += (r.points.size() * 2 + r.word_index.size()) * sizeof(int32_t);
+    size += align4(r.text.size());
+  }
+  return size;
+}
+
+template <typename T> static inline uint8_t *put(uint8_t *dst, T value) {
+  memcpy(dst, &value, sizeof(T));
+  return dst + sizeof(T);
+}
+
+static void
+write_result_buffer(const std::vector<ppredictor::OCRPredictResult> &results,
+                    const ppredictor::OCR_PageInfo &page, size_t byte_length,
+                    uint8_t *dst) {
+  dst = put<int32_t>(dst, RESULT_BUFFER_VERSION);
+  dst = put<int32_t>(dst, RESULT_HEADER_BYTES);
+  dst = put<int32_t>(dst, (int32_t)byte_length);
+  dst = put<int32_t>(dst, (int32_t)results.size());
+  dst = put<int32_t>(dst, page.cls_policy);
+  dst = put<int32_t>(dst, page.cls_runs);
+  dst = put<int32_t>(dst, page.cls_skipped);
+  dst = put<int32_t>(dst, page.page_cls_label);
+  dst = put<int32_t>(dst, page.det_size);
+  for (const ppredictor::OCRPredictResult &r : results) {
+    dst = put<int32_t>(dst, (int32_t)r.points.size());
+    dst = put<int32_t>(dst, (int32_t)r.word_index.size());
+    dst = put<int32_t>(dst, (int32_t)r.text.size());
+    dst = put<float>(dst, r.score);
+    dst = put<int32_t>(dst, r.cls_label);
+    dst = put<float>(dst, r.cls_score);
+    for (const std::vector<int> &point : r.points) {
+      dst = put<int32_t>(dst, point.at(0));
+      dst = put<int32_t>(dst, point.at(1));
+    }
+    for (int index : r.word_index) {
+      dst = put<int32_t>(dst, index);
+    }
+    size_t padded = align4(r.text.size());
+    memcpy(dst, r.text.data(), r.text.size());
+    memset(dst + r.text.size(), 0, padded - r.text.size());
+    dst += padded;
   }
+}
 
-  cv::Mat origin = bitmap_to_cv_mat(env, original_image);
-  if (origin.size == 0) {
-    LOGE("origin bitmap cannot convert to CV Mat");
-    return cpp_array_to_jfloatarray(env, nullptr, 0);
+/**
+ * 将结果写入调用方提供的 direct ByteBuffer。
+ * 容量不足时结果暂存在 predictor 中，返回所需字节数的相反数，
+ * java 层扩容后调用 fetchPending 取回，无需重新推理。
+ */
+static jint
+emit_results(JNIEnv *env, std::vector<uint8_t> &pending,
+             const std::vector<ppredictor::OCRPredictResult> &results,
+             const ppredictor::OCR_PageInfo &page, jobject j_out) {
+  size_t byte_length = result_buffer_size(results);
+  uint8_t *dst = reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(j_out));
+  jlong capacity = env->GetDirectBufferCapacity(j_out);
+  if (dst != nullptr && capacity >= (jlong)byte_length) {
+    write_result_buffer(results, page, byte_length, dst);
+    return (jint)byte_length;
+  }
+  pending.resize(byte_length);
+  write_result_buffer(results, page, byte_length, pending.data());
+  return -(jint)byte_length;
+}
+
+static jint fetch_pending(JNIEnv *env, std::vector<uint8_t> &pending,
+                          jobject j_out) {
+  uint8_t *dst = reinterpret_cast<uint8_t *>(env->GetDirectBufferAddress(j_out));
+  jlong capacity = env->GetDirectBufferCapacity(j_out);
+  if (dst == nullptr || capacity < (jlong)pending.size()) {
+    LOGE("result buffer too small: %ld < %ld", (long)capacity,
+         (long)pending.size());
+    return -(jint)pending.size();
+  }
+  memcpy(dst, pending.data(), pending.size());
+  jint written = (jint)pending.size();
+  pending.clear();
+  return written;
+}
+
+/**
+ * 将 origin 上的坐标还原到调用方坐标系（roi 识别时）
+ */
+static void apply_offset(std::vector<ppredictor::OCRPredictResult> &results,
+                         const cv::Point &offset) {
+  if (offset.x == 0 && offset.y == 0) {
+    return;
+  }
+  for (ppredictor::OCRPredictResult &r : results) {
+    for (std::vector<int> &point : r.points) {
+      point[0] += offset.x;
+      point[1] += offset.y;
+    }
+  }
+}
+
+/**
+ * 以下三个函数将各种输入转换为 BGR 图像，只转换 roi 区域
+ * @param offset 返回 origin 左上角在调用方坐标系中的位置
+ */
+static cv::Mat bitmap_origin(JNIEnv *env, jobject bitmap, jint roi_x,
+                             jint roi_y, jint roi_width, jint roi_height,
+                             cv::Point &offset) {
+  cv::Rect roi(roi_x, roi_y, roi_width, roi_height);
+  cv::Mat origin = bitmap_to_cv_mat(env, bitmap, roi);
+  offset = roi.tl();
+  return origin;
+}
+
+static cv::Mat yuv_origin(JNIEnv *env, jobject j_y, jobject j_u, jobject j_v,
+                          jint y_row_stride, jint uv_row_stride,
+                          jint uv_pixel_stride, jint width, jint height,
+                          jint rotation, jint roi_x, jint roi_y,
+                          jint roi_width, jint roi_height, cv::Point &offset) {
+  const uint8_t *y =
+      reinterpret_cast<const uint8_t *>(env->GetDirectBufferAddress(j_y));
+  const uint8_t *u =
+      reinterpret_cast<const uint8_t *>(env->GetDirectBufferAddress(j_u));
+  const uint8_t *v =
+      reinterpret_cast<const uint8_t *>(env->GetDirectBufferAddress(j_v));
+  // roi 为旋转后坐标，映射回传感器坐标后只转换对应的平面区域
+  cv::Rect src = source_roi(cv::Rect(roi_x, roi_y, roi_width, roi_height),
+                            rotation, width, height, true);
+  offset = rotate_rect(src, rotation, width, height).tl();
+  if (y == nullptr || u == nullptr || v == nullptr) {
+    LOGE("yuv planes must be direct ByteBuffers");
+    return cv::Mat();
+  }
+  // 按整帧尺寸校验三个平面的容量，roi 只会访问其中一部分
+  size_t y_bytes = plane_bytes(y_row_stride, width, height);
+  size_t uv_bytes = uv_pixel_stride > 0
+                        ? plane_bytes(uv_row_stride,
+                                      uv_pixel_stride * (width / 2 - 1) + 1,
+                                      height / 2)
+                        : 0;
+  if (y_bytes == 0 || uv_bytes == 0 ||
+      env->GetDirectBufferCapacity(j_y) < jlong(y_bytes) ||
+      env->GetDirectBufferCapacity(j_u) < jlong(uv_bytes) ||
+      env->GetDirectBufferCapacity(j_v) < jlong(uv_bytes)) {
+    LOGE("yuv planes too small for %dx%d, strides %d/%d/%d", width, height,
+         y_row_stride, uv_row_stride, uv_pixel_stride);
+    return cv::Mat();
+  }
+  if (src.empty()) {
+    return cv::Mat();
+  }
+  size_t uv_offset =
+      (src.y / 2) * uv_row_stride + (src.x / 2) * uv_pixel_stride;
+  return rotate_img(yuv420_to_cv_mat(y + src.y * y_row_stride + src.x,
+                                     u + uv_offset, v + uv_offset,
+                                     y_row_stride, uv_row_stride,
+                                     uv_pixel_stride, src.width, src.height),
+                    rotation);
+}
+
+static cv::Mat pixels_origin(JNIEnv *env, jobject j_data, jint format,
+                             jint width, jint height, jint row_stride,
+                             jint rotation, jint roi_x, jint roi_y,
+                             jint roi_width, jint roi_height,
+                             cv::Point &offset) {
+  const uint8_t *data =
+      reinterpret_cast<const uint8_t *>(env->GetDirectBufferAddress(j_data));
+  cv::Rect src = source_roi(cv::Rect(roi_x, roi_y, roi_width, roi_height),
+                            rotation, width, height,
+                            format == IMAGE_FORMAT_NV21);
+  offset = rotate_rect(src, rotation, width, height).tl();
+  if (data == nullptr) {
+    LOGE("image data must be a direct ByteBuffer");
+    return cv::Mat();
+  }
+  if (src.empty()) {
+    return cv::Mat();
+  }
+  return rotate_img(
+      buffer_to_cv_mat(data, size_t(env->GetDirectBufferCapacity(j_data)),
+                       format, width, height, row_stride, src),
+      rotation);
+}
+
+/**
+ * @param offset origin 左上角在调用方坐标系中的位置（roi 识别时用于还原坐标）
+ */
+static jint run_forward(JNIEnv *env, jlong java_pointer, cv::Mat &origin,
+                        const cv::Point &offset, jint j_max_size_len,
+                        jint j_run_det, jint j_run_cls, jint j_run_rec,
+                        jobject j_out) {
+  ppredictor::OCR_PPredictor *ppredictor =
+      (ppredictor::OCR_PPredictor *)java_pointer;
+  if (origin.empty()) {
+    LOGE("origin image cannot convert to CV Mat");
+    return emit_results(env, ppredictor->pending_payload(), {},
+                        ppredictor::OCR_PageInfo(), j_out);
   }
 
   int max_size_len = j_max_size_len;
@@ -76,34 +407,449 @@ Java_com_fsyang_paddleocr_OCRPredictorNative_forward(
   int run_cls = j_run_cls;
   int run_rec = j_run_rec;
 
-  ppredictor::OCR_PPredictor *ppredictor =
-      (ppredictor::OCR_PPredictor *)java_pointer;
-  std::vector<int64_t> dims_arr;
-  std::vector<ppredictor::OCRPredictResult> results =
+  // 结果由 predictor 持有并跨帧复用，这里只取引用
+  std::vector<ppredictor::OCRPredictResult> &results =
       ppredictor->infer_ocr(origin, max_size_len, run_det, run_cls, run_rec);
   LOGI("infer_ocr finished with boxes %ld", results.size());
+  apply_offset(results, offset);
+  return emit_results(env, ppredictor->pending_payload(), results,
+                      ppredictor->page_info(), j_out);
+}
 
-  // 这里将std::vector<ppredictor::OCRPredictResult> 序列化成
-  // float数组，传输到java层再反序列化
-  std::vector<float> float_arr;
-  for (const ppredictor::OCRPredictResult &r : results) {
-    float_arr.push_back(r.points.size());
-    float_arr.push_back(r.word_index.size());
-    float_arr.push_back(r.score);
-    // add det point
-    for (const std::vector<int> &point : r.points) {
-      float_arr.push_back(point.at(0));
-      float_arr.push_back(point.at(1));
-    }
-    // add rec word idx
-    for (int index : r.word_index) {
-      float_arr.push_back(index);
-    }
-    // add cls result
-    float_arr.push_back(r.cls_label);
-    float_arr.push_back(r.cls_score);
+extern "C" JNIEXPORT jint JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_forwardBuffer(
+    JNIEnv *env, jobject thiz, jlong java_pointer, jobject original_image,
+    jint j_roi_x, jint j_roi_y, jint j_roi_width, jint j_roi_height,
+    jint j_max_size_len, jint j_run_det, jint j_run_cls, jint j_run_rec,
+    jobject j_out) {
+  LOGI("begin to run native forward");
+  if (java_pointer == 0) {
+    LOGE("JAVA pointer is NULL");
+    return 0;
+  }
+  // 只转换 roi 区域，检测/识别直接在该区域上进行
+  cv::Point offset;
+  cv::Mat origin = bitmap_origin(env, original_image, j_roi_x, j_roi_y,
+                                 j_roi_width, j_roi_height, offset);
+  return run_forward(env, java_pointer, origin, offset, j_max_size_len,
+                     j_run_det, j_run_cls, j_run_rec, j_out);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_forwardYuv(
+    JNIEnv *env, jobject thiz, jlong java_pointer, jobject j_y, jobject j_u,
+    jobject j_v, jint j_y_row_stride, jint j_uv_row_stride,
+    jint j_uv_pixel_stride, jint j_width, jint j_height, jint j_rotation,
+    jint j_roi_x, jint j_roi_y, jint j_roi_width, jint j_roi_height,
+    jint j_max_size_len, jint j_run_det, jint j_run_cls, jint j_run_rec,
+    jobject j_out) {
+  LOGI("begin to run native forward yuv");
+  if (java_pointer == 0) {
+    LOGE("JAVA pointer is NULL");
+    return 0;
+  }
+  cv::Point offset;
+  cv::Mat origin = yuv_origin(env, j_y, j_u, j_v, j_y_row_stride,
+                              j_uv_row_stride, j_uv_pixel_stride, j_width,
+                              j_height, j_rotation, j_roi_x, j_roi_y,
+                              j_roi_width, j_roi_height, offset);
+  return run_forward(env, java_pointer, origin, offset, j_max_size_len,
+                     j_run_det, j_run_cls, j_run_rec, j_out);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_forwardPixels(
+    JNIEnv *env, jobject thiz, jlong java_pointer, jobject j_data,
+    jint j_format, jint j_width, jint j_height, jint j_row_stride,
+    jint j_rotation, jint j_roi_x, jint j_roi_y, jint j_roi_width,
+    jint j_roi_height, jint j_max_size_len, jint j_run_det, jint j_run_cls,
+    jint j_run_rec, jobject j_out) {
+  LOGI("begin to run native forward buffer, format %d", j_format);
+  if (java_pointer == 0) {
+    LOGE("JAVA pointer is NULL");
+    return 0;
+  }
+  cv::Point offset;
+  cv::Mat origin = pixels_origin(env, j_data, j_format, j_width, j_height,
+                                 j_row_stride, j_rotation, j_roi_x, j_roi_y,
+                                 j_roi_width, j_roi_height, offset);
+  return run_forward(env, java_pointer, origin, offset, j_max_size_len,
+                     j_run_det, j_run_cls, j_run_rec, j_out);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_fetchPending(
+    JNIEnv *env, jobject thiz, jlong java_pointer, jobject j_out) {
+  if (java_pointer == 0) {
+    LOGE("JAVA pointer is NULL");
+    return 0;
+  }
+  ppredictor::OCR_PPredictor *ppredictor =
+      (ppredictor::OCR_PPredictor *)java_pointer;
+  return fetch_pending(env, ppredictor->pending_payload(), j_out);
+}
+
+/**
+ * 流水线模式：job 在 java 层的 det/cls/rec 三个线程之间传递，
+ * 输入在提交线程中转换并由 job 持有，各阶段只访问 predictor 中对应阶段的资源
+ */
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_createJob(JNIEnv *env,
+                                                       jobject thiz) {
+  return reinterpret_cast<jlong>(new ppredictor::OCR_Job());
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_releaseJob(JNIEnv *env,
+                                                        jobject thiz,
+                                                        jlong java_job) {
+  delete reinterpret_cast<ppredictor::OCR_Job *>(java_job);
+}
+
+static jboolean prepare_job(jlong java_job, cv::Mat &origin,
+                            const cv::Point &offset, jint j_max_size_len,
+                            jint j_run_det, jint j_run_cls, jint j_run_rec) {
+  ppredictor::OCR_Job *job = reinterpret_cast<ppredictor::OCR_Job *>(java_job);
+  if (job == nullptr) {
+    LOGE("job pointer is NULL");
+    return JNI_FALSE;
+  }
+  // 后续阶段在其他线程中执行，不能引用调用方的内存
+  if (!origin.empty() && origin.u == nullptr) {
+    origin = origin.clone();
+  }
+  job->origin = origin;
+  job->offset = offset;
+  job->max_size_len = j_max_size_len;
+  job->run_det = j_run_det;
+  job->run_cls = j_run_cls;
+  job->run_rec = j_run_rec;
+  if (origin.empty()) {
+    LOGE("origin image cannot convert to CV Mat");
+    return JNI_FALSE;
+  }
+  return JNI_TRUE;
+}
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_prepareJob(
+    JNIEnv *env, jobject thiz, jlong java_job, jobject original_image,
+    jint j_roi_x, jint j_roi_y, jint j_roi_width, jint j_roi_height,
+    jint j_max_size_len, jint j_run_det, jint j_run_cls, jint j_run_rec) {
+  cv::Point offset;
+  cv::Mat origin = bitmap_origin(env, original_image, j_roi_x, j_roi_y,
+                                 j_roi_width, j_roi_height, offset);
+  return prepare_job(java_job, origin, offset, j_max_size_len, j_run_det,
+                     j_run_cls, j_run_rec);
+}
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_prepareJobYuv(
+    JNIEnv *env, jobject thiz, jlong java_job, jobject j_y, jobject j_u,
+    jobject j_v, jint j_y_row_stride, jint j_uv_row_stride,
+    jint j_uv_pixel_stride, jint j_width, jint j_height, jint j_rotation,
+    jint j_roi_x, jint j_roi_y, jint j_roi_width, jint j_roi_height,
+    jint j_max_size_len, jint j_run_det, jint j_run_cls, jint j_run_rec) {
+  cv::Point offset;
+  cv::Mat origin = yuv_origin(env, j_y, j_u, j_v, j_y_row_stride,
+                              j_uv_row_stride, j_uv_pixel_stride, j_width,
+                              j_height, j_rotation, j_roi_x, j_roi_y,
+                              j_roi_width, j_roi_height, offset);
+  return prepare_job(java_job, origin, offset, j_max_size_len, j_run_det,
+                     j_run_cls, j_run_rec);
+}
+
+extern "C" JNIEXPORT jboolean JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_prepareJobPixels(
+    JNIEnv *env, jobject thiz, jlong java_job, jobject j_data, jint j_format,
+    jint j_width, jint j_height, jint j_row_stride, jint j_rotation,
+    jint j_roi_x, jint j_roi_y, jint j_roi_width, jint j_roi_height,
+    jint j_max_size_len, jint j_run_det, jint j_run_cls, jint j_run_rec) {
+  cv::Point offset;
+  cv::Mat origin = pixels_origin(env, j_data, j_format, j_width, j_height,
+                                 j_row_stride, j_rotation, j_roi_x, j_roi_y,
+                                 j_roi_width, j_roi_height, offset);
+  return prepare_job(java_job, origin, offset, j_max_size_len, j_run_det,
+                     j_run_cls, j_run_rec);
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_runDetStage(
+    JNIEnv *env, jobject thiz, jlong java_pointer, jlong java_job) {
+  if (java_pointer == 0 || java_job == 0) {
+    LOGE("JAVA pointer is NULL");
+    return;
+  }
+  ((ppredictor::OCR_PPredictor *)java_pointer)
+      ->run_det_stage(*reinterpret_cast<ppredictor::OCR_Job *>(java_job));
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_runClsStage(
+    JNIEnv *env, jobject thiz, jlong java_pointer, jlong java_job) {
+  if (java_pointer == 0 || java_job == 0) {
+    LOGE("JAVA pointer is NULL");
+    return;
+  }
+  ((ppredictor::OCR_PPredictor *)java_pointer)
+      ->run_cls_stage(*reinterpret_cast<ppredictor::OCR_Job *>(java_job));
+}
+
+/**
+ * 执行 rec 阶段并写出结果，写出后释放 job 持有的图像
+ */
+extern "C" JNIEXPORT jint JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_runRecStage(
+    JNIEnv *env, jobject thiz, jlong java_pointer, jlong java_job,
+    jobject j_out) {
+  if (java_pointer == 0 || java_job == 0) {
+    LOGE("JAVA pointer is NULL");
+    return 0;
+  }
+  ppredictor::OCR_Job *job = reinterpret_cast<ppredictor::OCR_Job *>(java_job);
+  ((ppredictor::OCR_PPredictor *)java_pointer)->run_rec_stage(*job);
+  apply_offset(job->results, job->offset);
+  job->origin = cv::Mat();
+  return emit_results(env, job->pending_payload, job->results, job->page,
+                      j_out);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_fetchJobPending(
+    JNIEnv *env, jobject thiz, jlong java_job, jobject j_out) {
+  if (java_job == 0) {
+    LOGE("job pointer is NULL");
+    return 0;
+  }
+  return fetch_pending(
+      env, reinterpret_cast<ppredictor::OCR_Job *>(java_job)->pending_payload,
+      j_out);
+}
+
+/**
+ * 结果缓存用的 dHash，失败时返回 0（与纯色图像的哈希相同，调用方视为不缓存）
+ */
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_hashBitmap(
+    JNIEnv *env, jclass clazz, jobject bitmap, jint j_roi_x, jint j_roi_y,
+    jint j_roi_width, jint j_roi_height) {
+  uint64_t hash = 0;
+  if (!bitmap_dhash(env, bitmap,
+                    cv::Rect(j_roi_x, j_roi_y, j_roi_width, j_roi_height),
+                    hash)) {
+    return 0;
+  }
+  return (jlong)hash;
+}
+
+/**
+ * 相机帧只用 Y 平面计算，roi 为旋转后坐标；哈希在传感器方向上计算，旋转角度需计入缓存键
+ */
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_hashYuv(
+    JNIEnv *env, jclass clazz, jobject j_y, jint j_y_row_stride, jint j_width,
+    jint j_height, jint j_rotation, jint j_roi_x, jint j_roi_y,
+    jint j_roi_width, jint j_roi_height) {
+  const uint8_t *y =
+      reinterpret_cast<const uint8_t *>(env->GetDirectBufferAddress(j_y));
+  if (y == nullptr) {
+    LOGE("y plane must be a direct ByteBuffer");
+    return 0;
+  }
+  size_t y_bytes = plane_bytes(j_y_row_stride, j_width, j_height);
+  if (y_bytes == 0 || env->GetDirectBufferCapacity(j_y) < jlong(y_bytes)) {
+    LOGE("y plane too small for %dx%d, stride %d", j_width, j_height,
+         j_y_row_stride);
+    return 0;
+  }
+  cv::Rect src = source_roi(cv::Rect(j_roi_x, j_roi_y, j_roi_width, j_roi_height),
+                            j_rotation, j_width, j_height, false);
+  if (src.empty()) {
+    return 0;
+  }
+  cv::Mat plane(j_height, j_width, CV_8UC1, const_cast<uint8_t *>(y),
+                j_y_row_stride);
+  return (jlong)dhash(plane(src), -1);
+}
+
+/**
+ * 跟踪模式：tracker 由 java 层的 OcrTrackingSession 持有，每帧与其独占的 predictor 一起传入
+ */
+extern "C" JNIEXPORT jlong JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_createTracker(
+    JNIEnv *env, jobject thiz, jint j_det_interval, jfloat j_min_track_ratio,
+    jfloat j_content_diff) {
+  ppredictor::OCR_TrackerConfig config;
+  config.det_interval = j_det_interval;
+  config.min_track_ratio = j_min_track_ratio;
+  config.content_diff = j_content_diff;
+  return reinterpret_cast<jlong>(new ppredictor::OCR_Tracker(config));
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_releaseTracker(
+    JNIEnv *env, jobject thiz, jlong java_tracker) {
+  delete reinterpret_cast<ppredictor::OCR_Tracker *>(java_tracker);
+}
+
+extern "C" JNIEXPORT void JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_resetTracker(
+    JNIEnv *env, jobject thiz, jlong java_tracker) {
+  if (java_tracker == 0) {
+    LOGE("tracker pointer is NULL");
+    return;
+  }
+  reinterpret_cast<ppredictor::OCR_Tracker *>(java_tracker)->reset();
+}
+
+static jint run_track(JNIEnv *env, jlong java_pointer, jlong java_tracker,
+                      cv::Mat &origin, const cv::Point &offset,
+                      jint j_max_size_len, jint j_run_cls, jobject j_out) {
+  ppredictor::OCR_PPredictor *ppredictor =
+      (ppredictor::OCR_PPredictor *)java_pointer;
+  ppredictor::OCR_Tracker *tracker =
+      reinterpret_cast<ppredictor::OCR_Tracker *>(java_tracker);
+  if (origin.empty()) {
+    LOGE("origin image cannot convert to CV Mat");
+    return emit_results(env, tracker->pending_payload(), {},
+                        ppredictor::OCR_PageInfo(), j_out);
+  }
+  // 结果由 tracker 每帧重新生成，可直接还原坐标
+  std::vector<ppredictor::OCRPredictResult> &results =
+      tracker->track(*ppredictor, origin, j_max_size_len, j_run_cls);
+  apply_offset(results, offset);
+  return emit_results(env, tracker->pending_payload(), results,
+                      tracker->page_info(), j_out);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_trackBuffer(
+    JNIEnv *env, jobject thiz, jlong java_pointer, jlong java_tracker,
+    jobject original_image, jint j_roi_x, jint j_roi_y, jint j_roi_width,
+    jint j_roi_height, jint j_max_size_len, jint j_run_cls, jobject j_out) {
+  if (java_pointer == 0 || java_tracker == 0) {
+    LOGE("JAVA pointer is NULL");
+    return 0;
+  }
+  cv::Point offset;
+  cv::Mat origin = bitmap_origin(env, original_image, j_roi_x, j_roi_y,
+                                 j_roi_width, j_roi_height, offset);
+  return run_track(env, java_pointer, java_tracker, origin, offset,
+                   j_max_size_len, j_run_cls, j_out);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_trackYuv(
+    JNIEnv *env, jobject thiz, jlong java_pointer, jlong java_tracker,
+    jobject j_y, jobject j_u, jobject j_v, jint j_y_row_stride,
+    jint j_uv_row_stride, jint j_uv_pixel_stride, jint j_width, jint j_height,
+    jint j_rotation, jint j_roi_x, jint j_roi_y, jint j_roi_width,
+    jint j_roi_height, jint j_max_size_len, jint j_run_cls, jobject j_out) {
+  if (java_pointer == 0 || java_tracker == 0) {
+    LOGE("JAVA pointer is NULL");
+    return 0;
+  }
+  cv::Point offset;
+  cv::Mat origin = yuv_origin(env, j_y, j_u, j_v, j_y_row_stride,
+                              j_uv_row_stride, j_uv_pixel_stride, j_width,
+                              j_height, j_rotation, j_roi_x, j_roi_y,
+                              j_roi_width, j_roi_height, offset);
+  return run_track(env, java_pointer, java_tracker, origin, offset,
+                   j_max_size_len, j_run_cls, j_out);
+}
+
+extern "C" JNIEXPORT jint JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_fetchTrackerPending(
+    JNIEnv *env, jobject thiz, jlong java_tracker, jobject j_out) {
+  if (java_tracker == 0) {
+    LOGE("tracker pointer is NULL");
+    return 0;
+  }
+  return fetch_pending(
+      env,
+      reinterpret_cast<ppredictor::OCR_Tracker *>(java_tracker)
+          ->pending_payload(),
+      j_out);
+}
+
+/**
+ * 跟踪统计，下标与 OcrTrackingSession.Stats 保持一致
+ */
+enum TRACKER_STATS {
+  TRACKER_FRAMES,
+  TRACKER_DET_FRAMES,
+  TRACKER_REC_LINES,
+  TRACKER_REUSED_LINES,
+  TRACKER_STATS_NUM
+};
+
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_trackerStats(
+    JNIEnv *env, jobject thiz, jlong java_tracker) {
+  std::vector<int64_t> stats(TRACKER_STATS_NUM, 0);
+  if (java_tracker == 0) {
+    LOGE("tracker pointer is NULL");
+  } else {
+    const ppredictor::OCR_Tracker::Stats &tracker_stats =
+        reinterpret_cast<ppredictor::OCR_Tracker *>(java_tracker)->stats();
+    stats[TRACKER_FRAMES] = tracker_stats.frames;
+    stats[TRACKER_DET_FRAMES] = tracker_stats.det_frames;
+    stats[TRACKER_REC_LINES] = tracker_stats.rec_lines;
+    stats[TRACKER_REUSED_LINES] = tracker_stats.reused_lines;
+  }
+  return int64_vector_to_jlongarray(env, stats);
+}
+
+/**
+ * 运行时统计，下标与 OcrNativeStats.java 保持一致
+ */
+enum NATIVE_STATS {
+  STATS_ARENA_BYTES,
+  STATS_ARENA_REALLOCS,
+  STATS_REC_WORKERS,
+  STATS_REC_WALL_NS,
+  STATS_REC_BUSY_NS,
+  STATS_REC_CAPACITY_NS,
+  STATS_REC_LINES,
+  STATS_REC_BATCHES,
+  STATS_REC_SHAPE_CHANGES,
+  STATS_REC_CACHE_HITS,
+  STATS_REC_CACHE_SAVED_NS,
+  STATS_DET_LOAD_NS,
+  STATS_REC_LOAD_NS,
+  STATS_CLS_LOAD_NS,
+  STATS_FIRST_DET_NS,
+  STATS_NUM
+};
+
+extern "C" JNIEXPORT jlongArray JNICALL
+Java_com_fsyang_paddleocr_OCRPredictorNative_stats(JNIEnv *env, jobject thiz,
+                                                   jlong java_pointer) {
+  std::vector<int64_t> stats(STATS_NUM, 0);
+  if (java_pointer == 0) {
+    LOGE("JAVA pointer is NULL");
+  } else {
+    ppredictor::OCR_PPredictor *ppredictor =
+        (ppredictor::OCR_PPredictor *)java_pointer;
+    stats[STATS_ARENA_BYTES] = (int64_t)ppredictor->arena_bytes();
+    stats[STATS_ARENA_REALLOCS] = ppredictor->arena_reallocs();
+    ppredictor::OCR_PPredictor::RecStats rec = ppredictor->rec_stats();
+    stats[STATS_REC_WORKERS] = rec.workers;
+    stats[STATS_REC_WALL_NS] = rec.wall_ns;
+    stats[STATS_REC_BUSY_NS] = rec.busy_ns;
+    stats[STATS_REC_CAPACITY_NS] = rec.capacity_ns;
+    stats[STATS_REC_LINES] = rec.lines;
+    stats[STATS_REC_BATCHES] = rec.batches;
+    stats[STATS_REC_SHAPE_CHANGES] = rec.shape_changes;
+    stats[STATS_REC_CACHE_HITS] = rec.cache_hits;
+    stats[STATS_REC_CACHE_SAVED_NS] = rec.cache_saved_ns;
+    ppredictor::OCR_PPredictor::LoadStats load = ppredictor->load_stats();
+    stats[STATS_DET_LOAD_NS] = load.det_load_ns;
+    stats[STATS_REC_LOAD_NS] = load.rec_load_ns;
+    stats[STATS_CLS_LOAD_NS] = load.cls_load_ns;
+    stats[STATS_FIRST_DET_NS] = load.first_det_ns;
   }
-  return cpp_array_to_jfloatarray(env, float_arr.data(), float_arr.size());
+  return int64_vector_to_jlongarray(env, stats);
 }
 
 extern "C" JNIEXPORT void JNICALL
@@ -110,28 +110,3 @@ inline std::vector<float> jfloatarray_to_float_vector(JNIEnv *env,
   env->ReleaseFloatArrayElements(data, data_ptr, 0);
   return data_vec;
 }
-
-inline cv::Mat bitmap_to_cv_mat(JNIEnv *env, jobject bitmap) {
-  AndroidBitmapInfo info;
-  int result = AndroidBitmap_getInfo(env, bitmap, &info);
-  if (result != ANDROID_BITMAP_RESULT_SUCCESS) {
-    LOGE("AndroidBitmap_getInfo failed, result: %d", result);
-    return cv::Mat{};
-  }
-  if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888) {
-    LOGE("Bitmap format is not RGBA_8888 !");
-    return cv::Mat{};
-  }
-  unsigned char *srcData = NULL;
-  AndroidBitmap_lockPixels(env, bitmap, (void **)&srcData);
-  cv::Mat mat = cv::Mat::zeros(info.height, info.width, CV_8UC4);
-  memcpy(mat.data, srcData, info.height * info.width * 4);
-  AndroidBitmap_unlockPixels(env, bitmap);
-  cv::cvtColor(mat, mat, cv::COLOR_RGBA2BGR);
-  /**
-  if (!cv::imwrite("/sdcard/1/copy.jpg", mat)){
-      LOGE("Write image failed " );
-  }
-   */
-  return mat;
-}
@@ -0,0 +1,95 @@
+//
+// Normalize uint8 HWC images into CHW float tensors
+//
+
+#include "normalize.h"
+#include "common.h"
+#if defined(__ARM_NEON) || defined(__ARM_NEON__)
+#include <arm_neon.h>
+#endif
+
+/**
+ * uint8 三通道 HWC 图像直接归一化为 CHW float，写入 dout（通常为 tensor 内存），
+ * 省去 convertTo 产生的整幅 float 中间图。
+ * 每个元素先算 v = x * (1 / 255)（与 convertTo 相同，舍入到 float），再算
+ * (v - mean) * scale。乘法与减法融合为 fma 会改变舍入，因此本文件以
+ * -ffp-contract=off 编译（见 CMakeLists.txt）。逐位一致性由
+ * src/test/cpp/normalize_test.cpp 对照 normalize_to_chw_ref 校验，
+ * NEON 路径需在 arm64 设备上运行该测试（步骤见 src/test/cpp/CMakeLists.txt）。
+ * 通道顺序保持输入顺序（BGR）。
+ * @param img CV_8UC3，允许非连续（如 roi 子图）
+ */
+void normalize_to_chw(const cv::Mat &img, float *dout,
+                      const std::vector<float> &mean,
+                      const std::vector<float> &scale) {
+  normalize_to_chw(img, dout, img.cols, img.rows, mean, scale);
+}
+
+void normalize_to_chw(const cv::Mat &img, float *dout, int dout_width,
+                      int dout_height, const std::vector<float> &mean,
+                      const std::vector<float> &scale) {
+  if (img.type() != CV_8UC3 || mean.size() != 3 || scale.size() != 3) {
+    LOGE("[ERROR] normalize_to_chw needs CV_8UC3 input and 3 mean/scale");
+    return;
+  }
+  if (img.cols > dout_width || img.rows > dout_height) {
+    LOGE("[ERROR] normalize_to_chw image %dx%d larger than output %dx%d",
+         img.cols, img.rows, dout_width, dout_height);
+    return;
+  }
+  const float norm = 1 / 255.0f;
+  const int width = dout_width;
+  const int size = dout_height * dout_width;
+
+#if defined(__ARM_NEON) || defined(__ARM_NEON__)
+  float32x4_t vnorm = vdupq_n_f32(norm);
+  float32x4_t vmean[3] = {vdupq_n_f32(mean[0]), vdupq_n_f32(mean[1]),
+                          vdupq_n_f32(mean[2])};
+  float32x4_t vscale[3] = {vdupq_n_f32(scale[0]), vdupq_n_f32(scale[1]),
+                           vdupq_n_f32(scale[2])};
+#endif
+
+  for (int y = 0; y < img.rows; y++) {
+    const uint8_t *din = img.ptr<uint8_t>(y);
+    float *dout_c[3] = {dout + y * width, dout + size + y * width,
+                        dout + size * 2 + y * width};
+    int x = 0;
+#if defined(__ARM_NEON) || defined(__ARM_NEON__)
+    for (; x < img.cols - 7; x += 8) {
+      uint8x8x3_t vin = vld3_u8(din + x * 3);
+      for (int c = 0; c < 3; c++) {
+        uint16x8_t v16 = vmovl_u8(vin.val[c]);
+        float32x4_t vlo = vcvtq_f32_u32(vmovl_u16(vget_low_u16(v16)));
+        float32x4_t vhi = vcvtq_f32_u32(vmovl_u16(vget_high_u16(v16)));
+        vlo = vmulq_f32(vsubq_f32(vmulq_f32(vlo, vnorm), vmean[c]), vscale[c]);
+        vhi = vmulq_f32(vsubq_f32(vmulq_f32(vhi, vnorm), vmean[c]), vscale[c]);
+        vst1q_f32(dout_c[c] + x, vlo);
+        vst1q_f32(dout_c[c] + x + 4, vhi);
+      }
+    }
+#endif
+    for (; x < img.cols; x++) {
+      for (int c = 0; c < 3; c++) {
+        float v = din[x * 3 + c] * norm;
+        dout_c[c][x] = (v - mean[c]) * scale[c];
+      }
+    }
+  }
+}
+
+void normalize_to_chw_ref(const cv::Mat &img, float *dout, int dout_width,
+                          int dout_height, const std::vector<float> &mean,
+                          const std::vector<float> &scale) {
+  cv::Mat img_fp;
+  img.convertTo(img_fp, CV_32FC3, 1 / 255.0f);
+  const int size = dout_height * dout_width;
+  for (int y = 0; y < img_fp.rows; y++) {
+    const float *din = img_fp.ptr<float>(y);
+    for (int x = 0; x < img_fp.cols; x++) {
+      for (int c = 0; c < 3; c++) {
+        dout[c * size + y * dout_width + x] =
+            (din[x * 3 + c] - mean[c]) * scale[c];
+      }
+    }
+  }
+}
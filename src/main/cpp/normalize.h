@@ -0,0 +1,26 @@
+//
+// Normalize uint8 HWC images into CHW float tensors
+//
+#pragma once
+
+#include <opencv2/core.hpp>
+#include <vector>
+
+void normalize_to_chw(const cv::Mat &img, float *dout,
+                      const std::vector<float> &mean,
+                      const std::vector<float> &scale);
+
+/**
+ * 归一化为 CHW，输出平面为 dout_height x dout_width，img 写入左上角，其余位置不写
+ */
+void normalize_to_chw(const cv::Mat &img, float *dout, int dout_width,
+                      int dout_height, const std::vector<float> &mean,
+                      const std::vector<float> &scale);
+
+/**
+ * 标量参考实现，即原流程 convertTo(CV_32FC3, 1 / 255.0f) 后逐元素
+ * (v - mean) * scale。normalize_to_chw 的结果应与之逐位相同，仅用于测试
+ */
+void normalize_to_chw_ref(const cv::Mat &img, float *dout, int dout_width,
+                          int dout_height, const std::vector<float> &mean,
+                          const std::vector<float> &scale);
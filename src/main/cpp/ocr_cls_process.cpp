@@ -22,7 +22,7 @@
 
 const std::vector<int> CLS_IMAGE_SHAPE = {3, 48, 192};
 
-cv::Mat cls_resize_img(const cv::Mat &img) {
+cv::Mat cls_resize_img(const cv::Mat &img, ppredictor::ScratchMat &dst) {
   int imgC = CLS_IMAGE_SHAPE[0];
   int imgW = CLS_IMAGE_SHAPE[2];
   int imgH = CLS_IMAGE_SHAPE[1];
@@ -34,13 +34,14 @@ cv::Mat cls_resize_img(const cv::Mat &img) {
   else
     resize_w = int(ceilf(imgH * ratio));
 
-  cv::Mat resize_img;
+  // 缩放结果直接写入左侧区域，右侧补零，等价于 copyMakeBorder
+  cv::Mat padded = dst.get(imgH, imgW, img.type());
+  cv::Mat resize_img = padded.colRange(0, resize_w);
   cv::resize(img, resize_img, cv::Size(resize_w, imgH), 0.f, 0.f,
              cv::INTER_CUBIC);
 
   if (resize_w < imgW) {
-    cv::copyMakeBorder(resize_img, resize_img, 0, 0, 0, int(imgW - resize_w),
-                       cv::BORDER_CONSTANT, {0, 0, 0});
+    padded.colRange(resize_w, imgW).setTo(cv::Scalar::all(0));
   }
-  return resize_img;
+  return padded;
 }
\ No newline at end of file
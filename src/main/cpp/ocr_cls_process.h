@@ -15,9 +15,10 @@
 #pragma once
 
 #include "common.h"
+#include "ocr_scratch.h"
 #include <opencv2/opencv.hpp>
 #include <vector>
 
 extern const std::vector<int> CLS_IMAGE_SHAPE;
 
-cv::Mat cls_resize_img(const cv::Mat &img);
\ No newline at end of file
+cv::Mat cls_resize_img(const cv::Mat &img, ppredictor::ScratchMat &dst);
\ No newline at end of file
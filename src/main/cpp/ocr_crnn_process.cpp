@@ -62,8 +62,7 @@ static cv::Mat crnn_resize_norm_img(cv::Mat img, float wh_ratio) {
   return dist;
 }
 
-cv::Mat crnn_resize_img(const cv::Mat &img, float wh_ratio) {
-  int imgC = REC_IMAGE_SHAPE[0];
+int crnn_resize_width(const cv::Mat &img, float wh_ratio) {
   int imgW = REC_IMAGE_SHAPE[2];
   int imgH = REC_IMAGE_SHAPE[1];
 
@@ -77,15 +76,27 @@ cv::Mat crnn_resize_img(const cv::Mat &img, float wh_ratio) {
     resize_w = imgW;
   else
     resize_w = int(ceilf(imgH * ratio));
-  cv::Mat resize_img;
+  // 极窄的文本框 imgW 可能为 0
+  return std::max(resize_w, 1);
+}
+
+cv::Mat crnn_resize_img(const cv::Mat &img, float wh_ratio,
+                        ppredictor::ScratchMat &dst) {
+  return crnn_resize_img_to_width(img, crnn_resize_width(img, wh_ratio), dst);
+}
+
+cv::Mat crnn_resize_img_to_width(const cv::Mat &img, int resize_w,
+                                 ppredictor::ScratchMat &dst) {
+  int imgH = REC_IMAGE_SHAPE[1];
+  cv::Mat resize_img = dst.get(imgH, resize_w, img.type());
   cv::resize(img, resize_img, cv::Size(resize_w, imgH));
   return resize_img;
 }
 
 cv::Mat get_rotate_crop_image(const cv::Mat &srcimage,
-                              const std::vector<std::vector<int>> &box) {
-
-  std::vector<std::vector<int>> points = box;
+                              const std::vector<std::vector<int>> &box,
+                              ppredictor::ScratchMat &dst,
+                              ppredictor::ScratchMat &tmp) {
 
   int x_collect[4] = {box[0][0], box[1][0], box[2][0], box[3][0]};
   int y_collect[4] = {box[0][1], box[1][1], box[2][1], box[3][1]};
@@ -94,12 +105,13 @@ cv::Mat get_rotate_crop_image(const cv::Mat &srcimage,
   int top = int(*std::min_element(y_collect, y_collect + 4));
   int bottom = int(*std::max_element(y_collect, y_collect + 4));
 
-  cv::Mat img_crop;
-  srcimage(cv::Rect(left, top, right - left, bottom - top)).copyTo(img_crop);
+  // 直接在原图的子区域上变换，无需先复制
+  cv::Mat img_crop = srcimage(cv::Rect(left, top, right - left, bottom - top));
 
-  for (int i = 0; i < points.size(); i++) {
-    points[i][0] -= left;
-    points[i][1] -= top;
+  int points[4][2];
+  for (int i = 0; i < 4; i++) {
+    points[i][0] = box[i][0] - left;
+    points[i][1] = box[i][1] - top;
   }
 
   int img_crop_width = int(sqrt(pow(points[0][0] - points[1][0], 2) +
@@ -121,21 +133,19 @@ cv::Mat get_rotate_crop_image(const cv::Mat &srcimage,
 
   cv::Mat M = cv::getPerspectiveTransform(pointsf, pts_std);
 
-  cv::Mat dst_img;
+  // 竖排文本先变换到 tmp 再转置到 dst，横排直接变换到 dst
+  bool vertical = float(img_crop_height) >= float(img_crop_width) * 1.5;
+  cv::Mat dst_img = (vertical ? tmp : dst)
+                        .get(img_crop_height, img_crop_width, srcimage.type());
   cv::warpPerspective(img_crop, dst_img, M,
                       cv::Size(img_crop_width, img_crop_height),
                       cv::BORDER_REPLICATE);
 
-  if (float(dst_img.rows) >= float(dst_img.cols) * 1.5) {
-    /*
-    cv::Mat srcCopy = cv::Mat(dst_img.rows, dst_img.cols, dst_img.depth());
-    cv::transpose(dst_img, srcCopy);
-    cv::flip(srcCopy, srcCopy, 0);
-    return srcCopy;
-    */
-    cv::transpose(dst_img, dst_img);
-    cv::flip(dst_img, dst_img, 0);
-    return dst_img;
+  if (vertical) {
+    cv::Mat rotate_img = dst.get(dst_img.cols, dst_img.rows, dst_img.type());
+    cv::transpose(dst_img, rotate_img);
+    cv::flip(rotate_img, rotate_img, 0);
+    return rotate_img;
   } else {
     return dst_img;
   }
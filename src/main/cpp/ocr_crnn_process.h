@@ -4,15 +4,33 @@
 #pragma once
 
 #include "common.h"
+#include "ocr_scratch.h"
 #include <opencv2/opencv.hpp>
 #include <vector>
 
 extern const std::vector<int> REC_IMAGE_SHAPE;
 
+/**
+ * 按文本框透视变换裁剪，结果写入 dst；竖排文本经 tmp 中转后转置写入 dst
+ */
 cv::Mat get_rotate_crop_image(const cv::Mat &srcimage,
-                              const std::vector<std::vector<int>> &box);
+                              const std::vector<std::vector<int>> &box,
+                              ppredictor::ScratchMat &dst,
+                              ppredictor::ScratchMat &tmp);
 
-cv::Mat crnn_resize_img(const cv::Mat &img, float wh_ratio);
+/**
+ * crnn_resize_img 缩放后的宽度，高度固定为 REC_IMAGE_SHAPE[1]
+ */
+int crnn_resize_width(const cv::Mat &img, float wh_ratio);
+
+cv::Mat crnn_resize_img(const cv::Mat &img, float wh_ratio,
+                        ppredictor::ScratchMat &dst);
+
+/**
+ * 缩放到指定宽度，高度固定为 REC_IMAGE_SHAPE[1]
+ */
+cv::Mat crnn_resize_img_to_width(const cv::Mat &img, int resize_w,
+                                 ppredictor::ScratchMat &dst);
 
 template <class ForwardIterator>
 inline size_t argmax(ForwardIterator first, ForwardIterator last) {
@@ -12,86 +12,83 @@
 // See the License for the specific language governing permissions and
 // limitations under the License.
 
+#include "ocr_db_post_process.h"
 #include "ocr_clipper.hpp"
 #include "opencv2/core.hpp"
-#include "opencv2/imgcodecs.hpp"
 #include "opencv2/imgproc.hpp"
-#include <iostream>
 #include <math.h>
 #include <vector>
 
-static void getcontourarea(float **box, float unclip_ratio, float &distance) {
+namespace ppredictor {
+
+// 每段并行任务至少处理的轮廓数，轮廓较少时不值得分段
+static const int MIN_CONTOURS_PER_STRIPE = 16;
+// 文本框距分块内侧边界在该像素数以内时视为被截断
+static const int TILE_EDGE_MARGIN = 2;
+
+static void getcontourarea(const cv::Point2f box[4], float unclip_ratio,
+                           float &distance) {
   int pts_num = 4;
   float area = 0.0f;
   float dist = 0.0f;
   for (int i = 0; i < pts_num; i++) {
-    area += box[i][0] * box[(i + 1) % pts_num][1] -
-            box[i][1] * box[(i + 1) % pts_num][0];
-    dist += sqrtf((box[i][0] - box[(i + 1) % pts_num][0]) *
-                      (box[i][0] - box[(i + 1) % pts_num][0]) +
-                  (box[i][1] - box[(i + 1) % pts_num][1]) *
-                      (box[i][1] - box[(i + 1) % pts_num][1]));
+    area += box[i].x * box[(i + 1) % pts_num].y -
+            box[i].y * box[(i + 1) % pts_num].x;
+    dist += sqrtf((box[i].x - box[(i + 1) % pts_num].x) *
+                      (box[i].x - box[(i + 1) % pts_num].x) +
+                  (box[i].y - box[(i + 1) % pts_num].y) *
+                      (box[i].y - box[(i + 1) % pts_num].y));
   }
   area = fabs(float(area / 2.0));
 
   distance = area * unclip_ratio / dist;
 }
 
-static cv::RotatedRect unclip(float **box) {
-  float unclip_ratio = 2.0;
+/**
+ * @param points 临时缓冲区
+ */
+static cv::RotatedRect unclip(const cv::Point2f box[4], float unclip_ratio,
+                              std::vector<cv::Point2f> &points) {
   float distance = 1.0;
 
   getcontourarea(box, unclip_ratio, distance);
 
   ClipperLib::ClipperOffset offset;
   ClipperLib::Path p;
-  p << ClipperLib::IntPoint(int(box[0][0]), int(box[0][1]))
-    << ClipperLib::IntPoint(int(box[1][0]), int(box[1][1]))
-    << ClipperLib::IntPoint(int(box[2][0]), int(box[2][1]))
-    << ClipperLib::IntPoint(int(box[3][0]), int(box[3][1]));
+  p << ClipperLib::IntPoint(int(box[0].x), int(box[0].y))
+    << ClipperLib::IntPoint(int(box[1].x), int(box[1].y))
+    << ClipperLib::IntPoint(int(box[2].x), int(box[2].y))
+    << ClipperLib::IntPoint(int(box[3].x), int(box[3].y));
   offset.AddPath(p, ClipperLib::jtRound, ClipperLib::etClosedPolygon);
 
   ClipperLib::Paths soln;
   offset.Execute(soln, distance);
-  std::vector<cv::Point2f> points;
 
-  for (int j = 0; j < soln.size(); j++) {
-    for (int i = 0; i < soln[soln.size() - 1].size(); i++) {
+  points.clear();
+  for (size_t j = 0; j < soln.size(); j++) {
+    for (size_t i = 0; i < soln[soln.size() - 1].size(); i++) {
       points.emplace_back(soln[j][i].X, soln[j][i].Y);
     }
   }
-  cv::RotatedRect res = cv::minAreaRect(points);
-
-  return res;
-}
-
-static float **Mat2Vec(cv::Mat mat) {
-  auto **array = new float *[mat.rows];
-  for (int i = 0; i < mat.rows; ++i) {
-    array[i] = new float[mat.cols];
-  }
-  for (int i = 0; i < mat.rows; ++i) {
-    for (int j = 0; j < mat.cols; ++j) {
-      array[i][j] = mat.at<float>(i, j);
-    }
-  }
-
-  return array;
+  return cv::minAreaRect(points);
 }
 
-static void quickSort(float **s, int l, int r) {
+/**
+ * 按 x 排序，与原先基于指针数组的快速排序逐步一致（包括 x 相同时的顺序）
+ */
+template <typename PointT> static void quick_sort_x(PointT *s, int l, int r) {
   if (l < r) {
     int i = l, j = r;
-    float x = s[l][0];
-    float *xp = s[l];
+    auto x = s[l].x;
+    PointT xp = s[l];
     while (i < j) {
-      while (i < j && s[j][0] >= x) {
+      while (i < j && s[j].x >= x) {
         j--;
       }
       if (i < j) {
         std::swap(s[i++], s[j]);
       }
-      while (i < j && s[i][0] < x) {
+      while (i < j && s[i].x < x) {
         i++;
       }
       if (i < j) {
@@ -99,88 +96,55 @@ static void quickSort(float **s, int l, int r) {
       }
     }
     s[i] = xp;
-    quickSort(s, l, i - 1);
-    quickSort(s, i + 1, r);
-  }
-}
-
-static void quickSort_vector(std::vector<std::vector<int>> &box, int l, int r,
-                             int axis) {
-  if (l < r) {
-    int i = l, j = r;
-    int x = box[l][axis];
-    std::vector<int> xp(box[l]);
-    while (i < j) {
-      while (i < j && box[j][axis] >= x) {
-        j--;
-      }
-      if (i < j) {
-        std::swap(box[i++], box[j]);
-      }
-      while (i < j && box[i][axis] < x) {
-        i++;
-      }
-      if (i < j) {
-        std::swap(box[j--], box[i]);
-      }
-    }
-    box[i] = xp;
-    quickSort_vector(box, l, i - 1, axis);
-    quickSort_vector(box, i + 1, r, axis);
+    quick_sort_x(s, l, i - 1);
+    quick_sort_x(s, i + 1, r);
   }
 }
 
-static std::vector<std::vector<int>>
-order_points_clockwise(std::vector<std::vector<int>> pts) {
-  std::vector<std::vector<int>> box = pts;
-  quickSort_vector(box, 0, int(box.size() - 1), 0);
-  std::vector<std::vector<int>> leftmost = {box[0], box[1]};
-  std::vector<std::vector<int>> rightmost = {box[2], box[3]};
+static void order_points_clockwise(TextQuad &quad) {
+  cv::Point box[4] = {quad.points[0], quad.points[1], quad.points[2],
+                      quad.points[3]};
+  quick_sort_x(box, 0, 3);
+  cv::Point leftmost[2] = {box[0], box[1]};
+  cv::Point rightmost[2] = {box[2], box[3]};
 
-  if (leftmost[0][1] > leftmost[1][1]) {
+  if (leftmost[0].y > leftmost[1].y) {
     std::swap(leftmost[0], leftmost[1]);
   }
 
-  if (rightmost[0][1] > rightmost[1][1]) {
+  if (rightmost[0].y > rightmost[1].y) {
     std::swap(rightmost[0], rightmost[1]);
   }
 
-  std::vector<std::vector<int>> rect = {leftmost[0], rightmost[0], rightmost[1],
-                                        leftmost[1]};
-  return rect;
+  quad.points[0] = leftmost[0];
+  quad.points[1] = rightmost[0];
+  quad.points[2] = rightmost[1];
+  quad.points[3] = leftmost[1];
 }
 
-static float **get_mini_boxes(cv::RotatedRect box, float &ssid) {
+static void get_mini_boxes(const cv::RotatedRect &box, float &ssid,
+                           cv::Point2f out[4]) {
   ssid = box.size.width >= box.size.height ? box.size.height : box.size.width;
 
-  cv::Mat points;
-  cv::boxPoints(box, points);
   // sorted box points
-  auto array = Mat2Vec(points);
-  quickSort(array, 0, 3);
+  cv::Point2f array[4];
+  box.points(array);
+  quick_sort_x(array, 0, 3);
 
-  float *idx1 = array[0], *idx2 = array[1], *idx3 = array[2], *idx4 = array[3];
-  if (array[3][1] <= array[2][1]) {
-    idx2 = array[3];
-    idx3 = array[2];
+  if (array[3].y <= array[2].y) {
+    out[1] = array[3];
+    out[2] = array[2];
   } else {
-    idx2 = array[2];
-    idx3 = array[3];
+    out[1] = array[2];
+    out[2] = array[3];
   }
-  if (array[1][1] <= array[0][1]) {
-    idx1 = array[1];
-    idx4 = array[0];
+  if (array[1].y <= array[0].y) {
+    out[0] = array[1];
+    out[3] = array[0];
   } else {
-    idx1 = array[0];
-    idx4 = array[1];
+    out[0] = array[0];
+    out[3] = array[1];
   }
-
-  array[0] = idx1;
-  array[1] = idx2;
-  array[2] = idx3;
-  array[3] = idx4;
-
-  return array;
 }
 
 template <class T> T clamp(T x, T min, T max) {
@@ -201,142 +165,280 @@ static float clampf(float x, float min, float max) {
   return x;
 }
 
-float box_score_fast(float **box_array, cv::Mat pred) {
-  auto array = box_array;
-  int width = pred.cols;
-  int height = pred.rows;
+/**
+ * 文本框的外接矩形，已限制在 width x height 内
+ */
+static cv::Rect box_bounding_rect(const cv::Point2f array[4], int width,
+                                  int height) {
+  float box_x[4] = {array[0].x, array[1].x, array[2].x, array[3].x};
+  float box_y[4] = {array[0].y, array[1].y, array[2].y, array[3].y};
 
-  float box_x[4] = {array[0][0], array[1][0], array[2][0], array[3][0]};
-  float box_y[4] = {array[0][1], array[1][1], array[2][1], array[3][1]};
-
-  int xmin = clamp(int(std::floorf(*(std::min_element(box_x, box_x + 4)))), 0,
+  int xmin = clamp(int(std::floor(*(std::min_element(box_x, box_x + 4)))), 0,
                    width - 1);
-  int xmax = clamp(int(std::ceilf(*(std::max_element(box_x, box_x + 4)))), 0,
+  int xmax = clamp(int(std::ceil(*(std::max_element(box_x, box_x + 4)))), 0,
                    width - 1);
-  int ymin = clamp(int(std::floorf(*(std::min_element(box_y, box_y + 4)))), 0,
+  int ymin = clamp(int(std::floor(*(std::min_element(box_y, box_y + 4)))), 0,
                    height - 1);
-  int ymax = clamp(int(std::ceilf(*(std::max_element(box_y, box_y + 4)))), 0,
+  int ymax = clamp(int(std::ceil(*(std::max_element(box_y, box_y + 4)))), 0,
                    height - 1);
+  return cv::Rect(xmin, ymin, xmax - xmin + 1, ymax - ymin + 1);
+}
 
-  cv::Mat mask;
-  mask = cv::Mat::zeros(ymax - ymin + 1, xmax - xmin + 1, CV_8UC1);
+/**
+ * 文本框内概率的均值，掩码写入 mask，直接在 pred 的子区域上计算
+ */
+static float box_score_fast(const cv::Point2f array[4], const cv::Mat &pred,
+                            ScratchMat &mask_buffer) {
+  cv::Rect rect = box_bounding_rect(array, pred.cols, pred.rows);
+  int xmin = rect.x;
+  int xmax = rect.x + rect.width - 1;
+  int ymin = rect.y;
+  int ymax = rect.y + rect.height - 1;
+
+  cv::Mat mask =
+      mask_buffer.get(ymax - ymin + 1, xmax - xmin + 1, CV_8UC1);
+  mask.setTo(cv::Scalar::all(0));
 
   cv::Point root_point[4];
-  root_point[0] = cv::Point(int(array[0][0]) - xmin, int(array[0][1]) - ymin);
-  root_point[1] = cv::Point(int(array[1][0]) - xmin, int(array[1][1]) - ymin);
-  root_point[2] = cv::Point(int(array[2][0]) - xmin, int(array[2][1]) - ymin);
-  root_point[3] = cv::Point(int(array[3][0]) - xmin, int(array[3][1]) - ymin);
+  for (int i = 0; i < 4; i++) {
+    root_point[i] = cv::Point(int(array[i].x) - xmin, int(array[i].y) - ymin);
+  }
   const cv::Point *ppt[1] = {root_point};
   int npt[] = {4};
   cv::fillPoly(mask, ppt, npt, 1, cv::Scalar(1));
 
-  cv::Mat croppedImg;
-  pred(cv::Rect(xmin, ymin, xmax - xmin + 1, ymax - ymin + 1))
-      .copyTo(croppedImg);
+  return float(
+      cv::mean(pred(cv::Rect(xmin, ymin, xmax - xmin + 1, ymax - ymin + 1)),
+               mask)[0]);
+}
 
-  auto score = cv::mean(croppedImg, mask)[0];
-  return score;
+float DBPostProcess::box_score_rect(const cv::Point2f box[4],
+                                    const cv::Mat &pred) const {
+  cv::Rect rect = box_bounding_rect(box, pred.cols, pred.rows);
+  const cv::Mat &sum = _integral_sum;
+  double total = sum.at<double>(rect.y + rect.height, rect.x + rect.width) -
+                 sum.at<double>(rect.y, rect.x + rect.width) -
+                 sum.at<double>(rect.y + rect.height, rect.x) +
+                 sum.at<double>(rect.y, rect.x);
+  return float(total / rect.area());
 }
 
-std::vector<std::vector<std::vector<int>>>
-boxes_from_bitmap(const cv::Mat &pred, const cv::Mat &bitmap) {
-  const int min_size = 3;
-  const int max_candidates = 1000;
-  const float box_thresh = 0.5;
+void DBPostProcess::process_contour(const DetConfig &config,
+                                    const cv::Mat &pred, int index,
+                                    Stripe &stripe) {
+  const int min_size = config.min_size;
+  const float box_thresh = config.box_thresh;
 
-  int width = bitmap.cols;
-  int height = bitmap.rows;
+  Candidate &candidate = _candidates[index];
+  candidate.valid = false;
 
-  std::vector<std::vector<cv::Point>> contours;
-  std::vector<cv::Vec4i> hierarchy;
+  float ssid;
+  cv::Point2f array[4];
+  get_mini_boxes(cv::minAreaRect(_contours[index]), ssid, array);
+  if (ssid < min_size) {
+    return;
+  }
 
-  cv::findContours(bitmap, contours, hierarchy, cv::RETR_LIST,
-                   cv::CHAIN_APPROX_SIMPLE);
+  float score = config.score_mode == DET_SCORE_FAST
+                    ? box_score_rect(array, pred)
+                    : box_score_fast(array, pred, stripe.mask);
+  if (score < box_thresh) {
+    return;
+  }
 
-  int num_contours =
-      contours.size() >= max_candidates ? max_candidates : contours.size();
+  cv::Point2f cliparray[4];
+  get_mini_boxes(unclip(array, config.unclip_ratio, stripe.unclip_points),
+                 ssid, cliparray);
+  if (ssid < min_size + 2) {
+    return;
+  }
 
-  std::vector<std::vector<std::vector<int>>> boxes;
+  // pred 与二值图尺寸相同，保留原先的换算以免舍入不同
+  int width = pred.cols;
+  int height = pred.rows;
+  int dest_width = pred.cols;
+  int dest_height = pred.rows;
+  for (int num_pt = 0; num_pt < 4; num_pt++) {
+    candidate.quad.points[num_pt] = cv::Point(
+        int(clampf(roundf(cliparray[num_pt].x / float(width) *
+                          float(dest_width)),
+                   0, float(dest_width))),
+        int(clampf(roundf(cliparray[num_pt].y / float(height) *
+                          float(dest_height)),
+                   0, float(dest_height))));
+  }
+  candidate.valid = true;
+}
 
-  for (int _i = 0; _i < num_contours; _i++) {
-    float ssid;
-    cv::RotatedRect box = cv::minAreaRect(contours[_i]);
-    auto array = get_mini_boxes(box, ssid);
+void DBPostProcess::run(const DetConfig &config, const cv::Mat &pred,
+                        const cv::Mat &bitmap, float ratio_h, float ratio_w,
+                        cv::Size src_size, std::vector<TextQuad> &boxes) {
+  const int max_candidates = config.max_candidates;
+  boxes.clear();
 
-    auto box_for_unclip = array;
-    // end get_mini_box
+  cv::findContours(bitmap, _contours, cv::RETR_LIST, cv::CHAIN_APPROX_SIMPLE);
+  const int num_contours = std::min<int>(_contours.size(), max_candidates);
+  if (num_contours == 0) {
+    return;
+  }
+  if (_candidates.size() < size_t(num_contours)) {
+    _candidates.resize(num_contours);
+  }
+  if (config.score_mode == DET_SCORE_FAST) {
+    _integral_sum = _integral.get(pred.rows + 1, pred.cols + 1, CV_64F);
+    cv::integral(pred, _integral_sum, CV_64F);
+  }
 
-    if (ssid < min_size) {
+  // 各轮廓相互独立，按下标分段并行，每段使用各自的临时数据，结果写入各自的下标
+  const int stripe_num = std::max(
+      1, std::min(cv::getNumThreads(),
+                  (num_contours + MIN_CONTOURS_PER_STRIPE - 1) /
+                      MIN_CONTOURS_PER_STRIPE));
+  if (_stripes.size() < size_t(stripe_num)) {
+    _stripes.resize(stripe_num);
+  }
+  cv::parallel_for_(
+      cv::Range(0, stripe_num),
+      [&](const cv::Range &range) {
+        for (int s = range.start; s < range.end; s++) {
+          int begin = int(int64_t(num_contours) * s / stripe_num);
+          int end = int(int64_t(num_contours) * (s + 1) / stripe_num);
+          for (int i = begin; i < end; i++) {
+            process_contour(config, pred, i, _stripes[s]);
+          }
+        }
+      },
+      stripe_num);
+
+  // 按轮廓顺序收集，还原到原图坐标并过滤过小的框
+  const int oriimg_h = src_size.height;
+  const int oriimg_w = src_size.width;
+  for (int n = 0; n < num_contours; n++) {
+    if (!_candidates[n].valid) {
       continue;
     }
+    TextQuad quad = _candidates[n].quad;
+    order_points_clockwise(quad);
+    for (int m = 0; m < 4; m++) {
+      cv::Point &point = quad.points[m];
+      point.x = int(point.x / ratio_w);
+      point.y = int(point.y / ratio_h);
+      point.x = std::min(std::max(point.x, 0), oriimg_w - 1);
+      point.y = std::min(std::max(point.y, 0), oriimg_h - 1);
+    }
 
-    float score;
-    score = box_score_fast(array, pred);
-    // end box_score_fast
-    if (score < box_thresh) {
+    const cv::Point *box = quad.points;
+    int rect_width = int(sqrt(pow(box[0].x - box[1].x, 2) +
+                              pow(box[0].y - box[1].y, 2)));
+    int rect_height = int(sqrt(pow(box[0].x - box[3].x, 2) +
+                               pow(box[0].y - box[3].y, 2)));
+    if (rect_width <= 10 || rect_height <= 10) {
       continue;
     }
+    boxes.push_back(quad);
+  }
+}
 
-    // start for unclip
-    cv::RotatedRect points = unclip(box_for_unclip);
-    // end for unclip
-
-    cv::RotatedRect clipbox = points;
-    auto cliparray = get_mini_boxes(clipbox, ssid);
-
-    if (ssid < min_size + 2)
-      continue;
+static cv::Rect quad_bounding_rect(const TextQuad &quad) {
+  int xmin = quad.points[0].x, xmax = quad.points[0].x;
+  int ymin = quad.points[0].y, ymax = quad.points[0].y;
+  for (int i = 1; i < 4; i++) {
+    xmin = std::min(xmin, quad.points[i].x);
+    xmax = std::max(xmax, quad.points[i].x);
+    ymin = std::min(ymin, quad.points[i].y);
+    ymax = std::max(ymax, quad.points[i].y);
+  }
+  return cv::Rect(xmin, ymin, xmax - xmin + 1, ymax - ymin + 1);
+}
 
-    int dest_width = pred.cols;
-    int dest_height = pred.rows;
-    std::vector<std::vector<int>> intcliparray;
-
-    for (int num_pt = 0; num_pt < 4; num_pt++) {
-      std::vector<int> a{int(clampf(roundf(cliparray[num_pt][0] / float(width) *
-                                           float(dest_width)),
-                                    0, float(dest_width))),
-                         int(clampf(roundf(cliparray[num_pt][1] /
-                                           float(height) * float(dest_height)),
-                                    0, float(dest_height)))};
-      intcliparray.emplace_back(std::move(a));
-    }
-    boxes.emplace_back(std::move(intcliparray));
+/**
+ * 文本框是否贴近分块的内侧边界（不是原图边界的一侧）
+ */
+static bool touches_tile_seam(const cv::Rect &rect, const cv::Rect &tile,
+                              cv::Size src_size) {
+  return (tile.x > 0 && rect.x <= tile.x + TILE_EDGE_MARGIN) ||
+         (tile.y > 0 && rect.y <= tile.y + TILE_EDGE_MARGIN) ||
+         (tile.br().x < src_size.width &&
+          rect.br().x >= tile.br().x - TILE_EDGE_MARGIN) ||
+         (tile.br().y < src_size.height &&
+          rect.br().y >= tile.br().y - TILE_EDGE_MARGIN);
+}
 
-  } // end for
-  return boxes;
+static int find_root(std::vector<int> &parent, int i) {
+  while (parent[i] != i) {
+    parent[i] = parent[parent[i]];
+    i = parent[i];
+  }
+  return i;
 }
 
-int _max(int a, int b) { return a >= b ? a : b; }
-
-int _min(int a, int b) { return a >= b ? b : a; }
-
-std::vector<std::vector<std::vector<int>>>
-filter_tag_det_res(const std::vector<std::vector<std::vector<int>>> &o_boxes,
-                   float ratio_h, float ratio_w, const cv::Mat &srcimg) {
-  int oriimg_h = srcimg.rows;
-  int oriimg_w = srcimg.cols;
-  std::vector<std::vector<std::vector<int>>> boxes{o_boxes};
-  std::vector<std::vector<std::vector<int>>> root_points;
-  for (int n = 0; n < boxes.size(); n++) {
-    boxes[n] = order_points_clockwise(boxes[n]);
-    for (int m = 0; m < boxes[0].size(); m++) {
-      boxes[n][m][0] /= ratio_w;
-      boxes[n][m][1] /= ratio_h;
-
-      boxes[n][m][0] = int(_min(_max(boxes[n][m][0], 0), oriimg_w - 1));
-      boxes[n][m][1] = int(_min(_max(boxes[n][m][1], 0), oriimg_h - 1));
+void merge_tile_boxes(std::vector<TextQuad> &boxes,
+                      const std::vector<cv::Rect> &box_tiles,
+                      cv::Size src_size) {
+  const int box_num = boxes.size();
+  std::vector<cv::Rect> rects(box_num);
+  std::vector<char> cut(box_num);
+  std::vector<int> parent(box_num);
+  for (int i = 0; i < box_num; i++) {
+    rects[i] = quad_bounding_rect(boxes[i]);
+    cut[i] = touches_tile_seam(rects[i], box_tiles[i], src_size);
+    parent[i] = i;
+  }
+
+  // 同一分块内的框已由 DB 后处理分开，只合并来自不同分块的框：
+  // 交集占较小框一半以上的视为重复检出；
+  // 有一方被截断时，交集在两个方向上都超过较细一方线宽的一半，视为同一行的两段
+  for (int i = 0; i < box_num; i++) {
+    for (int j = i + 1; j < box_num; j++) {
+      if (box_tiles[i] == box_tiles[j]) {
+        continue;
+      }
+      cv::Rect inter = rects[i] & rects[j];
+      if (inter.empty()) {
+        continue;
+      }
+      bool merge =
+          inter.area() * 2 >= std::min(rects[i].area(), rects[j].area());
+      if (!merge && (cut[i] || cut[j])) {
+        int thick = std::min(std::min(rects[i].width, rects[i].height),
+                             std::min(rects[j].width, rects[j].height));
+        merge = inter.width * 2 >= thick && inter.height * 2 >= thick;
+      }
+      if (merge) {
+        int root_i = find_root(parent, i);
+        int root_j = find_root(parent, j);
+        // 以下标较小的框为根，合并结果留在组内第一个框的位置
+        parent[std::max(root_i, root_j)] = std::min(root_i, root_j);
+      }
     }
   }
 
-  for (int n = 0; n < boxes.size(); n++) {
-    int rect_width, rect_height;
-    rect_width = int(sqrt(pow(boxes[n][0][0] - boxes[n][1][0], 2) +
-                          pow(boxes[n][0][1] - boxes[n][1][1], 2)));
-    rect_height = int(sqrt(pow(boxes[n][0][0] - boxes[n][3][0], 2) +
-                           pow(boxes[n][0][1] - boxes[n][3][1], 2)));
-    if (rect_width <= 10 || rect_height <= 10)
+  std::vector<std::vector<cv::Point>> groups(box_num);
+  for (int i = 0; i < box_num; i++) {
+    std::vector<cv::Point> &group = groups[find_root(parent, i)];
+    group.insert(group.end(), boxes[i].points, boxes[i].points + 4);
+  }
+  int merged = 0;
+  for (int i = 0; i < box_num; i++) {
+    const std::vector<cv::Point> &group = groups[i];
+    if (group.empty()) {
+      continue;
+    }
+    TextQuad &quad = boxes[merged++];
+    if (group.size() == 4) {
+      std::copy(group.begin(), group.end(), quad.points);
       continue;
-    root_points.push_back(boxes[n]);
+    }
+    cv::Point2f corners[4];
+    cv::minAreaRect(group).points(corners);
+    for (int m = 0; m < 4; m++) {
+      quad.points[m].x =
+          clamp(int(std::round(corners[m].x)), 0, src_size.width - 1);
+      quad.points[m].y =
+          clamp(int(std::round(corners[m].y)), 0, src_size.height - 1);
+    }
+    order_points_clockwise(quad);
   }
-  return root_points;
-}
\ No newline at end of file
+  boxes.resize(merged);
+}
+}
@@ -2,12 +2,94 @@
 // Created by fujiayi on 2020/7/2.
 //
 #pragma once
+#include "ocr_scratch.h"
 #include <opencv2/opencv.hpp>
 #include <vector>
 
-std::vector<std::vector<std::vector<int>>>
-boxes_from_bitmap(const cv::Mat &pred, const cv::Mat &bitmap);
+namespace ppredictor {
 
-std::vector<std::vector<std::vector<int>>>
-filter_tag_det_res(const std::vector<std::vector<std::vector<int>>> &o_boxes,
-                   float ratio_h, float ratio_w, const cv::Mat &srcimg);
\ No newline at end of file
+/**
+ * 文本框打分方式
+ */
+enum DET_SCORE_MODE {
+  DET_SCORE_POLYGON = 0, // 文本框多边形内概率的均值，准确
+  DET_SCORE_FAST = 1,    // 文本框外接矩形内概率的均值，由积分图计算，更快
+};
+
+/**
+ * DB 后处理参数
+ */
+struct DetConfig {
+  float threshold = 0.5f;    // 概率图二值化阈值（> threshold），默认与原先结果相同
+  float box_thresh = 0.5f;   // 文本框得分低于该值时丢弃
+  float unclip_ratio = 2.0f; // 文本框扩张比例
+  int max_candidates = 1000; // 最多处理的轮廓数
+  int min_size = 3;          // 文本框短边小于该值时丢弃
+  int score_mode = DET_SCORE_POLYGON;
+};
+
+/**
+ * 文本框的四个角点，顺时针排列，从左上角开始
+ */
+struct TextQuad {
+  cv::Point points[4];
+};
+
+/**
+ * DB 检测模型的后处理：从概率图与二值图中提取文本框。
+ * 轮廓、掩码等中间结果跨帧复用；各轮廓的打分与扩张分段并行，结果与串行处理一致。
+ * 非线程安全
+ */
+class DBPostProcess {
+public:
+  /**
+   * @param config
+   * @param pred 概率图，CV_32F
+   * @param bitmap 二值图，CV_8UC1，与 pred 尺寸相同
+   * @param ratio_h 概率图高度 / 原图高度
+   * @param ratio_w 概率图宽度 / 原图宽度
+   * @param src_size 原图尺寸
+   * @param boxes 输出，坐标已还原到原图，过小的框已过滤
+   */
+  void run(const DetConfig &config, const cv::Mat &pred, const cv::Mat &bitmap,
+           float ratio_h, float ratio_w, cv::Size src_size,
+           std::vector<TextQuad> &boxes);
+
+private:
+  struct Candidate {
+    TextQuad quad; // 概率图坐标，未排序
+    bool valid = false;
+  };
+
+  // 每段并行任务独占的临时数据
+  struct Stripe {
+    ScratchMat mask;
+    std::vector<cv::Point2f> unclip_points;
+  };
+
+  void process_contour(const DetConfig &config, const cv::Mat &pred,
+                       int index, Stripe &stripe);
+
+  /**
+   * 外接矩形内概率的均值，DET_SCORE_FAST 时使用
+   */
+  float box_score_rect(const cv::Point2f box[4], const cv::Mat &pred) const;
+
+  std::vector<std::vector<cv::Point>> _contours;
+  std::vector<Candidate> _candidates;
+  std::vector<Stripe> _stripes;
+  ScratchMat _integral; // DET_SCORE_FAST 时 pred 的积分图，CV_64F
+  cv::Mat _integral_sum;  // 本帧 _integral 的 Mat 头
+};
+
+/**
+ * 合并分块检测得到的文本框：同一文本在相邻分块的重叠区内被重复检出，
+ * 或被分块边界截断成几段时，合并为覆盖全部片段的最小外接矩形
+ * @param boxes 原图坐标，输入输出，合并后的框位于组内第一个框的位置
+ * @param box_tiles 每个框所在的分块区域
+ * @param src_size 原图尺寸
+ */
+void merge_tile_boxes(std::vector<TextQuad> &boxes,
+                      const std::vector<cv::Rect> &box_tiles,
+                      cv::Size src_size);
+}
@@ -0,0 +1,56 @@
+//
+// Character dictionary for CTC decoding
+//
+
+#include "ocr_dict.h"
+#include "common.h"
+#include <cstring>
+#include <fstream>
+#include <iterator>
+
+namespace ppredictor {
+
+bool OCR_Dict::load_from_file(const std::string &path) {
+  std::ifstream in(path, std::ios::in | std::ios::binary);
+  if (!in) {
+    LOGE("ocr cpp open dict failed %s", path.c_str());
+    return false;
+  }
+  std::string content((std::istreambuf_iterator<char>(in)),
+                      std::istreambuf_iterator<char>());
+  load(content.data(), content.size());
+  LOGI("ocr cpp dict loaded, size %ld", (long)size());
+  return true;
+}
+
+void OCR_Dict::load(const char *data, size_t len) {
+  _blob.clear();
+  _offsets.clear();
+  _blob.reserve(len + 8);
+  _offsets.push_back(0);
+
+  add("black", 5); // blank 占位
+  // 与 String.split("\n") 一致：丢弃末尾的空行
+  size_t end = len;
+  while (end > 0 && data[end - 1] == '\n') {
+    end--;
+  }
+  size_t begin = 0;
+  while (end > 0) {
+    const char *newline =
+        static_cast<const char *>(memchr(data + begin, '\n', end - begin));
+    size_t stop = newline ? newline - data : end;
+    add(data + begin, stop - begin);
+    begin = stop + 1;
+    if (!newline) {
+      break;
+    }
+  }
+  add(" ", 1); // 空格
+}
+
+void OCR_Dict::add(const char *data, size_t len) {
+  _blob.append(data, len);
+  _offsets.push_back((uint32_t)_blob.size());
+}
+}
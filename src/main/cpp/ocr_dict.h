@@ -0,0 +1,54 @@
+//
+// Character dictionary for CTC decoding
+//
+#pragma once
+
+#include <cstdint>
+#include <string>
+#include <vector>
+
+namespace ppredictor {
+
+/**
+ * ppocr_keys_v1.txt 的紧凑表示：所有字符的 UTF-8 字节存放在一个连续缓冲区中，
+ * 通过偏移表按下标取出。下标与 CRNN 输出一致：0 为 blank 占位，末尾追加空格。
+ */
+class OCR_Dict {
+public:
+  /**
+   * 加载字典文件
+   * @param path
+   * @return 是否加载成功
+   */
+  bool load_from_file(const std::string &path);
+
+  /**
+   * 从内存加载字典内容，每行一个字符
+   * @param data
+   * @param len
+   */
+  void load(const char *data, size_t len);
+
+  size_t size() const { return _offsets.empty() ? 0 : _offsets.size() - 1; }
+
+  bool empty() const { return size() == 0; }
+
+  /**
+   * 将下标对应字符的 UTF-8 字节追加到 out，越界下标忽略
+   * @param index
+   * @param out
+   */
+  void append(int index, std::string &out) const {
+    if (index < 0 || index >= (int)size()) {
+      return;
+    }
+    out.append(_blob, _offsets[index], _offsets[index + 1] - _offsets[index]);
+  }
+
+private:
+  void add(const char *data, size_t len);
+
+  std::string _blob;
+  std::vector<uint32_t> _offsets;
+};
+}
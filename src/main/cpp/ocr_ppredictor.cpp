@@ -8,43 +8,296 @@
 #include "ocr_crnn_process.h"
 #include "ocr_db_post_process.h"
 #include "preprocess.h"
+#include <atomic>
+#include <chrono>
+#include <numeric>
+#include <thread>
 
 namespace ppredictor {
 
-OCR_PPredictor::OCR_PPredictor(const OCR_Config &config) : _config(config) {}
+// 各阶段临时缓冲区的槽位
+enum DET_SCRATCH { DET_RESIZE, DET_BIT_MAP, DET_SCRATCH_NUM };
+enum REC_SCRATCH { REC_RESIZE, REC_SCRATCH_NUM };
+enum CLS_SCRATCH { CLS_WARP, CLS_RESIZE, CLS_SCRATCH_NUM };
+
+static const std::vector<float> DET_MEAN = {0.485f, 0.456f, 0.406f};
+static const std::vector<float> DET_SCALE = {1 / 0.229f, 1 / 0.224f, 1 / 0.225f};
+static const std::vector<float> REC_MEAN = {0.5f, 0.5f, 0.5f};
+static const std::vector<float> REC_SCALE = {1 / 0.5f, 1 / 0.5f, 1 / 0.5f};
+
+// 判定为倒置且置信度超过该值时旋转 180 度
+static const float CLS_THRESH = 0.9f;
+
+// 自动检测尺寸：探测未检出文本时使用的尺寸（与固定尺寸的默认值相同），
+// 以及探测框达到该数量时视为密集文本，按较小的文本高度选择尺寸
+static const int DET_AUTO_FALLBACK_SIZE = 960;
+static const int DET_AUTO_DENSE_BOXES = 16;
+
+// rec 分批：与批内最窄一行相比，宽度不超过 RATIO 倍加 PAD 像素的归入同一批，
+// 限制补齐带来的额外计算
+static const float REC_BUCKET_RATIO = 1.25f;
+static const int REC_BUCKET_PAD = 32;
+
+static int stage_thread_num(int stage_thread_num, int thread_num) {
+  return stage_thread_num > 0 ? stage_thread_num : thread_num;
+}
+
+static int det_worker_num(const OCR_Config &config) {
+  return std::max(config.det_worker_num, 1);
+}
+
+// det 线程数由各路平分，每路至少 1 个线程
+static int det_worker_thread_num(const OCR_Config &config) {
+  int thread_num = stage_thread_num(config.det_thread_num, config.thread_num);
+  return std::max(thread_num / det_worker_num(config), 1);
+}
+
+// 分块边长取 32 的倍数，0 表示不分块
+static int det_tile_size(const OCR_Config &config) {
+  return config.det_tile_size > 0 ? std::max(config.det_tile_size / 32 * 32, 64)
+                                  : 0;
+}
+
+static int det_probe_size(const OCR_Config &config) {
+  return std::max(config.det_probe_size, 32);
+}
+
+static int rec_worker_num(const OCR_Config &config) {
+  return std::max(config.rec_worker_num, 1);
+}
+
+// rec 线程数由各路平分，每路至少 1 个线程
+static int rec_worker_thread_num(const OCR_Config &config) {
+  int thread_num = stage_thread_num(config.rec_thread_num, config.thread_num);
+  return std::max(thread_num / rec_worker_num(config), 1);
+}
+
+static int64_t elapsed_ns(std::chrono::steady_clock::time_point start) {
+  return std::chrono::duration_cast<std::chrono::nanoseconds>(
+             std::chrono::steady_clock::now() - start)
+      .count();
+}
+
+OCR_ModelSource::OCR_ModelSource(const OCR_Config &config, bool from_file,
+                                 const std::string models[3],
+                                 const ModelReader &reader)
+    : _from_file(from_file), _reader(reader), _use_opencl(config.use_opencl),
+      _mode(config.mode) {
+  _det.source = models[0];
+  _det.thread_num = det_worker_thread_num(config);
+  _rec.source = models[1];
+  _rec.thread_num = rec_worker_thread_num(config);
+  _cls.source = models[2];
+  _cls.thread_num = stage_thread_num(config.cls_thread_num, config.thread_num);
+}
+
+OCR_ModelSource::Model &OCR_ModelSource::model(int stage) {
+  switch (stage) {
+  case STAGE_DET:
+    return _det;
+  case STAGE_REC:
+    return _rec;
+  default:
+    return _cls;
+  }
+}
+
+std::unique_ptr<PPredictor> OCR_ModelSource::create(int stage) {
+  Model &model = this->model(stage);
+  std::lock_guard<std::mutex> lock(model.mutex);
+  auto start = std::chrono::steady_clock::now();
+  // reader 读出的内容保留下来，后续各路 predictor 由同一份内容加载
+  if (_reader && model.content.empty() &&
+      !_reader(model.source, model.content)) {
+    std::string().swap(model.content);
+    LOGE("ocr cpp read model %s failed", model.source.c_str());
+    return nullptr;
+  }
+  // 所用 Paddle Lite 不支持 PaddlePredictor::Clone()，每路各自加载一份模型
+  std::unique_ptr<PPredictor> predictor(
+      new PPredictor{_use_opencl, model.thread_num,
+                     stage == STAGE_DET ? NET_OCR : NET_OCR_INTERNAL, _mode});
+  int ret;
+  if (_reader) {
+    ret = predictor->init_nb(model.content);
+  } else if (_from_file) {
+    ret = predictor->init_from_file(model.source);
+  } else {
+    ret = predictor->init_nb(model.source);
+  }
+  if (ret != RETURN_OK) {
+    LOGE("ocr cpp stage %d model load failed", stage);
+    return nullptr;
+  }
+  LOGI("ocr cpp stage %d model loaded in %lld ms", stage,
+       (long long)(elapsed_ns(start) / 1000000));
+  return predictor;
+}
+
+OCR_PPredictor::OCR_PPredictor(const OCR_Config &config)
+    : _config(config), _det_pool(new WorkerPool(det_worker_num(config))),
+      _cls_arena(CLS_SCRATCH_NUM),
+      _rec_pool(new WorkerPool(rec_worker_num(config))) {
+  // 各路的 predictor 在 load_stages 中创建
+  for (int i = 0; i < det_worker_num(config); i++) {
+    _det_workers.emplace_back(new DetWorker(DET_SCRATCH_NUM));
+  }
+  for (int i = 0; i < rec_worker_num(config); i++) {
+    _rec_workers.emplace_back(new RecWorker(REC_SCRATCH_NUM));
+  }
+  if (config.rec_cache_bytes > 0) {
+    _rec_cache = std::make_shared<RecCache>(size_t(config.rec_cache_bytes));
+  }
+}
 
 int OCR_PPredictor::init(const std::string &det_model_content,
                          const std::string &rec_model_content,
                          const std::string &cls_model_content) {
-  _det_predictor = std::unique_ptr<PPredictor>(
-      new PPredictor{_config.use_opencl,_config.thread_num, NET_OCR, _config.mode});
-  _det_predictor->init_nb(det_model_content);
-
-  _rec_predictor = std::unique_ptr<PPredictor>(
-      new PPredictor{_config.use_opencl,_config.thread_num, NET_OCR_INTERNAL, _config.mode});
-  _rec_predictor->init_nb(rec_model_content);
-
-  _cls_predictor = std::unique_ptr<PPredictor>(
-      new PPredictor{_config.use_opencl,_config.thread_num, NET_OCR_INTERNAL, _config.mode});
-  _cls_predictor->init_nb(cls_model_content);
-  return RETURN_OK;
+  const std::string models[3] = {det_model_content, rec_model_content,
+                                 cls_model_content};
+  _models = std::make_shared<OCR_ModelSource>(_config, false, models);
+  return load_stages(_config.preload_stages) ? RETURN_OK : -1;
 }
 
 int OCR_PPredictor::init_from_file(const std::string &det_model_path,
                                    const std::string &rec_model_path,
                                    const std::string &cls_model_path) {
-  _det_predictor = std::unique_ptr<PPredictor>(
-      new PPredictor{_config.use_opencl, _config.thread_num, NET_OCR, _config.mode});
-  _det_predictor->init_from_file(det_model_path);
+  const std::string models[3] = {det_model_path, rec_model_path,
+                                 cls_model_path};
+  _models = std::make_shared<OCR_ModelSource>(_config, true, models);
+  return load_stages(_config.preload_stages) ? RETURN_OK : -1;
+}
+
+int OCR_PPredictor::init_from_reader(const ModelReader &reader,
+                                     const std::string &det_model_name,
+                                     const std::string &rec_model_name,
+                                     const std::string &cls_model_name) {
+  const std::string models[3] = {det_model_name, rec_model_name,
+                                 cls_model_name};
+  _models = std::make_shared<OCR_ModelSource>(_config, false, models, reader);
+  return load_stages(_config.preload_stages) ? RETURN_OK : -1;
+}
+
+bool OCR_PPredictor::load_stages(int stages) {
+  stages &= ~_loaded_stages.load();
+  if (stages == 0) {
+    return true;
+  }
+  if (!_models) {
+    LOGE("ocr cpp predictor is not initialized");
+    return false;
+  }
+  // 同时加载多个阶段（init 预加载、克隆）时各阶段在独立线程中解析模型，
+  // 调用线程加载其中一个，各阶段只写各自的成员
+  static const int ALL_STAGES[] = {STAGE_DET, STAGE_REC, STAGE_CLS};
+  std::atomic<bool> ok(true);
+  std::vector<std::thread> threads;
+  int local_stage = 0;
+  for (int stage : ALL_STAGES) {
+    if (!(stages & stage)) {
+      continue;
+    }
+    if (local_stage == 0) {
+      local_stage = stage;
+    } else {
+      threads.emplace_back([this, stage, &ok]() {
+        if (!load_stage(stage)) {
+          ok = false;
+        }
+      });
+    }
+  }
+  if (!load_stage(local_stage)) {
+    ok = false;
+  }
+  for (std::thread &thread : threads) {
+    thread.join();
+  }
+  if (!ok) {
+    LOGE("ocr cpp load stages %d failed", stages);
+    return false;
+  }
+  _loaded_stages.fetch_or(stages);
+  return true;
+}
 
+bool OCR_PPredictor::load_stage(int stage) {
+  auto start = std::chrono::steady_clock::now();
+  bool ok = true;
+  switch (stage) {
+  case STAGE_DET:
+    // 每路单独加载 det 模型（克隆出的实例同样如此），一路失败即停止
+    for (std::unique_ptr<DetWorker> &worker : _det_workers) {
+      worker->predictor = _models->create(STAGE_DET);
+      if (!worker->predictor) {
+        ok = false;
+        break;
+      }
+    }
+    break;
+  case STAGE_REC:
+    // 每路单独加载 rec 模型（克隆出的实例同样如此），一路失败即停止
+    for (std::unique_ptr<RecWorker> &worker : _rec_workers) {
+      std::unique_ptr<PPredictor> predictor = _models->create(STAGE_REC);
+      if (!predictor) {
+        ok = false;
+        break;
+      }
+      // rec_stats 会读取各路的 predictor
+      std::lock_guard<std::mutex> lock(_stats_mutex);
+      worker->predictor = std::move(predictor);
+    }
+    break;
+  case STAGE_CLS:
+    _cls_predictor = _models->create(STAGE_CLS);
+    ok = _cls_predictor != nullptr;
+    break;
+  }
+  const int64_t load_ns = elapsed_ns(start);
+  std::lock_guard<std::mutex> lock(_stats_mutex);
+  switch (stage) {
+  case STAGE_DET:
+    _load_stats.det_load_ns += load_ns;
+    break;
+  case STAGE_REC:
+    _load_stats.rec_load_ns += load_ns;
+    break;
+  case STAGE_CLS:
+    _load_stats.cls_load_ns += load_ns;
+    break;
+  }
+  return ok;
+}
 
-  _rec_predictor = std::unique_ptr<PPredictor>(
-      new PPredictor{_config.use_opencl,_config.thread_num, NET_OCR_INTERNAL, _config.mode});
-  _rec_predictor->init_from_file(rec_model_path);
+std::unique_ptr<OCR_PPredictor> OCR_PPredictor::clone() {
+  if (!_models) {
+    LOGE("ocr cpp clone an uninitialized predictor");
+    return nullptr;
+  }
+  // 共用模型来源，已加载的阶段在克隆出的实例中由模型单独加载
+  std::unique_ptr<OCR_PPredictor> cloned(new OCR_PPredictor{_config});
+  cloned->_models = _models;
+  cloned->_dict = _dict;
+  cloned->_rec_cache = _rec_cache;
+  if (!cloned->load_stages(_loaded_stages.load())) {
+    return nullptr;
+  }
+  return cloned;
+}
 
-  _cls_predictor = std::unique_ptr<PPredictor>(
-      new PPredictor{_config.use_opencl,_config.thread_num, NET_OCR_INTERNAL, _config.mode});
-  _cls_predictor->init_from_file(cls_model_path);
+int OCR_PPredictor::init_dict_from_file(const std::string &label_path) {
+  if (!_dict.load_from_file(label_path)) {
+    return -1;
+  }
+  return RETURN_OK;
+}
+
+int OCR_PPredictor::init_dict(const std::string &content) {
+  if (content.empty()) {
+    LOGE("ocr cpp dict is empty");
+    return -1;
+  }
+  _dict.load(content.data(), content.size());
   return RETURN_OK;
 }
 /**
@@ -77,36 +330,359 @@ visual_img(const std::vector<std::vector<std::vector<int>>> &filter_boxes,
   cv::imwrite("/sdcard/1/vis.png", img_vis);
 }
 
-std::vector<OCRPredictResult>
+std::vector<OCRPredictResult> &
 OCR_PPredictor::infer_ocr(cv::Mat &origin,int max_size_len, int run_det, int run_cls, int run_rec) {
   LOGI("ocr cpp start *****************");
   LOGI("ocr cpp det: %d, cls: %d, rec: %d", run_det, run_cls, run_rec);
-  std::vector<OCRPredictResult> ocr_results;
-  if(run_det){
-    infer_det(origin, max_size_len, ocr_results);
-  }
-  if(run_rec){
-    if(ocr_results.size()==0){
-      OCRPredictResult res;
-      ocr_results.emplace_back(std::move(res));
+  _job.origin = origin;
+  _job.max_size_len = max_size_len;
+  _job.run_det = run_det;
+  _job.run_cls = run_cls;
+  _job.run_rec = run_rec;
+  run_det_stage(_job);
+  run_cls_stage(_job);
+  run_rec_stage(_job);
+  // origin 可能引用调用方的内存，不在 job 中保留
+  _job.origin = cv::Mat();
+
+  LOGI("ocr cpp end *****************");
+  return _job.results;
+}
+
+std::vector<OCRPredictResult> &
+OCR_PPredictor::infer_boxes(cv::Mat &origin, const std::vector<TextQuad> &boxes,
+                            int run_cls) {
+  _job.origin = origin;
+  _job.run_det = 0;
+  _job.run_cls = run_cls;
+  _job.run_rec = 1;
+  _job.page = OCR_PageInfo();
+  _job.reset_results(boxes.size());
+  for (int i = 0; i < boxes.size(); i++) {
+    std::vector<std::vector<int>> &points = _job.results[i].points;
+    points.resize(4);
+    for (int j = 0; j < 4; j++) {
+      points[j].assign({boxes[i].points[j].x, boxes[i].points[j].y});
     }
-    for(int i = 0; i < ocr_results.size();i++) {
-      infer_rec(origin, run_cls, ocr_results[i]);
+  }
+  run_cls_stage(_job);
+  run_rec_stage(_job);
+  _job.origin = cv::Mat();
+  return _job.results;
+}
+
+void OCR_PPredictor::run_det_stage(OCR_Job &job) {
+  job.reset_results(0);
+  job.page = OCR_PageInfo();
+  if (job.origin.empty()) {
+    return;
+  }
+  if (job.run_det) {
+    auto start = std::chrono::steady_clock::now();
+    if (load_stages(STAGE_DET)) {
+      infer_det(job);
     }
-  }else if(run_cls){
-    ClsPredictResult cls_res = infer_cls(origin);
-    OCRPredictResult res;
-    res.cls_score = cls_res.cls_score;
-    res.cls_label = cls_res.cls_label;
-    ocr_results.push_back(res);
+    // 只有 det 线程写入，读取无需加锁
+    if (_load_stats.first_det_ns == 0) {
+      const int64_t first_det_ns = elapsed_ns(start);
+      {
+        std::lock_guard<std::mutex> lock(_stats_mutex);
+        _load_stats.first_det_ns = first_det_ns;
+      }
+      LOGI("ocr cpp first det in %lld ms",
+           (long long)(first_det_ns / 1000000));
+    }
+  }
+  if (job.run_rec) {
+    // 未检测或未检出文本框时整图作为一行识别
+    if (job.results.empty()) {
+      job.reset_results(1);
+      job.results[0].points.clear();
+    }
+  } else if (job.run_cls) {
+    // 只做方向分类时整图的分类结果追加在末尾
+    size_t size = job.results.size();
+    job.reset_results(size + 1);
+    job.results[size].points.clear();
   }
+}
 
-  LOGI("ocr cpp end *****************");
-  return ocr_results;
+void OCR_PPredictor::run_cls_stage(OCR_Job &job) {
+  if (job.origin.empty()) {
+    return;
+  }
+  if (!job.run_rec) {
+    if (job.run_cls && !job.results.empty() && load_stages(STAGE_CLS)) {
+      const int index = 0;
+      infer_cls_batch(&job.origin, &job.results.back(), &index, 1);
+      job.page.cls_policy = CLS_PER_LINE;
+      job.page.cls_runs = 1;
+    }
+    return;
+  }
+  const int count = job.results.size();
+  if (job.crops.size() < count) {
+    job.crops.resize(count);
+    job.crop_buffers.resize(count);
+  }
+  // 直接裁剪到 job 独占的内存，供 rec 阶段在另一线程读取；整图识别时引用 origin
+  for (int i = 0; i < count; i++) {
+    OCRPredictResult &res = job.results[i];
+    if (res.points.size() > 0) {
+      job.crops[i] = get_rotate_crop_image(job.origin, res.points,
+                                           job.crop_buffers[i],
+                                           _cls_arena[CLS_WARP]);
+    } else {
+      job.crops[i] = job.origin;
+    }
+  }
+  if (!job.run_cls || !load_stages(STAGE_CLS)) {
+    return;
+  }
+
+  if (job.run_cls == CLS_PAGE_VOTE && count > _config.cls_vote_sample) {
+    vote_page_orientation(job);
+  } else {
+    _cls_order.resize(count);
+    std::iota(_cls_order.begin(), _cls_order.end(), 0);
+    infer_cls_batch(job.crops.data(), job.results.data(), _cls_order.data(),
+                    count);
+    job.page.cls_policy = CLS_PER_LINE;
+    job.page.cls_runs = count;
+  }
+  // 只旋转判定为倒置的文本行：crop 在 job 内存中时原地翻转，
+  // 引用 origin 时翻转到 job 内存，不修改 origin
+  for (int i = 0; i < count; i++) {
+    OCRPredictResult &res = job.results[i];
+    if (res.cls_label % 2 == 1 && res.cls_score > CLS_THRESH) {
+      const cv::Mat &crop = job.crops[i];
+      cv::Mat rotated =
+          job.crop_buffers[i].get(crop.rows, crop.cols, crop.type());
+      cv::flip(crop, rotated, -1);
+      job.crops[i] = rotated;
+    }
+  }
+}
+
+void OCR_PPredictor::vote_page_orientation(OCR_Job &job) {
+  const int count = job.results.size();
+  const int sample = std::max(std::min(_config.cls_vote_sample, count), 1);
+  _cls_order.resize(count);
+  std::iota(_cls_order.begin(), _cls_order.end(), 0);
+  // 面积大的文本行字多，方向判断更可靠
+  std::partial_sort(_cls_order.begin(), _cls_order.begin() + sample,
+                    _cls_order.end(), [&job](int a, int b) {
+                      return job.crops[a].total() > job.crops[b].total();
+                    });
+  infer_cls_batch(job.crops.data(), job.results.data(), _cls_order.data(),
+                  sample);
+  job.page.cls_runs = sample;
+
+  const OCRPredictResult &first = job.results[_cls_order[0]];
+  bool unanimous = true;
+  float min_score = first.cls_score;
+  for (int n = 0; n < sample; n++) {
+    const OCRPredictResult &res = job.results[_cls_order[n]];
+    unanimous = unanimous && res.cls_label == first.cls_label &&
+                res.cls_score > CLS_THRESH;
+    min_score = std::min(min_score, res.cls_score);
+  }
+
+  if (!unanimous) {
+    infer_cls_batch(job.crops.data(), job.results.data(),
+                    _cls_order.data() + sample, count - sample);
+    job.page.cls_policy = CLS_PAGE_VOTE_FALLBACK;
+    job.page.cls_runs = count;
+    return;
+  }
+  // 其余文本行沿用投票结果，分数取样本中的最低分
+  for (int n = sample; n < count; n++) {
+    OCRPredictResult &res = job.results[_cls_order[n]];
+    res.cls_label = first.cls_label;
+    res.cls_score = min_score;
+  }
+  job.page.cls_policy = CLS_PAGE_VOTE;
+  job.page.cls_skipped = count - sample;
+  job.page.page_cls_label = first.cls_label;
+  LOGI("ocr cpp cls page vote label %d, skipped %d", first.cls_label,
+       count - sample);
 }
 
-cv::Mat DetResizeImg(const cv::Mat img, int max_size_len,
-                     std::vector<float> &ratio_hw) {
+void OCR_PPredictor::run_rec_stage(OCR_Job &job) {
+  if (job.origin.empty() || !job.run_rec) {
+    return;
+  }
+  const int count = job.results.size();
+  if (count == 0) {
+    return;
+  }
+
+  // 命中缓存的文本行直接填入结果，其余的进入 _rec_order 参与分批。
+  // 缓存键取自 rec 输入的文本行图像，相同的图像缩放后的输入也相同
+  _rec_order.resize(count);
+  int rec_count = 0;
+  if (_rec_cache) {
+    _rec_keys.resize(count);
+    for (int i = 0; i < count; i++) {
+      _rec_keys[i] = RecCache::key(job.crops[i]);
+      OCRPredictResult &res = job.results[i];
+      if (!_rec_cache->get(_rec_keys[i], res.word_index, res.text, res.score)) {
+        _rec_order[rec_count++] = i;
+      }
+    }
+  } else {
+    std::iota(_rec_order.begin(), _rec_order.end(), 0);
+    rec_count = count;
+  }
+  const int hits = count - rec_count;
+  _rec_order.resize(rec_count);
+  if (hits > 0) {
+    LOGI("ocr cpp rec cache hit %d of %d", hits, count);
+  }
+  {
+    std::lock_guard<std::mutex> lock(_stats_mutex);
+    if (hits > 0) {
+      // 按此前未命中行的平均处理时间估算
+      const int64_t recognized = _rec_stats.lines - _rec_stats.cache_hits;
+      if (recognized > 0) {
+        _rec_stats.cache_saved_ns += _rec_stats.busy_ns / recognized * hits;
+      }
+    }
+    _rec_stats.lines += count;
+    _rec_stats.cache_hits += hits;
+  }
+  if (rec_count == 0 || !load_stages(STAGE_REC)) {
+    return;
+  }
+
+  // 按缩放后的宽度排序，宽度相近的文本行分为一批，补齐到批内最宽后一次推理
+  _rec_widths.resize(count);
+  for (int i : _rec_order) {
+    const cv::Mat &crop = job.crops[i];
+    int width = crnn_resize_width(crop, float(crop.cols) / float(crop.rows));
+    if (_config.rec_max_width > 0) {
+      width = std::min(width, _config.rec_max_width);
+    }
+    _rec_widths[i] = width;
+  }
+  std::sort(_rec_order.begin(), _rec_order.end(),
+            [this](int a, int b) { return _rec_widths[a] < _rec_widths[b]; });
+
+  const int batch_num = std::max(_config.rec_batch_num, 1);
+  _rec_batches.clear();
+  int begin = 0;
+  while (begin < rec_count) {
+    // 取整后宽度相同的总是归入同一批，补齐不带来额外的 shape
+    int first_width = _rec_widths[_rec_order[begin]];
+    int limit = std::max(int(first_width * REC_BUCKET_RATIO) + REC_BUCKET_PAD,
+                         rec_input_width(first_width));
+    int end = begin + 1;
+    while (end < rec_count && end - begin < batch_num &&
+           _rec_widths[_rec_order[end]] <= limit) {
+      end++;
+    }
+    _rec_batches.emplace_back(begin, end);
+    begin = end;
+  }
+
+  // 各路 rec 从共享下标中领取批次，先处理宽的批次，减少最后只剩一路在跑的时间
+  const int batch_count = _rec_batches.size();
+  std::atomic<int> next_batch(0);
+  auto stage_start = std::chrono::steady_clock::now();
+  _rec_pool->run([&](int worker_id) {
+    RecWorker &worker = *_rec_workers[worker_id];
+    auto worker_start = std::chrono::steady_clock::now();
+    int batch;
+    while ((batch = next_batch.fetch_add(1)) < batch_count) {
+      const std::pair<int, int> &range = _rec_batches[batch_count - 1 - batch];
+      infer_rec_batch(worker, job, &_rec_order[range.first],
+                      range.second - range.first);
+    }
+    worker.busy_ns = elapsed_ns(worker_start);
+  });
+
+  int64_t wall_ns = elapsed_ns(stage_start);
+  {
+    std::lock_guard<std::mutex> lock(_stats_mutex);
+    _rec_stats.wall_ns += wall_ns;
+    _rec_stats.capacity_ns += wall_ns * int64_t(_rec_workers.size());
+    for (const std::unique_ptr<RecWorker> &worker : _rec_workers) {
+      _rec_stats.busy_ns += worker->busy_ns;
+    }
+    _rec_stats.batches += batch_count;
+  }
+  if (_rec_cache) {
+    for (int i : _rec_order) {
+      const OCRPredictResult &res = job.results[i];
+      _rec_cache->put(_rec_keys[i], res.word_index, res.text, res.score);
+    }
+  }
+}
+
+void OCR_Job::reset_results(size_t size) {
+  while (results.size() > size) {
+    _spare_results.push_back(std::move(results.back()));
+    results.pop_back();
+  }
+  while (results.size() < size) {
+    if (_spare_results.empty()) {
+      results.emplace_back();
+    } else {
+      results.push_back(std::move(_spare_results.back()));
+      _spare_results.pop_back();
+    }
+  }
+  // points 由调用方覆盖，保留内层 vector 避免每个框重新分配
+  for (OCRPredictResult &res : results) {
+    res.word_index.clear();
+    res.text.clear();
+    res.score = 0.f;
+    res.cls_score = 0.f;
+    res.cls_label = -1;
+  }
+}
+
+size_t OCR_PPredictor::arena_bytes() const {
+  size_t bytes = _cls_arena.bytes();
+  for (const std::unique_ptr<DetWorker> &worker : _det_workers) {
+    bytes += worker->arena.bytes();
+  }
+  for (const std::unique_ptr<RecWorker> &worker : _rec_workers) {
+    bytes += worker->arena.bytes();
+  }
+  return bytes;
+}
+
+int64_t OCR_PPredictor::arena_reallocs() const {
+  int64_t reallocs = _cls_arena.reallocs();
+  for (const std::unique_ptr<DetWorker> &worker : _det_workers) {
+    reallocs += worker->arena.reallocs();
+  }
+  for (const std::unique_ptr<RecWorker> &worker : _rec_workers) {
+    reallocs += worker->arena.reallocs();
+  }
+  return reallocs;
+}
+
+OCR_PPredictor::RecStats OCR_PPredictor::rec_stats() const {
+  std::lock_guard<std::mutex> lock(_stats_mutex);
+  RecStats stats = _rec_stats;
+  stats.workers = _rec_workers.size();
+  for (const std::unique_ptr<RecWorker> &worker : _rec_workers) {
+    if (worker->predictor) {
+      stats.shape_changes += worker->predictor->shape_changes();
+    }
+  }
+  return stats;
+}
+
+OCR_PPredictor::LoadStats OCR_PPredictor::load_stats() const {
+  std::lock_guard<std::mutex> lock(_stats_mutex);
+  return _load_stats;
+}
+
+static cv::Mat DetResizeImg(const cv::Mat &img, int max_size_len,
+                            ScratchMat &dst) {
   int w = img.cols;
   int h = img.rows;
 
@@ -136,86 +712,222 @@ cv::Mat DetResizeImg(const cv::Mat img, int max_size_len,
   else
     resize_w = (resize_w / 32 - 1) * 32;
 
-  cv::Mat resize_img;
+  cv::Mat resize_img = dst.get(resize_h, resize_w, img.type());
   cv::resize(img, resize_img, cv::Size(resize_w, resize_h));
-
-  ratio_hw.push_back(static_cast<float>(resize_h) / static_cast<float>(h));
-  ratio_hw.push_back(static_cast<float>(resize_w) / static_cast<float>(w));
   return resize_img;
 }
 
-void OCR_PPredictor::infer_det(cv::Mat &origin, int max_size_len, std::vector<OCRPredictResult> &ocr_results) {
-  std::vector<float> mean = {0.485f, 0.456f, 0.406f};
-  std::vector<float> scale = {1 / 0.229f, 1 / 0.224f, 1 / 0.225f};
-
-  PredictorInput input = _det_predictor->get_first_input();
-
-  std::vector<float> ratio_hw;
-  cv::Mat input_image = DetResizeImg(origin, max_size_len, ratio_hw);
-  input_image.convertTo(input_image, CV_32FC3, 1 / 255.0f);
-  const float *dimg = reinterpret_cast<const float *>(input_image.data);
-  int input_size = input_image.rows * input_image.cols;
-
-  input.set_dims({1, 3, input_image.rows, input_image.cols});
+/**
+ * 沿一个方向切分长度为 length 的区间，相邻分块重叠 overlap，
+ * 最后一块与末端对齐，各块长度均为 min(tile, length)
+ */
+static void split_tile_range(int length, int tile, int overlap,
+                             std::vector<int> &starts) {
+  starts.clear();
+  if (length <= tile) {
+    starts.push_back(0);
+    return;
+  }
+  const int step = tile - overlap;
+  for (int start = 0;; start += step) {
+    if (start + tile >= length) {
+      starts.push_back(length - tile);
+      break;
+    }
+    starts.push_back(start);
+  }
+}
 
-  neon_mean_scale(dimg, input.get_mutable_float_data(), input_size, mean,
-                  scale);
-  LOGI("ocr cpp det shape %d,%d", input_image.rows,input_image.cols);
-  std::vector<PredictorOutput> results = _det_predictor->infer();
-  PredictorOutput &res = results.at(0);
-  std::vector<std::vector<std::vector<int>>> filtered_box = calc_filtered_boxes(
-          res.get_float_data(), res.get_size(), input_image.rows, input_image.cols, origin);
-  LOGI("ocr cpp det Filter_box size %ld", filtered_box.size());
+void OCR_PPredictor::infer_det(OCR_Job &job) {
+  const cv::Mat &origin = job.origin;
+  const int tile_size = det_tile_size(_config);
+  const std::vector<TextQuad> *boxes;
+  if (tile_size > 0 && std::max(origin.rows, origin.cols) > tile_size) {
+    infer_det_tiles(origin, tile_size);
+    boxes = &_det_boxes;
+    job.page.det_size = tile_size;
+  } else {
+    DetWorker &worker = *_det_workers[0];
+    int max_size_len = job.max_size_len;
+    if (max_size_len <= DET_SIZE_AUTO) {
+      max_size_len = auto_det_size(worker, origin);
+      if (max_size_len > det_probe_size(_config)) {
+        detect(worker, origin, max_size_len);
+      }
+    } else {
+      detect(worker, origin, max_size_len);
+    }
+    boxes = &worker.boxes;
+    // DetResizeImg 不放大，实际尺寸不超过原图长边
+    job.page.det_size =
+        std::min(max_size_len, std::max(origin.rows, origin.cols));
+  }
+  LOGI("ocr cpp det Filter_box size %ld", boxes->size());
 
-  for(int i = 0;i<filtered_box.size();i++){
-    LOGI("ocr cpp box  %d,%d,%d,%d,%d,%d,%d,%d", filtered_box[i][0][0],filtered_box[i][0][1], filtered_box[i][1][0],filtered_box[i][1][1], filtered_box[i][2][0],filtered_box[i][2][1], filtered_box[i][3][0],filtered_box[i][3][1]);
-    OCRPredictResult res;
-    res.points = filtered_box[i];
-    ocr_results.push_back(res);
+  job.reset_results(boxes->size());
+  for (int i = 0; i < boxes->size(); i++) {
+    const cv::Point *box = (*boxes)[i].points;
+    LOGI("ocr cpp box  %d,%d,%d,%d,%d,%d,%d,%d", box[0].x, box[0].y, box[1].x,
+         box[1].y, box[2].x, box[2].y, box[3].x, box[3].y);
+    std::vector<std::vector<int>> &points = job.results[i].points;
+    points.resize(4);
+    for (int j = 0; j < 4; j++) {
+      points[j].assign({box[j].x, box[j].y});
+    }
   }
 }
 
-void OCR_PPredictor::infer_rec(const cv::Mat &origin_img, int run_cls, OCRPredictResult& ocr_result) {
-  std::vector<float> mean = {0.5f, 0.5f, 0.5f};
-  std::vector<float> scale = {1 / 0.5f, 1 / 0.5f, 1 / 0.5f};
-  std::vector<int64_t> dims = {1, 3, 0, 0};
+int OCR_PPredictor::auto_det_size(DetWorker &worker, const cv::Mat &origin) {
+  const int probe_size = det_probe_size(_config);
+  const int long_side = std::max(origin.rows, origin.cols);
+  detect(worker, origin, probe_size);
+  // 不放大原图，长边不超过探测尺寸时按原尺寸检测
+  if (long_side <= probe_size) {
+    return long_side;
+  }
+  const int max_size = std::max(_config.det_auto_max_size, probe_size);
+  if (worker.boxes.empty()) {
+    // 没有文本，或文本在探测尺寸下太小
+    LOGI("ocr cpp det auto size: no probe box");
+    return std::min(std::min(DET_AUTO_FALLBACK_SIZE, max_size), long_side);
+  }
+
+  // 文本框短边（原图像素）
+  _det_probe_heights.clear();
+  for (const TextQuad &quad : worker.boxes) {
+    const cv::Point *box = quad.points;
+    float width = float(cv::norm(box[0] - box[1]));
+    float height = float(cv::norm(box[0] - box[3]));
+    _det_probe_heights.push_back(std::min(width, height));
+  }
+  // 稀疏时取中位数；密集页面中小字在探测尺寸下容易漏检，取下四分位数
+  const size_t count = _det_probe_heights.size();
+  const size_t nth = count >= DET_AUTO_DENSE_BOXES ? count / 4 : count / 2;
+  std::nth_element(_det_probe_heights.begin(),
+                   _det_probe_heights.begin() + nth, _det_probe_heights.end());
+  const float text_height = std::max(_det_probe_heights[nth], 1.f);
 
-  PredictorInput input = _rec_predictor->get_first_input();
+  // 检测输入中的文本高度 = text_height * size / long_side
+  int size = int(std::ceil(_config.det_min_text_height * float(long_side) /
+                           text_height));
+  size = (size + 31) / 32 * 32;
+  size = std::min(std::max(size, probe_size), std::min(max_size, long_side));
+  LOGI("ocr cpp det auto size %d, probe boxes %ld, text height %f", size,
+       count, text_height);
+  return size;
+}
 
-  const std::vector<std::vector<int>> &box = ocr_result.points;
-  cv::Mat crop_img;
-  if(box.size()>0){
-    crop_img = get_rotate_crop_image(origin_img, box);
+void OCR_PPredictor::infer_det_tiles(const cv::Mat &origin, int tile_size) {
+  const int overlap =
+      std::min(std::max(_config.det_tile_overlap, 0), tile_size / 2);
+  split_tile_range(origin.cols, tile_size, overlap, _det_tile_xs);
+  split_tile_range(origin.rows, tile_size, overlap, _det_tile_ys);
+  _det_tiles.clear();
+  for (int y : _det_tile_ys) {
+    for (int x : _det_tile_xs) {
+      _det_tiles.emplace_back(x, y, std::min(tile_size, origin.cols),
+                              std::min(tile_size, origin.rows));
+    }
   }
-  else{
-    crop_img = origin_img;
+  const int tile_num = _det_tiles.size();
+  if (_det_tile_boxes.size() < tile_num) {
+    _det_tile_boxes.resize(tile_num);
   }
+  LOGI("ocr cpp det %d tiles, size %d, overlap %d", tile_num, tile_size,
+       overlap);
+
+  // 各路依次领取下一个分块；分块已是原分辨率，以 tile_size 为上限即不再缩小
+  std::atomic<int> next(0);
+  _det_pool->run([&](int worker_id) {
+    DetWorker &worker = *_det_workers[worker_id];
+    for (int t = next++; t < tile_num; t = next++) {
+      const cv::Rect &tile = _det_tiles[t];
+      detect(worker, origin(tile), tile_size);
+      std::vector<TextQuad> &tile_boxes = _det_tile_boxes[t];
+      tile_boxes.assign(worker.boxes.begin(), worker.boxes.end());
+      for (TextQuad &quad : tile_boxes) {
+        for (cv::Point &point : quad.points) {
+          point += tile.tl();
+        }
+      }
+    }
+  });
 
-  if(run_cls){
-    ClsPredictResult cls_res = infer_cls(crop_img);
-    crop_img = cls_res.img;
-    ocr_result.cls_score = cls_res.cls_score;
-    ocr_result.cls_label = cls_res.cls_label;
+  // 按分块顺序收集后合并，结果与并行路数无关
+  _det_boxes.clear();
+  _det_box_tiles.clear();
+  for (int t = 0; t < tile_num; t++) {
+    const std::vector<TextQuad> &tile_boxes = _det_tile_boxes[t];
+    _det_boxes.insert(_det_boxes.end(), tile_boxes.begin(), tile_boxes.end());
+    _det_box_tiles.insert(_det_box_tiles.end(), tile_boxes.size(),
+                          _det_tiles[t]);
   }
+  merge_tile_boxes(_det_boxes, _det_box_tiles, origin.size());
+}
+
+void OCR_PPredictor::detect(DetWorker &worker, const cv::Mat &img,
+                            int max_size_len) {
+  PredictorInput input = worker.predictor->get_first_input();
+
+  cv::Mat input_image =
+      DetResizeImg(img, max_size_len, worker.arena[DET_RESIZE]);
 
+  input.set_dims({1, 3, input_image.rows, input_image.cols});
 
-  float wh_ratio = float(crop_img.cols) / float(crop_img.rows);
-  cv::Mat input_image = crnn_resize_img(crop_img, wh_ratio);
-  input_image.convertTo(input_image, CV_32FC3, 1 / 255.0f);
-  const float *dimg = reinterpret_cast<const float *>(input_image.data);
-  int input_size = input_image.rows * input_image.cols;
+  // uint8 直接归一化写入 tensor，不再经过 float 中间图
+  normalize_to_chw(input_image, input.get_mutable_float_data(), DET_MEAN,
+                   DET_SCALE);
+  LOGI("ocr cpp det shape %d,%d", input_image.rows,input_image.cols);
+  std::vector<PredictorOutput> results = worker.predictor->infer();
+  PredictorOutput &res = results.at(0);
+  calc_filtered_boxes(worker, res.get_float_data(), res.get_size(),
+                      input_image.rows, input_image.cols, img, worker.boxes);
+}
 
-  dims[2] = input_image.rows;
-  dims[3] = input_image.cols;
-  input.set_dims(dims);
+void OCR_PPredictor::infer_rec_batch(RecWorker &worker, OCR_Job &job,
+                                     const int *indices, int count) {
+  // indices 按宽度升序，最后一行最宽
+  const int height = REC_IMAGE_SHAPE[1];
+  const int width = rec_input_width(_rec_widths[indices[count - 1]]);
+  const int image_size = 3 * height * width;
 
-  neon_mean_scale(dimg, input.get_mutable_float_data(), input_size, mean,
-                  scale);
+  PredictorInput input = worker.predictor->get_first_input();
+  input.set_dims({count, 3, height, width});
+  float *input_data = input.get_mutable_float_data();
+  // 补齐部分在归一化后的值为 0，与 crnn_resize_norm_img 的补边方式一致
+  std::fill(input_data, input_data + count * image_size, 0.f);
+  for (int n = 0; n < count; n++) {
+    cv::Mat input_image = crnn_resize_img_to_width(
+        job.crops[indices[n]], _rec_widths[indices[n]], worker.arena[REC_RESIZE]);
+    normalize_to_chw(input_image, input_data + n * image_size, width, height,
+                     REC_MEAN, REC_SCALE);
+  }
 
-  std::vector<PredictorOutput> results = _rec_predictor->infer();
+  std::vector<PredictorOutput> results = worker.predictor->infer();
   const float *predict_batch = results.at(0).get_float_data();
   const std::vector<int64_t> predict_shape = results.at(0).get_shape();
+  const int64_t row_size = predict_shape[1] * predict_shape[2];
+  for (int n = 0; n < count; n++) {
+    decode_rec(predict_batch + n * row_size, predict_shape[1],
+               predict_shape[2], job.results[indices[n]]);
+  }
+  LOGI("ocr cpp rec batch size %d, width %d", count, width);
+}
+
+int OCR_PPredictor::rec_input_width(int width) const {
+  const int step = _config.rec_width_step;
+  if (step > 1) {
+    width = (width + step - 1) / step * step;
+  }
+  if (_config.rec_max_width > 0) {
+    width = std::min(width, _config.rec_max_width);
+  }
+  return width;
+}
 
+void OCR_PPredictor::decode_rec(const float *predict, int64_t time_steps,
+                                int64_t class_num,
+                                OCRPredictResult &ocr_result) {
   // ctc decode
   int argmax_idx;
   int last_index = 0;
@@ -223,16 +935,16 @@ void OCR_PPredictor::infer_rec(const cv::Mat &origin_img, int run_cls, OCRPredic
   int count = 0;
   float max_value = 0.0f;
 
-  for (int n = 0; n < predict_shape[1]; n++) {
-    argmax_idx = int(argmax(&predict_batch[n * predict_shape[2]],
-                            &predict_batch[(n + 1) * predict_shape[2]]));
-    max_value =
-        float(*std::max_element(&predict_batch[n * predict_shape[2]],
-                                &predict_batch[(n + 1) * predict_shape[2]]));
+  for (int n = 0; n < time_steps; n++) {
+    argmax_idx = int(argmax(&predict[n * class_num],
+                            &predict[(n + 1) * class_num]));
+    max_value = float(*std::max_element(&predict[n * class_num],
+                                        &predict[(n + 1) * class_num]));
     if (argmax_idx > 0 && (!(n > 0 && argmax_idx == last_index))) {
       score += max_value;
       count += 1;
       ocr_result.word_index.push_back(argmax_idx);
+      _dict.append(argmax_idx, ocr_result.text);
     }
     last_index = argmax_idx;
   }
@@ -241,72 +953,86 @@ void OCR_PPredictor::infer_rec(const cv::Mat &origin_img, int run_cls, OCRPredic
   LOGI("ocr cpp rec word size %ld", count);
 }
 
-ClsPredictResult OCR_PPredictor::infer_cls(const cv::Mat &img, float thresh) {
-  std::vector<float> mean = {0.5f, 0.5f, 0.5f};
-  std::vector<float> scale = {1 / 0.5f, 1 / 0.5f, 1 / 0.5f};
-  std::vector<int64_t> dims = {1, 3, 0, 0};
-
-  PredictorInput input = _cls_predictor->get_first_input();
-
-  cv::Mat input_image = cls_resize_img(img);
-  input_image.convertTo(input_image, CV_32FC3, 1 / 255.0f);
-  const float *dimg = reinterpret_cast<const float *>(input_image.data);
-  int input_size = input_image.rows * input_image.cols;
-
-  dims[2] = input_image.rows;
-  dims[3] = input_image.cols;
-  input.set_dims(dims);
-
-  neon_mean_scale(dimg, input.get_mutable_float_data(), input_size, mean,
-                  scale);
+void OCR_PPredictor::infer_cls_batch(const cv::Mat *imgs,
+                                     OCRPredictResult *results,
+                                     const int *indices, int count) {
+  // cls 输入尺寸固定，分批一次推理
+  const int height = CLS_IMAGE_SHAPE[1];
+  const int width = CLS_IMAGE_SHAPE[2];
+  const int image_size = 3 * height * width;
+  const int batch_num = std::max(_config.cls_batch_num, 1);
 
-  std::vector<PredictorOutput> results = _cls_predictor->infer();
+  for (int begin = 0; begin < count; begin += batch_num) {
+    const int size = std::min(batch_num, count - begin);
+    PredictorInput input = _cls_predictor->get_first_input();
+    input.set_dims({size, 3, height, width});
+    float *input_data = input.get_mutable_float_data();
+    for (int n = 0; n < size; n++) {
+      cv::Mat input_image =
+          cls_resize_img(imgs[indices[begin + n]], _cls_arena[CLS_RESIZE]);
+      normalize_to_chw(input_image, input_data + n * image_size, REC_MEAN,
+                       REC_SCALE);
+    }
 
-  const float *scores = results.at(0).get_float_data();
-  float score = 0;
-  int label = 0;
-  for (int64_t i = 0; i < results.at(0).get_size(); i++) {
-    LOGI("ocr cpp cls output scores [%f]", scores[i]);
-    if (scores[i] > score) {
-      score = scores[i];
-      label = i;
+    std::vector<PredictorOutput> outputs = _cls_predictor->infer();
+    const float *scores = outputs.at(0).get_float_data();
+    const int64_t class_num = outputs.at(0).get_size() / size;
+    for (int n = 0; n < size; n++) {
+      const float *row = scores + n * class_num;
+      int label = int(argmax(row, row + class_num));
+      OCRPredictResult &res = results[indices[begin + n]];
+      res.cls_label = label;
+      res.cls_score = row[label];
+      LOGI("ocr cpp cls word cls %d, %f", label, row[label]);
     }
   }
-  cv::Mat srcimg;
-  img.copyTo(srcimg);
-  if (label % 2 == 1 && score > thresh) {
-    cv::rotate(srcimg, srcimg, 1);
-  }
-  ClsPredictResult res;
-  res.cls_label = label;
-  res.cls_score = score;
-  res.img = srcimg;
-  LOGI("ocr cpp cls word cls %ld, %f", label, score);
-  return res;
 }
 
-std::vector<std::vector<std::vector<int>>>
-OCR_PPredictor::calc_filtered_boxes(const float *pred, int pred_size,
-                                    int output_height, int output_width,
-                                    const cv::Mat &origin) {
-  const double threshold = 0.3;
-  const double maxvalue = 1;
-
-  cv::Mat pred_map = cv::Mat::zeros(output_height, output_width, CV_32F);
-  memcpy(pred_map.data, pred, pred_size * sizeof(float));
-  cv::Mat cbuf_map;
-  pred_map.convertTo(cbuf_map, CV_8UC1);
+#ifdef OCR_DET_MAP_DUMP_DIR
+// 记录 det 概率图与原图尺寸，格式见 src/test/cpp/db_post_process_test.cpp
+static void dump_det_map(const cv::Mat &pred_map, const cv::Size &src_size) {
+  static std::atomic<int> index(0);
+  const std::string path = std::string(OCR_DET_MAP_DUMP_DIR) + "/det_map_" +
+                           std::to_string(index++) + ".yml.gz";
+  cv::FileStorage fs(path, cv::FileStorage::WRITE);
+  if (!fs.isOpened()) {
+    LOGE("ocr cpp open %s failed", path.c_str());
+    return;
+  }
+  fs << "pred" << pred_map << "src_width" << src_size.width << "src_height"
+     << src_size.height;
+  LOGI("ocr cpp det map written to %s", path.c_str());
+}
+#endif
 
-  cv::Mat bit_map;
-  cv::threshold(cbuf_map, bit_map, threshold, maxvalue, cv::THRESH_BINARY);
+void OCR_PPredictor::calc_filtered_boxes(DetWorker &worker, const float *pred,
+                                         int pred_size, int output_height,
+                                         int output_width,
+                                         const cv::Mat &origin,
+                                         std::vector<TextQuad> &boxes) {
+  if (pred_size < output_height * output_width) {
+    LOGE("ocr cpp det output size %d < %dx%d", pred_size, output_height,
+         output_width);
+    boxes.clear();
+    return;
+  }
+  // 直接引用输出 tensor 的内存，无需复制
+  cv::Mat pred_map(output_height, output_width, CV_32F,
+                   const_cast<float *>(pred));
+#ifdef OCR_DET_MAP_DUMP_DIR
+  dump_det_map(pred_map, origin.size());
+#endif
+  cv::Mat bit_map =
+      worker.arena[DET_BIT_MAP].get(output_height, output_width, CV_8UC1);
+  // 直接对浮点概率图按 threshold 二值化。原先先 convertTo(CV_8UC1)（四舍五入）
+  // 再与 0.3 比较，实际只保留概率 > 0.5 的像素；默认 threshold 为 0.5，
+  // 结果与原先相同，设为 0.3 时二值图更大，检出的文本框随之变化
+  cv::compare(pred_map, _config.det.threshold, bit_map, cv::CMP_GT);
 
-  std::vector<std::vector<std::vector<int>>> boxes =
-      boxes_from_bitmap(pred_map, bit_map);
   float ratio_h = output_height * 1.0f / origin.rows;
   float ratio_w = output_width * 1.0f / origin.cols;
-  std::vector<std::vector<std::vector<int>>> filter_boxes =
-      filter_tag_det_res(boxes, ratio_h, ratio_w, origin);
-  return filter_boxes;
+  worker.post_process.run(_config.det, pred_map, bit_map, ratio_h, ratio_w,
+                          origin.size(), boxes);
 }
 
 std::vector<int>
@@ -4,19 +4,76 @@
 
 #pragma once
 
+#include "ocr_db_post_process.h"
+#include "ocr_dict.h"
+#include "ocr_rec_cache.h"
+#include "ocr_scratch.h"
 #include "ppredictor.h"
+#include "worker_pool.h"
 #include <opencv2/opencv.hpp>
+#include <atomic>
+#include <functional>
+#include <memory>
+#include <mutex>
 #include <paddle_api.h>
 #include <string>
 
 namespace ppredictor {
 
+/**
+ * 模型所属阶段，可按位组合
+ */
+enum OCR_STAGE {
+  STAGE_DET = 1,
+  STAGE_REC = 2,
+  STAGE_CLS = 4,
+  STAGE_ALL = STAGE_DET | STAGE_REC | STAGE_CLS,
+};
+
 /**
  * Config
  */
 struct OCR_Config {
     int use_opencl = 0;
     int thread_num = 4; // Thread num
+  // 各阶段线程数，0 表示使用 thread_num；流水线模式下按阶段分配线程预算
+  int det_thread_num = 0;
+  int rec_thread_num = 0;
+  int cls_thread_num = 0;
+  // det 并行路数，各路独立加载 det 模型（不共享权重，内存随路数增长）并平分
+  // det 线程数，分块检测时按分块并行
+  int det_worker_num = 1;
+  // det_tile_size > 0 且图片长边超过该值时分块检测：不再整体缩小到 max_size_len，
+  // 而是按原分辨率切成边长 det_tile_size（向下取 32 的倍数）、相邻重叠 det_tile_overlap
+  // 的分块分别检测，再合并跨分块的文本框。重叠应大于最高的文本行
+  int det_tile_size = 0;
+  int det_tile_overlap = 128;
+  // max_size_len 为 DET_SIZE_AUTO 时自动选择检测尺寸：先以 det_probe_size 探测，
+  // 再取能让文本框短边在检测输入中不低于 det_min_text_height 像素的最小尺寸，
+  // 不超过 det_auto_max_size
+  int det_probe_size = 320;
+  int det_min_text_height = 16;
+  int det_auto_max_size = 1920;
+  // rec 每批的最大文本行数，<= 1 时逐行识别
+  int rec_batch_num = 8;
+  // rec 并行路数，各路独立加载 rec 模型（不共享权重，内存随路数增长）并平分
+  // rec 线程数，按批次并行识别
+  int rec_worker_num = 1;
+  // rec 输入宽度按 rec_width_step 向上取整后右侧补齐，使输入 shape 取值有限，<= 1 不取整；
+  // rec_max_width > 0 时更宽的文本行压缩到该宽度
+  int rec_width_step = 32;
+  int rec_max_width = 0;
+  // rec_cache_bytes > 0 时缓存文本行识别结果，内容完全相同的文本行不再识别，
+  // 由克隆出的预测器共用
+  int64_t rec_cache_bytes = 0;
+  // cls 每批的最大图像数，cls 输入尺寸固定，通常一次即可处理完一张图片的所有文本行
+  int cls_batch_num = 16;
+  // 整页投票时参与投票的文本行数（取面积最大的几行）
+  int cls_vote_sample = 5;
+  // init 时即加载的阶段 STAGE_*（各阶段同时加载），其余阶段在首次使用时才加载
+  int preload_stages = 0;
+  // det 后处理参数
+  DetConfig det;
   paddle::lite_api::PowerMode mode =
       paddle::lite_api::LITE_POWER_HIGH; // PaddleLite Mode
 };
@@ -26,17 +83,116 @@ struct OCR_Config {
  */
 struct OCRPredictResult {
   std::vector<int> word_index;
+  std::string text; // UTF-8, 字典未加载时为空
   std::vector<std::vector<int>> points;
-  float score;
-  float cls_score;
+  float score = 0.f;
+  float cls_score = 0.f;
   int cls_label=-1;
 };
 
-struct ClsPredictResult {
-    float cls_score;
-    int cls_label=-1;
-    cv::Mat img;
+/**
+ * 方向分类方式，即 infer_ocr 的 run_cls 参数
+ */
+enum CLS_POLICY {
+  CLS_OFF = 0,
+  CLS_PER_LINE = 1, // 每个文本行分别分类
+  CLS_PAGE_VOTE = 2, // 先对面积最大的几行投票，一致时整页采用同一方向
+  CLS_PAGE_VOTE_FALLBACK = 3, // 仅用于 OCR_PageInfo：投票不一致，已退回逐行分类
+};
+
+/**
+ * max_size_len 取该值时由探测结果自动选择检测尺寸
+ */
+static const int DET_SIZE_AUTO = 0;
+
+/**
+ * 整张图片的处理信息，随结果一起返回
+ */
+struct OCR_PageInfo {
+  int cls_policy = CLS_OFF; // 实际采用的方向分类方式
+  int cls_runs = 0;         // 经过 cls 模型的图像数
+  int cls_skipped = 0;      // 因整页投票而未经 cls 模型的文本行数
+  int page_cls_label = -1;  // 整页投票得出的方向，未投票或投票不一致时为 -1
+  int det_size = 0; // 实际使用的检测尺寸，分块检测时为分块边长，未检测时为 0
+};
+
+/**
+ * 一张图片在 det -> cls -> rec 之间传递的数据。
+ * 流水线模式下各阶段在各自线程中处理不同的 job，同一个 job 在阶段之间串行传递。
+ */
+struct OCR_Job {
+  cv::Mat origin;
+  cv::Point offset; // origin 左上角在调用方坐标系中的位置
+  int max_size_len = 960;
+  int run_det = 1;
+  int run_cls = 1;
+  int run_rec = 1;
+  std::vector<OCRPredictResult> results;
+  std::vector<cv::Mat> crops; // cls 阶段输出、rec 阶段输入的文本行图像
+  std::vector<ScratchMat> crop_buffers; // crops 的底层内存，由 job 独占，只增不减
+  std::vector<uint8_t> pending_payload; // java 缓冲区容量不足时暂存的序列化结果
+  OCR_PageInfo page;
+
+  /**
+   * 调整结果数量并清空内容，多余的结果连同其内部容量一起留作下次使用。
+   * points 由调用方覆盖
+   * @param size
+   */
+  void reset_results(size_t size);
+
+private:
+  std::vector<OCRPredictResult> _spare_results;
 };
+/**
+ * 按名称读取模型内容，用于模型不在文件系统中的情况（如 APK assets）
+ * @return 是否读取成功
+ */
+typedef std::function<bool(const std::string &name, std::string &content)>
+    ModelReader;
+
+/**
+ * 各阶段模型的延迟加载：首次需要某个阶段时才从文件或内存加载该模型。
+ * 所用 Paddle Lite 不支持 PaddlePredictor::Clone()，各路 predictor 不共享权重，
+ * 每次 create 都由路径或保留的模型内容单独加载一份。
+ * 由同一次 init 克隆出的 OCR_PPredictor 共用，线程安全
+ */
+class OCR_ModelSource {
+public:
+  /**
+   * @param from_file 为 true 时 models 为模型路径，否则为模型内容
+   * @param models 依次为 det、rec、cls
+   * @param reader 不为空时 models 为模型名称，加载时由 reader 读取内容
+   */
+  OCR_ModelSource(const OCR_Config &config, bool from_file,
+                  const std::string models[3],
+                  const ModelReader &reader = ModelReader());
+
+  /**
+   * 单独加载一个 stage 的 predictor，失败不影响下次调用
+   * @param stage STAGE_DET、STAGE_REC 或 STAGE_CLS
+   * @return 失败时返回 nullptr
+   */
+  std::unique_ptr<PPredictor> create(int stage);
+
+private:
+  struct Model {
+    std::mutex mutex;
+    std::string source;  // 路径、名称或模型内容
+    std::string content; // reader 读出的模型内容，首次加载时读取
+    int thread_num = 1;
+  };
+
+  Model &model(int stage);
+
+  bool _from_file;
+  ModelReader _reader;
+  int _use_opencl;
+  paddle::lite_api::PowerMode _mode;
+  Model _det;
+  Model _rec;
+  Model _cls;
+};
+
 /**
  * OCR there are 2 models
  * 1. First model（det），select polygones to show where are the texts
@@ -49,10 +205,10 @@ public:
   virtual ~OCR_PPredictor() {}
 
   /**
-   * 初始化二个模型的Predictor
+   * 初始化二个模型的Predictor，只加载 preload_stages 中的阶段，其余阶段首次使用时加载
    * @param det_model_content
    * @param rec_model_content
-   * @return
+   * @return preload_stages 中任一阶段加载失败时返回 -1
    */
   int init(const std::string &det_model_content,
            const std::string &rec_model_content,
@@ -60,6 +216,35 @@ public:
   int init_from_file(const std::string &det_model_path,
                      const std::string &rec_model_path,
                      const std::string &cls_model_path);
+
+  /**
+   * 模型由 reader 按名称读取，读取推迟到各阶段加载时
+   */
+  int init_from_reader(const ModelReader &reader,
+                       const std::string &det_model_name,
+                       const std::string &rec_model_name,
+                       const std::string &cls_model_name);
+
+  /**
+   * 加载字典，加载后 infer_rec 直接输出 UTF-8 文本
+   * @param label_path
+   * @return 文件无法读取时返回 -1
+   */
+  int init_dict_from_file(const std::string &label_path);
+
+  /**
+   * 从内存加载字典，每行一个字符
+   * @return 内容为空时返回 -1
+   */
+  int init_dict(const std::string &content);
+
+  /**
+   * 以相同的模型与配置创建新实例，用于多线程并发识别。已加载的阶段在新实例中
+   * 同样由模型单独加载（不共享权重），字典与识别缓存共用。
+   * 不能与当前实例的 infer_ocr 并发调用
+   * @return 失败时返回 nullptr
+   */
+  std::unique_ptr<OCR_PPredictor> clone();
   /**
    * Return OCR result
    * @param dims
@@ -69,44 +254,197 @@ public:
    * @param origin
    * @return
    */
-  virtual std::vector<OCRPredictResult>
+  virtual std::vector<OCRPredictResult> &
   infer_ocr(cv::Mat &origin, int max_size_len, int run_det, int run_cls, int run_rec);
 
+  /**
+   * 不检测，只对给定的文本框做方向分类与识别，结果与 boxes 一一对应
+   * @param origin
+   * @param boxes origin 坐标
+   * @param run_cls 方向分类方式 CLS_*
+   */
+  std::vector<OCRPredictResult> &
+  infer_boxes(cv::Mat &origin, const std::vector<TextQuad> &boxes, int run_cls);
+
+  /**
+   * 分阶段接口，infer_ocr 即依次调用这三个阶段。
+   * 每个阶段只使用各自的模型和临时缓冲区，三个阶段可在不同线程中同时处理不同的 job，
+   * 但同一阶段不能并发调用
+   * @param job
+   */
+  void run_det_stage(OCR_Job &job);
+  void run_cls_stage(OCR_Job &job);
+  void run_rec_stage(OCR_Job &job);
+
   virtual NET_TYPE get_net_flag() const;
 
+  /**
+   * 上一次 forward 因 java 缓冲区容量不足而暂存的序列化结果
+   * @return
+   */
+  std::vector<uint8_t> &pending_payload() { return _job.pending_payload; }
+
+  /**
+   * 上一次 infer_ocr 的整页信息
+   */
+  const OCR_PageInfo &page_info() const { return _job.page; }
+
+  /**
+   * 各阶段临时缓冲区占用的总字节数
+   */
+  size_t arena_bytes() const;
+
+  /**
+   * 临时缓冲区累计扩容次数
+   */
+  int64_t arena_reallocs() const;
+
+  /**
+   * rec 阶段累计统计，用于评估多路并行的收益
+   */
+  struct RecStats {
+    int workers = 0;         // rec 路数
+    int64_t wall_ns = 0;     // rec 阶段耗时
+    int64_t busy_ns = 0;     // 各路实际处理时间之和
+    int64_t capacity_ns = 0; // 耗时 × 路数，busy_ns / capacity_ns 即并行效率
+    int64_t lines = 0;       // 识别的文本行数
+    int64_t batches = 0;     // 推理次数
+    int64_t shape_changes = 0; // 输入 shape 与上一次推理不同的次数
+    int64_t cache_hits = 0;    // 命中识别缓存的文本行数（计入 lines）
+    int64_t cache_saved_ns = 0; // 命中缓存节省的 rec 时间（估算）
+  };
+
+  /**
+   * rec 阶段累计统计的快照，可在其他线程中调用
+   */
+  RecStats rec_stats() const;
+
+  /**
+   * 冷启动统计，均为本实例的耗时
+   */
+  struct LoadStats {
+    int64_t det_load_ns = 0; // 创建 det predictor 的耗时，含等待模型加载
+    int64_t rec_load_ns = 0;
+    int64_t cls_load_ns = 0;
+    int64_t first_det_ns = 0; // 第一次 det 阶段的耗时（含加载），尚未检测时为 0
+  };
+
+  /**
+   * 冷启动统计的快照，可在其他线程中调用
+   */
+  LoadStats load_stats() const;
+
 private:
+  /**
+   * 一路 det：独立的 predictor（单独加载的一份 det 模型）、临时缓冲区与后处理，
+   * 只在 det 阶段的一个线程中使用
+   */
+  struct DetWorker {
+    explicit DetWorker(int slot_num) : arena(slot_num) {}
+
+    std::unique_ptr<PPredictor> predictor;
+    ScratchArena arena;
+    DBPostProcess post_process;
+    std::vector<TextQuad> boxes; // 上一次 detect 的结果
+  };
+
+  /**
+   * 一路 rec：独立的 predictor（单独加载的一份 rec 模型）与临时缓冲区，
+   * 只在 rec 阶段的一个线程中使用
+   */
+  struct RecWorker {
+    explicit RecWorker(int slot_num) : arena(slot_num) {}
+
+    std::unique_ptr<PPredictor> predictor;
+    ScratchArena arena;
+    int64_t busy_ns = 0; // 上一次 rec 阶段的处理时间
+  };
+
+  /**
+   * 确保 stages 中各阶段的 predictor 已创建，各阶段只在各自的线程中调用
+   * @return 是否全部可用
+   */
+  bool load_stages(int stages);
+
+  /**
+   * 创建一个阶段的 predictor
+   * @param stage STAGE_DET、STAGE_REC 或 STAGE_CLS
+   */
+  bool load_stage(int stage);
+
   /**
    * calcul Polygone from the result image of first model
+   * @param worker
    * @param pred
    * @param output_height
    * @param output_width
    * @param origin
-   * @return
+   * @param boxes 输出
    */
-  std::vector<std::vector<std::vector<int>>>
-  calc_filtered_boxes(const float *pred, int pred_size, int output_height,
-                      int output_width, const cv::Mat &origin);
+  void calc_filtered_boxes(DetWorker &worker, const float *pred, int pred_size,
+                           int output_height, int output_width,
+                           const cv::Mat &origin, std::vector<TextQuad> &boxes);
 
   void
-  infer_det(cv::Mat &origin, int max_side_len, std::vector<OCRPredictResult>& ocr_results);
+  infer_det(OCR_Job &job);
+
   /**
-   * infer for rec model
-   *
-   * @param boxes
+   * 检测一张图片，长边缩小到 max_size_len 以内，结果写入 worker.boxes（img 坐标）
+   */
+  void detect(DetWorker &worker, const cv::Mat &img, int max_size_len);
+
+  /**
+   * 自动选择检测尺寸：以 det_probe_size 探测一次（结果留在 worker.boxes），
+   * 按文本框高度估计所需的尺寸
+   * @return 选定的尺寸，不超过原图长边；不大于 det_probe_size 时探测结果即为最终结果
+   */
+  int auto_det_size(DetWorker &worker, const cv::Mat &origin);
+
+  /**
+   * 分块检测 origin，合并后的结果写入 _det_boxes
    * @param origin
-   * @return
+   * @param tile_size 已取整的分块边长
    */
-  void
-  infer_rec(const cv::Mat &origin, int run_cls, OCRPredictResult& ocr_result);
+  void infer_det_tiles(const cv::Mat &origin, int tile_size);
 
-    /**
-  * infer for cls model
-  *
-  * @param boxes
-  * @param origin
-  * @return
-  */
-  ClsPredictResult infer_cls(const cv::Mat &origin, float thresh = 0.9);
+  /**
+   * 一次推理识别一批文本行，各行补齐到批内最宽的宽度
+   *
+   * @param worker
+   * @param job
+   * @param indices 文本行在 job 中的下标，按 _rec_widths 升序
+   * @param count
+   */
+  void infer_rec_batch(RecWorker &worker, OCR_Job &job, const int *indices,
+                       int count);
+
+  /**
+   * 批次的输入宽度：按 rec_width_step 取整，不超过 rec_max_width
+   */
+  int rec_input_width(int width) const;
+
+  /**
+   * CTC 解码一行 [time_steps, class_num] 的输出，追加到 ocr_result
+   */
+  void decode_rec(const float *predict, int64_t time_steps, int64_t class_num,
+                  OCRPredictResult &ocr_result);
+
+  /**
+   * 判断 imgs[indices[n]] 的方向，写入 results[indices[n]] 的 cls_label 与 cls_score，
+   * 按 cls_batch_num 分批推理
+   *
+   * @param imgs
+   * @param results 与 imgs 一一对应
+   * @param indices
+   * @param count
+   */
+  void infer_cls_batch(const cv::Mat *imgs, OCRPredictResult *results,
+                       const int *indices, int count);
+
+  /**
+   * 对面积最大的 cls_vote_sample 行投票，一致时整页采用同一方向，否则补齐其余行的分类
+   */
+  void vote_page_orientation(OCR_Job &job);
 
   /**
    * Postprocess or sencod model to extract text
@@ -122,9 +460,43 @@ private:
    */
   float postprocess_rec_score(const PredictorOutput &res);
 
-  std::unique_ptr<PPredictor> _det_predictor;
-  std::unique_ptr<PPredictor> _rec_predictor;
+  std::shared_ptr<OCR_ModelSource> _models;
+  // 已创建 predictor 的阶段，各阶段可能在不同线程中加载
+  std::atomic<int> _loaded_stages{0};
+  // 保护 _load_stats、_rec_stats 与 rec 各路的 predictor 指针：
+  // 在 det/rec 线程中更新，统计接口在其他线程中读取
+  mutable std::mutex _stats_mutex;
+  LoadStats _load_stats;
   std::unique_ptr<PPredictor> _cls_predictor;
+  OCR_Dict _dict;
   OCR_Config _config;
+  // infer_ocr 使用的 job 与各阶段临时缓冲区，跨帧复用，只增不减
+  OCR_Job _job;
+  std::vector<std::unique_ptr<DetWorker>> _det_workers;
+  std::unique_ptr<WorkerPool> _det_pool;
+  // 分块检测用，分块的起点、区域、各分块的结果（原图坐标），
+  // 以及合并前后的全部文本框与其所在的分块
+  std::vector<int> _det_tile_xs;
+  std::vector<int> _det_tile_ys;
+  std::vector<cv::Rect> _det_tiles;
+  std::vector<std::vector<TextQuad>> _det_tile_boxes;
+  std::vector<TextQuad> _det_boxes;
+  std::vector<cv::Rect> _det_box_tiles;
+  // 自动选择检测尺寸时各探测框的高度
+  std::vector<float> _det_probe_heights;
+  ScratchArena _cls_arena;
+  std::vector<std::unique_ptr<RecWorker>> _rec_workers;
+  std::unique_ptr<WorkerPool> _rec_pool;
+  // rec 分批用，各文本行缩放后的宽度（已限制在 rec_max_width 内）、
+  // 按宽度排序后的下标与各批次在其中的范围
+  std::vector<int> _rec_widths;
+  std::vector<int> _rec_order;
+  std::vector<std::pair<int, int>> _rec_batches;
+  // 识别缓存与各文本行的缓存键，未启用时为空
+  std::shared_ptr<RecCache> _rec_cache;
+  std::vector<RecCacheKey> _rec_keys;
+  // cls 阶段参与分类的文本行下标
+  std::vector<int> _cls_order;
+  RecStats _rec_stats;
 };
 }
@@ -0,0 +1,93 @@
+//
+// Content-addressed cache of recognized text lines
+//
+
+#include "ocr_rec_cache.h"
+#include <cstring>
+
+namespace ppredictor {
+
+// 估算大小用：每个条目的固定开销（链表节点、索引、字符串头等）
+static const size_t ENTRY_OVERHEAD = 128;
+
+static inline uint64_t rotl(uint64_t x, int r) {
+  return (x << r) | (x >> (64 - r));
+}
+
+static inline uint64_t fmix(uint64_t h) {
+  h ^= h >> 33;
+  h *= 0xff51afd7ed558ccdULL;
+  h ^= h >> 33;
+  h *= 0xc4ceb9fe1a85ec53ULL;
+  h ^= h >> 33;
+  return h;
+}
+
+RecCacheKey RecCache::key(const cv::Mat &img) {
+  // 两路独立的乘法混合，按 8 字节读取，行尾不足 8 字节的部分补零
+  uint64_t h1 = 0x9e3779b97f4a7c15ULL ^ uint64_t(img.rows);
+  uint64_t h2 = 0x632be59bd9b4e019ULL ^ (uint64_t(img.cols) << 16) ^
+                uint64_t(img.type());
+  const size_t row_bytes = img.cols * img.elemSize();
+  for (int y = 0; y < img.rows; y++) {
+    const uint8_t *row = img.ptr<uint8_t>(y);
+    size_t x = 0;
+    uint64_t v;
+    for (; x + 8 <= row_bytes; x += 8) {
+      std::memcpy(&v, row + x, 8);
+      h1 = rotl((h1 ^ v) * 0x87c37b91114253d5ULL, 31);
+      h2 = rotl((h2 + v) * 0x4cf5ad432745937fULL, 27);
+    }
+    if (x < row_bytes) {
+      v = 0;
+      std::memcpy(&v, row + x, row_bytes - x);
+      h1 = rotl((h1 ^ v) * 0x87c37b91114253d5ULL, 31);
+      h2 = rotl((h2 + v) * 0x4cf5ad432745937fULL, 27);
+    }
+  }
+  RecCacheKey key;
+  key.h1 = fmix(h1 + h2);
+  key.h2 = fmix(h2 ^ rotl(h1, 17));
+  return key;
+}
+
+bool RecCache::get(const RecCacheKey &key, std::vector<int> &word_index,
+                   std::string &text, float &score) {
+  std::lock_guard<std::mutex> lock(_mutex);
+  auto it = _index.find(key);
+  if (it == _index.end()) {
+    return false;
+  }
+  _entries.splice(_entries.begin(), _entries, it->second);
+  const Entry &entry = *it->second;
+  word_index = entry.word_index;
+  text = entry.text;
+  score = entry.score;
+  return true;
+}
+
+void RecCache::put(const RecCacheKey &key, const std::vector<int> &word_index,
+                   const std::string &text, float score) {
+  const size_t bytes =
+      ENTRY_OVERHEAD + word_index.size() * sizeof(int) + text.size();
+  if (bytes > _max_bytes) {
+    return;
+  }
+  std::lock_guard<std::mutex> lock(_mutex);
+  auto it = _index.find(key);
+  if (it != _index.end()) {
+    // 其他预测器已写入同一行
+    _entries.splice(_entries.begin(), _entries, it->second);
+    return;
+  }
+  _entries.push_front(Entry{key, word_index, text, score, bytes});
+  _index[key] = _entries.begin();
+  _bytes += bytes;
+  while (_bytes > _max_bytes) {
+    const Entry &eldest = _entries.back();
+    _bytes -= eldest.bytes;
+    _index.erase(eldest.key);
+    _entries.pop_back();
+  }
+}
+}
@@ -0,0 +1,78 @@
+//
+// Content-addressed cache of recognized text lines
+//
+#pragma once
+
+#include <cstdint>
+#include <list>
+#include <mutex>
+#include <opencv2/opencv.hpp>
+#include <string>
+#include <unordered_map>
+#include <vector>
+
+namespace ppredictor {
+
+/**
+ * 文本行图像内容的 128 位哈希
+ */
+struct RecCacheKey {
+  uint64_t h1 = 0;
+  uint64_t h2 = 0;
+
+  bool operator==(const RecCacheKey &other) const {
+    return h1 == other.h1 && h2 == other.h2;
+  }
+};
+
+/**
+ * 文本行识别结果缓存：以 rec 输入图像（矫正、方向翻转后的文本行）的内容哈希为键，
+ * 命中时直接返回上次的 word_index、文本与分数，不再经过 rec 模型。
+ * 按最近使用顺序淘汰，总大小（估算）不超过 max_bytes。
+ * 由同一次 init 克隆出的各预测器共用，线程安全
+ */
+class RecCache {
+public:
+  explicit RecCache(size_t max_bytes) : _max_bytes(max_bytes) {}
+
+  /**
+   * 计算图像内容的哈希，尺寸与类型参与计算
+   */
+  static RecCacheKey key(const cv::Mat &img);
+
+  /**
+   * 查找缓存，命中时覆盖 word_index、text 与 score
+   * @return 是否命中
+   */
+  bool get(const RecCacheKey &key, std::vector<int> &word_index,
+           std::string &text, float &score);
+
+  /**
+   * 保存识别结果，超过大小上限时淘汰最久未使用的条目
+   */
+  void put(const RecCacheKey &key, const std::vector<int> &word_index,
+           const std::string &text, float score);
+
+private:
+  struct Entry {
+    RecCacheKey key;
+    std::vector<int> word_index;
+    std::string text;
+    float score;
+    size_t bytes;
+  };
+
+  struct KeyHash {
+    size_t operator()(const RecCacheKey &key) const {
+      return size_t(key.h1 ^ (key.h2 >> 7));
+    }
+  };
+
+  std::mutex _mutex;
+  size_t _max_bytes;
+  size_t _bytes = 0;
+  // 队首为最近使用
+  std::list<Entry> _entries;
+  std::unordered_map<RecCacheKey, std::list<Entry>::iterator, KeyHash> _index;
+};
+}
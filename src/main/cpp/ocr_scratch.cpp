@@ -0,0 +1,39 @@
+//
+// Scratch buffers reused across forward calls
+//
+
+#include "ocr_scratch.h"
+#include <algorithm>
+
+namespace ppredictor {
+
+cv::Mat ScratchMat::get(int rows, int cols, int type) {
+  if (rows <= 0 || cols <= 0) {
+    return cv::Mat();
+  }
+  size_t bytes = (size_t)rows * cols * CV_ELEM_SIZE(type);
+  if (bytes > _storage.total()) {
+    // 预留一半余量，避免尺寸小幅波动时反复扩容
+    size_t capacity = std::max(bytes, _storage.total() + _storage.total() / 2);
+    _storage.create(1, (int)capacity, CV_8UC1);
+    _reallocs++;
+  }
+  return cv::Mat(rows, cols, type, _storage.data);
+}
+
+size_t ScratchArena::bytes() const {
+  size_t bytes = 0;
+  for (const ScratchMat &slot : _slots) {
+    bytes += slot.capacity();
+  }
+  return bytes;
+}
+
+int64_t ScratchArena::reallocs() const {
+  int64_t reallocs = 0;
+  for (const ScratchMat &slot : _slots) {
+    reallocs += slot.reallocs();
+  }
+  return reallocs;
+}
+}
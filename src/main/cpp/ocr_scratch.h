@@ -0,0 +1,52 @@
+//
+// Scratch buffers reused across forward calls
+//
+#pragma once
+
+#include <cstdint>
+#include <opencv2/opencv.hpp>
+#include <vector>
+
+namespace ppredictor {
+
+/**
+ * 可复用的临时图像缓冲区：底层内存只按历史最大值增长，不会缩小。
+ * get 返回指向该内存的 Mat 头（不持有引用计数），作为 OpenCV 输出时
+ * 尺寸与类型一致即不会重新分配，下一次 get 之前有效。
+ */
+class ScratchMat {
+public:
+  cv::Mat get(int rows, int cols, int type);
+
+  size_t capacity() const { return _storage.total(); }
+
+  int64_t reallocs() const { return _reallocs; }
+
+private:
+  cv::Mat _storage;
+  int64_t _reallocs = 0;
+};
+
+/**
+ * 一组按槽位编号的 ScratchMat，每个推理阶段持有一个
+ */
+class ScratchArena {
+public:
+  explicit ScratchArena(int slot_num) : _slots(slot_num) {}
+
+  ScratchMat &operator[](int slot) { return _slots[slot]; }
+
+  /**
+   * 已分配的总字节数
+   */
+  size_t bytes() const;
+
+  /**
+   * 累计扩容次数，稳定运行后应不再增长
+   */
+  int64_t reallocs() const;
+
+private:
+  std::vector<ScratchMat> _slots;
+};
+}
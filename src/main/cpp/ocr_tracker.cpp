@@ -0,0 +1,308 @@
+//
+// Temporal text tracking for camera streams
+//
+
+#include "ocr_tracker.h"
+#include "common.h"
+
+namespace ppredictor {
+
+// 光流窗口与金字塔层数
+static const int LK_WIN_SIZE = 21;
+static const int LK_MAX_LEVEL = 3;
+// 每个文本行的特征点数，不足 MIN 个时补充网格点
+static const int MAX_FEATURES = 16;
+static const int MIN_FEATURES = 4;
+// 位移与中位数相差在该像素数以内的点视为跟踪成功
+static const float INLIER_DIST = 2.f;
+// 重新检测时与已有文本行外接矩形的 IoU 达到该值视为同一行
+static const float MATCH_IOU = 0.5f;
+// 内容比较用的缩略图尺寸
+static const int THUMB_WIDTH = 64;
+static const int THUMB_HEIGHT = 16;
+
+/**
+ * 文本框的外接矩形，未限制在画面内
+ */
+static cv::Rect quad_bounds(const cv::Point2f quad[4]) {
+  float xmin = quad[0].x, xmax = quad[0].x;
+  float ymin = quad[0].y, ymax = quad[0].y;
+  for (int i = 1; i < 4; i++) {
+    xmin = std::min(xmin, quad[i].x);
+    xmax = std::max(xmax, quad[i].x);
+    ymin = std::min(ymin, quad[i].y);
+    ymax = std::max(ymax, quad[i].y);
+  }
+  return cv::Rect(cv::Point(int(std::floor(xmin)), int(std::floor(ymin))),
+                  cv::Point(int(std::ceil(xmax)) + 1, int(std::ceil(ymax)) + 1));
+}
+
+static cv::Rect quad_rect(const cv::Point2f quad[4], const cv::Size &size) {
+  return quad_bounds(quad) & cv::Rect(cv::Point(0, 0), size);
+}
+
+static float rect_iou(const cv::Rect &a, const cv::Rect &b) {
+  int inter = (a & b).area();
+  int uni = a.area() + b.area() - inter;
+  return uni > 0 ? float(inter) / float(uni) : 0.f;
+}
+
+static float median(std::vector<float> &values) {
+  size_t mid = values.size() / 2;
+  std::nth_element(values.begin(), values.begin() + mid, values.end());
+  return values[mid];
+}
+
+/**
+ * 缩略图的平均灰度差是否超过 threshold，ref 为空时视为变化
+ */
+static bool thumb_changed(const cv::Mat &thumb, const cv::Mat &ref,
+                          float threshold) {
+  return ref.empty() ||
+         cv::norm(thumb, ref, cv::NORM_L1) > threshold * thumb.total();
+}
+
+static void round_quad(const cv::Point2f quad[4], const cv::Size &size,
+                       TextQuad &out) {
+  for (int i = 0; i < 4; i++) {
+    out.points[i].x =
+        std::min(std::max(int(std::round(quad[i].x)), 0), size.width - 1);
+    out.points[i].y =
+        std::min(std::max(int(std::round(quad[i].y)), 0), size.height - 1);
+  }
+}
+
+std::vector<OCRPredictResult> &OCR_Tracker::track(OCR_PPredictor &predictor,
+                                                  cv::Mat &origin,
+                                                  int max_size_len,
+                                                  int run_cls) {
+  _stats.frames++;
+  _page = OCR_PageInfo();
+  std::swap(_gray, _prev_gray);
+  cv::cvtColor(origin, _gray, cv::COLOR_BGR2GRAY);
+
+  bool need_det = _need_det || _gray.size() != _prev_gray.size() ||
+                  ++_frames_since_det >= _config.det_interval;
+  if (!need_det && !propagate()) {
+    LOGI("ocr cpp tracker lost, redetect");
+    need_det = true;
+  }
+  if (need_det) {
+    redetect(predictor, origin, max_size_len, run_cls);
+  } else {
+    refresh_changed(predictor, origin, run_cls);
+  }
+  _need_det = false;
+
+  _results.resize(_tracks.size());
+  TextQuad quad;
+  for (int i = 0; i < _tracks.size(); i++) {
+    OCRPredictResult &res = _results[i];
+    res = _tracks[i].result;
+    round_quad(_tracks[i].quad, _gray.size(), quad);
+    res.points.resize(4);
+    for (int j = 0; j < 4; j++) {
+      res.points[j].assign({quad.points[j].x, quad.points[j].y});
+    }
+  }
+  return _results;
+}
+
+void OCR_Tracker::reset() {
+  _tracks.clear();
+  _need_det = true;
+}
+
+bool OCR_Tracker::propagate() {
+  _prev_points.clear();
+  for (const Track &track : _tracks) {
+    _prev_points.insert(_prev_points.end(), track.features.begin(),
+                        track.features.end());
+  }
+  if (_prev_points.empty()) {
+    return true;
+  }
+  cv::calcOpticalFlowPyrLK(_prev_gray, _gray, _prev_points, _next_points,
+                           _status, _error, cv::Size(LK_WIN_SIZE, LK_WIN_SIZE),
+                           LK_MAX_LEVEL);
+
+  // 文本行近似为刚性平移：取成功点位移的中位数，与中位数一致的点不足一半时视为跟踪失败
+  const int total = _tracks.size();
+  int kept = 0;
+  size_t begin = 0;
+  for (int i = 0; i < total; i++) {
+    Track &track = _tracks[i];
+    const size_t count = track.features.size();
+    const size_t end = begin + count;
+    _dx.clear();
+    _dy.clear();
+    for (size_t k = begin; k < end; k++) {
+      if (_status[k]) {
+        _dx.push_back(_next_points[k].x - _prev_points[k].x);
+        _dy.push_back(_next_points[k].y - _prev_points[k].y);
+      }
+    }
+    // 没有特征点或全部跟踪失败时丢弃该行（median 不能用于空数组）
+    if (count == 0 || _dx.empty() || _dx.size() * 2 < count) {
+      begin = end;
+      continue;
+    }
+    const float dx = median(_dx);
+    const float dy = median(_dy);
+    track.features.clear();
+    for (size_t k = begin; k < end; k++) {
+      if (_status[k] &&
+          std::abs(_next_points[k].x - _prev_points[k].x - dx) <= INLIER_DIST &&
+          std::abs(_next_points[k].y - _prev_points[k].y - dy) <= INLIER_DIST) {
+        track.features.push_back(_next_points[k]);
+      }
+    }
+    begin = end;
+    if (track.features.size() * 2 < count) {
+      continue;
+    }
+    for (cv::Point2f &point : track.quad) {
+      point.x += dx;
+      point.y += dy;
+    }
+    // 移出画面一半以上的文本行不再跟踪
+    if (quad_rect(track.quad, _gray.size()).area() * 2 <
+        quad_bounds(track.quad).area()) {
+      continue;
+    }
+    if (track.features.size() < MIN_FEATURES) {
+      extract_features(track);
+    }
+    if (kept != i) {
+      std::swap(_tracks[kept], track);
+    }
+    kept++;
+  }
+  _tracks.resize(kept);
+  return kept >= _config.min_track_ratio * total;
+}
+
+void OCR_Tracker::redetect(OCR_PPredictor &predictor, cv::Mat &origin,
+                           int max_size_len, int run_cls) {
+  _stats.det_frames++;
+  _frames_since_det = 0;
+  std::vector<OCRPredictResult> &detected =
+      predictor.infer_ocr(origin, max_size_len, 1, CLS_OFF, 0);
+  _page.det_size = predictor.page_info().det_size;
+
+  // 与已有文本行按外接矩形 IoU 贪心匹配，匹配且内容未变的沿用识别结果
+  _matched.assign(_tracks.size(), 0);
+  _next_tracks.resize(detected.size());
+  _rec_tracks.clear();
+  for (int i = 0; i < detected.size(); i++) {
+    Track &next = _next_tracks[i];
+    const std::vector<std::vector<int>> &points = detected[i].points;
+    for (int j = 0; j < 4; j++) {
+      next.quad[j] = cv::Point2f(points[j][0], points[j][1]);
+    }
+    cv::Rect rect = quad_rect(next.quad, _gray.size());
+
+    int best = -1;
+    float best_iou = MATCH_IOU;
+    for (int k = 0; k < _tracks.size(); k++) {
+      if (_matched[k]) {
+        continue;
+      }
+      float iou = rect_iou(rect, quad_rect(_tracks[k].quad, _gray.size()));
+      if (iou >= best_iou) {
+        best = k;
+        best_iou = iou;
+      }
+    }
+    if (best < 0) {
+      next.thumb.release();
+      _rec_tracks.push_back(i);
+      continue;
+    }
+    _matched[best] = 1;
+    Track &prev = _tracks[best];
+    make_thumb(next.quad, _thumb);
+    if (thumb_changed(_thumb, prev.thumb, _config.content_diff)) {
+      _rec_tracks.push_back(i);
+      continue;
+    }
+    std::swap(next.result, prev.result);
+    std::swap(next.thumb, prev.thumb);
+    extract_features(next);
+  }
+  _stats.reused_lines += detected.size() - _rec_tracks.size();
+  _tracks.swap(_next_tracks);
+  recognize(predictor, origin, run_cls);
+}
+
+void OCR_Tracker::refresh_changed(OCR_PPredictor &predictor, cv::Mat &origin,
+                                  int run_cls) {
+  _rec_tracks.clear();
+  for (int i = 0; i < _tracks.size(); i++) {
+    make_thumb(_tracks[i].quad, _thumb);
+    if (thumb_changed(_thumb, _tracks[i].thumb, _config.content_diff)) {
+      _rec_tracks.push_back(i);
+    }
+  }
+  _stats.reused_lines += _tracks.size() - _rec_tracks.size();
+  recognize(predictor, origin, run_cls);
+}
+
+void OCR_Tracker::recognize(OCR_PPredictor &predictor, cv::Mat &origin,
+                            int run_cls) {
+  const int count = _rec_tracks.size();
+  if (count == 0) {
+    return;
+  }
+  _rec_boxes.resize(count);
+  for (int n = 0; n < count; n++) {
+    round_quad(_tracks[_rec_tracks[n]].quad, _gray.size(), _rec_boxes[n]);
+  }
+  std::vector<OCRPredictResult> &results =
+      predictor.infer_boxes(origin, _rec_boxes, run_cls);
+  for (int n = 0; n < count; n++) {
+    Track &track = _tracks[_rec_tracks[n]];
+    std::swap(track.result, results[n]);
+    make_thumb(track.quad, track.thumb);
+    extract_features(track);
+  }
+  _stats.rec_lines += count;
+  const OCR_PageInfo &page = predictor.page_info();
+  _page.cls_policy = page.cls_policy;
+  _page.cls_runs = page.cls_runs;
+  _page.cls_skipped = page.cls_skipped;
+  _page.page_cls_label = page.page_cls_label;
+}
+
+void OCR_Tracker::make_thumb(const cv::Point2f quad[4], cv::Mat &thumb) const {
+  cv::Rect rect = quad_rect(quad, _gray.size());
+  if (rect.empty()) {
+    thumb = cv::Mat::zeros(THUMB_HEIGHT, THUMB_WIDTH, CV_8UC1);
+    return;
+  }
+  cv::resize(_gray(rect), thumb, cv::Size(THUMB_WIDTH, THUMB_HEIGHT), 0, 0,
+             cv::INTER_AREA);
+}
+
+void OCR_Tracker::extract_features(Track &track) const {
+  track.features.clear();
+  cv::Rect rect = quad_rect(track.quad, _gray.size());
+  if (rect.width < 2 || rect.height < 2) {
+    return;
+  }
+  cv::goodFeaturesToTrack(_gray(rect), track.features, MAX_FEATURES, 0.01, 3);
+  for (cv::Point2f &point : track.features) {
+    point.x += rect.x;
+    point.y += rect.y;
+  }
+  // 笔画太少时补充 4x2 的网格点
+  if (track.features.size() < MIN_FEATURES) {
+    for (int gy = 0; gy < 2; gy++) {
+      for (int gx = 0; gx < 4; gx++) {
+        track.features.emplace_back(rect.x + rect.width * (gx + 0.5f) / 4,
+                                    rect.y + rect.height * (gy + 0.5f) / 2);
+      }
+    }
+  }
+}
+}
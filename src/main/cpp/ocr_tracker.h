@@ -0,0 +1,125 @@
+//
+// Temporal text tracking for camera streams
+//
+#pragma once
+
+#include "ocr_ppredictor.h"
+#include <opencv2/opencv.hpp>
+#include <vector>
+
+namespace ppredictor {
+
+/**
+ * 跟踪参数
+ */
+struct OCR_TrackerConfig {
+  // 每隔 det_interval 帧重新检测一次，<= 1 时每帧检测
+  int det_interval = 10;
+  // 本帧成功跟踪的文本行比例低于该值时立即重新检测
+  float min_track_ratio = 0.7f;
+  // 文本行缩略图与上次识别时的平均灰度差超过该值时视为内容变化，重新识别
+  float content_diff = 12.f;
+};
+
+/**
+ * 相机连续帧的文本跟踪：用稀疏光流（金字塔 LK）跟踪上一帧的文本行，
+ * 每隔 det_interval 帧或跟踪质量下降时才重新检测，
+ * 并且只对新出现或内容发生变化的文本行做方向分类与识别。
+ * 与 predictor 分开持有，每次调用时传入；非线程安全
+ */
+class OCR_Tracker {
+public:
+  struct Stats {
+    int64_t frames = 0;       // 处理的帧数
+    int64_t det_frames = 0;   // 其中运行了检测的帧数
+    int64_t rec_lines = 0;    // 经过识别的文本行数
+    int64_t reused_lines = 0; // 沿用上次识别结果的文本行数
+  };
+
+  explicit OCR_Tracker(const OCR_TrackerConfig &config) : _config(config) {}
+
+  /**
+   * 处理一帧
+   * @param predictor 用于检测与识别，调用期间不能被其他线程使用
+   * @param origin BGR 图像
+   * @param max_size_len 检测尺寸
+   * @param run_cls 方向分类方式 CLS_*
+   * @return 当前帧的全部文本行（origin 坐标），下一次 track 之前有效
+   */
+  std::vector<OCRPredictResult> &track(OCR_PPredictor &predictor,
+                                       cv::Mat &origin, int max_size_len,
+                                       int run_cls);
+
+  /**
+   * 丢弃已跟踪的文本行，下一帧重新检测
+   */
+  void reset();
+
+  const OCR_PageInfo &page_info() const { return _page; }
+
+  std::vector<uint8_t> &pending_payload() { return _pending_payload; }
+
+  const Stats &stats() const { return _stats; }
+
+private:
+  struct Track {
+    cv::Point2f quad[4];
+    OCRPredictResult result;
+    std::vector<cv::Point2f> features; // 用于光流跟踪的特征点
+    cv::Mat thumb; // 上次识别时文本行的灰度缩略图
+  };
+
+  /**
+   * 用光流把各文本行移动到当前帧，丢弃跟踪失败的文本行
+   * @return 跟踪质量是否足够，不足时需要重新检测
+   */
+  bool propagate();
+
+  /**
+   * 检测当前帧，与已有文本行匹配，未匹配或内容变化的文本行重新识别
+   */
+  void redetect(OCR_PPredictor &predictor, cv::Mat &origin,
+                int max_size_len, int run_cls);
+
+  /**
+   * 重新识别内容发生变化的文本行
+   */
+  void refresh_changed(OCR_PPredictor &predictor, cv::Mat &origin,
+                       int run_cls);
+
+  /**
+   * 识别 _rec_tracks 中的文本行，更新其结果、缩略图与特征点
+   */
+  void recognize(OCR_PPredictor &predictor, cv::Mat &origin,
+                 int run_cls);
+
+  void make_thumb(const cv::Point2f quad[4], cv::Mat &thumb) const;
+
+  void extract_features(Track &track) const;
+
+  OCR_TrackerConfig _config;
+  std::vector<Track> _tracks;
+  cv::Mat _gray;
+  cv::Mat _prev_gray;
+  int _frames_since_det = 0;
+  bool _need_det = true;
+
+  // 临时数据，跨帧复用
+  std::vector<cv::Point2f> _prev_points;
+  std::vector<cv::Point2f> _next_points;
+  std::vector<uchar> _status;
+  std::vector<float> _error;
+  std::vector<float> _dx;
+  std::vector<float> _dy;
+  std::vector<TextQuad> _rec_boxes;
+  std::vector<int> _rec_tracks;
+  std::vector<Track> _next_tracks;
+  std::vector<char> _matched;
+  cv::Mat _thumb;
+
+  std::vector<OCRPredictResult> _results;
+  std::vector<uint8_t> _pending_payload;
+  OCR_PageInfo _page;
+  Stats _stats;
+};
+}
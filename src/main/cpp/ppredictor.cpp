@@ -1,5 +1,6 @@
 #include "ppredictor.h"
 #include "common.h"
+#include <exception>
 
 namespace ppredictor {
 PPredictor::PPredictor(int use_opencl, int thread_num, int net_flag,
@@ -51,7 +52,15 @@ template <typename ConfigT> int PPredictor::_init(ConfigT &config) {
   }
   config.set_threads(_thread_num);
   config.set_power_mode(_mode);
-  _predictor = paddle::lite_api::CreatePaddlePredictor(config);
+  try {
+    _predictor = paddle::lite_api::CreatePaddlePredictor(config);
+  } catch (const std::exception &e) {
+    LOGE("ocr cpp create paddle instance failed: %s", e.what());
+    _predictor = nullptr;
+  }
+  if (!_predictor) {
+    return -1;
+  }
   LOGI("ocr cpp paddle instance created");
   return RETURN_OK;
 }
@@ -78,6 +87,12 @@ std::vector<PredictorOutput> PPredictor::infer() {
   if (!_is_input_get) {
     return results;
   }
+  std::vector<int64_t> input_shape = _predictor->GetInput(0)->shape();
+  if (input_shape != _last_input_shape) {
+    _shape_changes++;
+    _last_input_shape.swap(input_shape);
+  }
+  _infer_count++;
   _predictor->Run();
   LOGI("ocr cpp infer Run end");
 
@@ -3,6 +3,7 @@
 #include "paddle_api.h"
 #include "predictor_input.h"
 #include "predictor_output.h"
+#include <atomic>
 
 namespace ppredictor {
 
@@ -18,6 +19,8 @@ public:
 
 /**
  * Common Predictor
+ * 所用的 Paddle Lite 为 light API（MobileConfig），不支持 PaddlePredictor::Clone()，
+ * 调用即 LOG(FATAL)。每个实例都由 init_nb 或 init_from_file 单独加载，不共享权重
  */
 class PPredictor : public PPredictor_Interface {
 public:
@@ -50,6 +53,16 @@ public:
 
   virtual NET_TYPE get_net_flag() const;
 
+  /**
+   * infer 的累计次数
+   */
+  int64_t infer_count() const { return _infer_count.load(); }
+
+  /**
+   * 输入 shape 与上一次 infer 不同的次数，每次变化 Paddle Lite 都要重新分配中间结果
+   */
+  int64_t shape_changes() const { return _shape_changes.load(); }
+
 protected:
   template <typename ConfigT> int _init(ConfigT &config);
 
@@ -60,5 +73,9 @@ private:
   std::shared_ptr<paddle::lite_api::PaddlePredictor> _predictor;
   bool _is_input_get = false;
   int _net_flag;
+  std::vector<int64_t> _last_input_shape;
+  // 在推理线程中累加，可能在其他线程（如统计）中读取
+  std::atomic<int64_t> _infer_count{0};
+  std::atomic<int64_t> _shape_changes{0};
 };
 }
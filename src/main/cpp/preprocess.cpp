@@ -1,82 +1,347 @@
 #include "preprocess.h"
 #include <android/bitmap.h>
 
-cv::Mat bitmap_to_cv_mat(JNIEnv *env, jobject bitmap) {
+/**
+ * Bitmap 转 BGR：像素只在一次颜色转换期间锁定，直接按 Bitmap 的 stride 读取，
+ * 不做中间拷贝。支持 RGBA_8888、RGB_565、ALPHA_8（按白底墨迹处理）。
+ * @param roi 只转换该区域，为空时转换整图；返回时为裁剪到图片范围内的实际区域
+ */
+cv::Mat bitmap_to_cv_mat(JNIEnv *env, jobject bitmap, cv::Rect &roi) {
   AndroidBitmapInfo info;
   int result = AndroidBitmap_getInfo(env, bitmap, &info);
   if (result != ANDROID_BITMAP_RESULT_SUCCESS) {
     LOGE("AndroidBitmap_getInfo failed, result: %d", result);
     return cv::Mat{};
   }
-  if (info.format != ANDROID_BITMAP_FORMAT_RGBA_8888) {
-    LOGE("Bitmap format is not RGBA_8888 !");
+  int type;
+  int code;
+  switch (info.format) {
+  case ANDROID_BITMAP_FORMAT_RGBA_8888:
+    type = CV_8UC4;
+    code = cv::COLOR_RGBA2BGR;
+    break;
+  case ANDROID_BITMAP_FORMAT_RGB_565:
+    // RGB_565 的 16 位像素低位为蓝色，对应 OpenCV 的 BGR565
+    type = CV_8UC2;
+    code = cv::COLOR_BGR5652BGR;
+    break;
+  case ANDROID_BITMAP_FORMAT_A_8:
+    type = CV_8UC1;
+    code = cv::COLOR_GRAY2BGR;
+    break;
+  default:
+    LOGE("Bitmap format %d is not supported !", info.format);
     return cv::Mat{};
   }
-  unsigned char *srcData = NULL;
-  AndroidBitmap_lockPixels(env, bitmap, (void **)&srcData);
-  cv::Mat mat = cv::Mat::zeros(info.height, info.width, CV_8UC4);
-  memcpy(mat.data, srcData, info.height * info.width * 4);
-  AndroidBitmap_unlockPixels(env, bitmap);
-  cv::cvtColor(mat, mat, cv::COLOR_RGBA2BGR);
-  /**
-  if (!cv::imwrite("/sdcard/1/copy.jpg", mat)){
-      LOGE("Write image failed " );
+  roi = source_roi(roi, 0, info.width, info.height, false);
+  if (roi.empty()) {
+    LOGE("roi is outside of bitmap");
+    return cv::Mat{};
+  }
+
+  void *pixels = NULL;
+  result = AndroidBitmap_lockPixels(env, bitmap, &pixels);
+  if (result != ANDROID_BITMAP_RESULT_SUCCESS || pixels == NULL) {
+    LOGE("AndroidBitmap_lockPixels failed, result: %d", result);
+    return cv::Mat{};
   }
-   */
+  cv::Mat src(info.height, info.width, type, pixels, info.stride);
+  cv::Mat mat;
+  cv::cvtColor(src(roi), mat, code);
+  AndroidBitmap_unlockPixels(env, bitmap);
 
+  if (info.format == ANDROID_BITMAP_FORMAT_A_8) {
+    // alpha 表示墨迹覆盖率，合成到白底上
+    cv::bitwise_not(mat, mat);
+  }
   return mat;
 }
 
-cv::Mat resize_img(const cv::Mat &img, int height, int width) {
-  if (img.rows == height && img.cols == width) {
-    return img;
+// dHash 的抽样尺寸
+static const int DHASH_SAMPLE_WIDTH = 288;
+static const int DHASH_SAMPLE_HEIGHT = 256;
+
+uint64_t dhash(const cv::Mat &src, int gray_code) {
+  cv::Mat sampled;
+  cv::resize(src, sampled,
+             cv::Size(std::min(src.cols, DHASH_SAMPLE_WIDTH),
+                      std::min(src.rows, DHASH_SAMPLE_HEIGHT)),
+             0, 0, cv::INTER_NEAREST);
+  cv::Mat gray;
+  if (gray_code >= 0) {
+    cv::cvtColor(sampled, gray, gray_code);
+  } else {
+    gray = sampled;
   }
-  cv::Mat new_img;
-  cv::resize(img, new_img, cv::Size(height, width));
-  return new_img;
+  cv::Mat tiny;
+  cv::resize(gray, tiny, cv::Size(9, 8), 0, 0, cv::INTER_AREA);
+  uint64_t hash = 0;
+  for (int y = 0; y < 8; y++) {
+    const uint8_t *row = tiny.ptr<uint8_t>(y);
+    for (int x = 0; x < 8; x++) {
+      hash = (hash << 1) | (row[x] < row[x + 1] ? 1 : 0);
+    }
+  }
+  return hash;
 }
 
-// fill tensor with mean and scale and trans layout: nhwc -> nchw, neon speed up
-void neon_mean_scale(const float *din, float *dout, int size,
-                     const std::vector<float> &mean,
-                     const std::vector<float> &scale) {
-  if (mean.size() != 3 || scale.size() != 3) {
-    LOGE("[ERROR] mean or scale size must equal to 3");
-    return;
+bool bitmap_dhash(JNIEnv *env, jobject bitmap, cv::Rect roi, uint64_t &hash) {
+  AndroidBitmapInfo info;
+  int result = AndroidBitmap_getInfo(env, bitmap, &info);
+  if (result != ANDROID_BITMAP_RESULT_SUCCESS) {
+    LOGE("AndroidBitmap_getInfo failed, result: %d", result);
+    return false;
+  }
+  int type;
+  int code;
+  switch (info.format) {
+  case ANDROID_BITMAP_FORMAT_RGBA_8888:
+    type = CV_8UC4;
+    code = cv::COLOR_RGBA2GRAY;
+    break;
+  case ANDROID_BITMAP_FORMAT_RGB_565:
+    type = CV_8UC2;
+    code = cv::COLOR_BGR5652GRAY;
+    break;
+  case ANDROID_BITMAP_FORMAT_A_8:
+    type = CV_8UC1;
+    code = -1;
+    break;
+  default:
+    LOGE("Bitmap format %d is not supported !", info.format);
+    return false;
+  }
+  roi = source_roi(roi, 0, info.width, info.height, false);
+  if (roi.empty()) {
+    LOGE("roi is outside of bitmap");
+    return false;
+  }
+
+  void *pixels = NULL;
+  result = AndroidBitmap_lockPixels(env, bitmap, &pixels);
+  if (result != ANDROID_BITMAP_RESULT_SUCCESS || pixels == NULL) {
+    LOGE("AndroidBitmap_lockPixels failed, result: %d", result);
+    return false;
+  }
+  cv::Mat src(info.height, info.width, type, pixels, info.stride);
+  hash = dhash(src(roi), code);
+  AndroidBitmap_unlockPixels(env, bitmap);
+  return true;
+}
+
+/**
+ * 按 row_stride 排列的 height 行、每行访问 row_bytes 字节所需的最小缓冲区大小。
+ * 最后一行不要求补齐到 row_stride（相机平面通常如此）
+ * @return 参数不合法时返回 0
+ */
+size_t plane_bytes(int row_stride, int row_bytes, int height) {
+  if (row_bytes <= 0 || height <= 0 || row_stride < row_bytes) {
+    return 0;
+  }
+  return size_t(row_stride) * (height - 1) + row_bytes;
+}
+
+/**
+ * YUV_420_888 三个平面直接转换为 BGR，不经过 java 层的 RGBA Bitmap。
+ * u/v 交错存放（pixel stride 为 2，即 NV21/NV12 内存布局）时直接按双平面转换，
+ * 否则先打包成 I420 再转换。
+ */
+cv::Mat yuv420_to_cv_mat(const uint8_t *y, const uint8_t *u, const uint8_t *v,
+                         int y_row_stride, int uv_row_stride,
+                         int uv_pixel_stride, int width, int height) {
+  cv::Mat bgr;
+  if (width <= 0 || height <= 0 || (width & 1) || (height & 1)) {
+    LOGE("yuv size must be positive and even: %dx%d", width, height);
+    return bgr;
+  }
+  cv::Mat y_mat(height, width, CV_8UC1, const_cast<uint8_t *>(y),
+                y_row_stride);
+  if (uv_pixel_stride == 2 && (v + 1 == u || u + 1 == v)) {
+    bool vu = v + 1 == u;
+    cv::Mat uv_mat(height / 2, width / 2, CV_8UC2,
+                   const_cast<uint8_t *>(vu ? v : u), uv_row_stride);
+    cv::cvtColorTwoPlane(y_mat, uv_mat, bgr,
+                         vu ? cv::COLOR_YUV2BGR_NV21 : cv::COLOR_YUV2BGR_NV12);
+    return bgr;
+  }
+
+  cv::Mat i420(height * 3 / 2, width, CV_8UC1);
+  y_mat.copyTo(i420.rowRange(0, height));
+  uint8_t *dst_u = i420.ptr<uint8_t>(height);
+  uint8_t *dst_v = dst_u + (width / 2) * (height / 2);
+  for (int row = 0; row < height / 2; row++) {
+    const uint8_t *src_u = u + row * uv_row_stride;
+    const uint8_t *src_v = v + row * uv_row_stride;
+    for (int col = 0; col < width / 2; col++) {
+      *(dst_u++) = src_u[col * uv_pixel_stride];
+      *(dst_v++) = src_v[col * uv_pixel_stride];
+    }
   }
+  cv::cvtColor(i420, bgr, cv::COLOR_YUV2BGR_I420);
+  return bgr;
+}
 
-  float32x4_t vmean0 = vdupq_n_f32(mean[0]);
-  float32x4_t vmean1 = vdupq_n_f32(mean[1]);
-  float32x4_t vmean2 = vdupq_n_f32(mean[2]);
-  float32x4_t vscale0 = vdupq_n_f32(scale[0]);
-  float32x4_t vscale1 = vdupq_n_f32(scale[1]);
-  float32x4_t vscale2 = vdupq_n_f32(scale[2]);
+/**
+ * 连续内存中的图片转换为 BGR
+ * @param capacity data 的字节数，不足以容纳整张图片时返回空 Mat
+ * @param row_stride 行字节数，<=0 时按紧密排列计算
+ * @param roi 只转换该区域（已裁剪到图片范围内，NV21 需为偶数对齐）
+ */
+cv::Mat buffer_to_cv_mat(const uint8_t *data, size_t capacity, int format,
+                         int width, int height, int row_stride,
+                         const cv::Rect &roi) {
+  cv::Mat bgr;
+  uint8_t *src = const_cast<uint8_t *>(data);
+  int pixel_bytes;
+  switch (format) {
+  case IMAGE_FORMAT_RGBA_8888:
+    pixel_bytes = 4;
+    break;
+  case IMAGE_FORMAT_RGB_888:
+    pixel_bytes = 3;
+    break;
+  case IMAGE_FORMAT_NV21:
+  case IMAGE_FORMAT_Y8:
+    pixel_bytes = 1;
+    break;
+  default:
+    LOGE("unsupported image format: %d", format);
+    return bgr;
+  }
+  int stride = row_stride > 0 ? row_stride : width * pixel_bytes;
+  size_t required = plane_bytes(stride, width * pixel_bytes, height);
+  if (required > 0 && format == IMAGE_FORMAT_NV21) {
+    // vu 平面紧跟在 height 行 y 平面之后
+    size_t vu_bytes = plane_bytes(stride, width, height / 2);
+    required = vu_bytes > 0 ? size_t(stride) * height + vu_bytes : 0;
+  }
+  if (required == 0 || required > capacity) {
+    LOGE("image buffer too small: %zu bytes for %dx%d format %d stride %d",
+         capacity, width, height, format, stride);
+    return bgr;
+  }
+  switch (format) {
+  case IMAGE_FORMAT_RGBA_8888: {
+    cv::Mat rgba(height, width, CV_8UC4, src, stride);
+    cv::cvtColor(rgba(roi), bgr, cv::COLOR_RGBA2BGR);
+    break;
+  }
+  case IMAGE_FORMAT_RGB_888: {
+    cv::Mat rgb(height, width, CV_8UC3, src, stride);
+    cv::cvtColor(rgb(roi), bgr, cv::COLOR_RGB2BGR);
+    break;
+  }
+  case IMAGE_FORMAT_NV21: {
+    const uint8_t *y = src + roi.y * stride + roi.x;
+    const uint8_t *vu = src + stride * height + (roi.y / 2) * stride + roi.x;
+    bgr = yuv420_to_cv_mat(y, vu + 1, vu, stride, stride, 2, roi.width,
+                           roi.height);
+    break;
+  }
+  case IMAGE_FORMAT_Y8: {
+    cv::Mat gray(height, width, CV_8UC1, src, stride);
+    cv::cvtColor(gray(roi), bgr, cv::COLOR_GRAY2BGR);
+    break;
+  }
+  }
+  return bgr;
+}
 
-  float *dout_c0 = dout;
-  float *dout_c1 = dout + size;
-  float *dout_c2 = dout + size * 2;
+/**
+ * 顺时针旋转 rotation 度（0/90/180/270）
+ */
+cv::Mat rotate_img(const cv::Mat &img, int rotation) {
+  int degrees = ((rotation % 360) + 360) % 360;
+  if (degrees == 0 || img.empty()) {
+    return img;
+  }
+  cv::Mat rotated;
+  switch (degrees) {
+  case 90:
+    cv::rotate(img, rotated, cv::ROTATE_90_CLOCKWISE);
+    break;
+  case 180:
+    cv::rotate(img, rotated, cv::ROTATE_180);
+    break;
+  case 270:
+    cv::rotate(img, rotated, cv::ROTATE_90_COUNTERCLOCKWISE);
+    break;
+  default:
+    LOGE("unsupported rotation: %d", rotation);
+    return img;
+  }
+  return rotated;
+}
 
-  int i = 0;
-  for (; i < size - 3; i += 4) {
-    float32x4x3_t vin3 = vld3q_f32(din);
-    float32x4_t vsub0 = vsubq_f32(vin3.val[0], vmean0);
-    float32x4_t vsub1 = vsubq_f32(vin3.val[1], vmean1);
-    float32x4_t vsub2 = vsubq_f32(vin3.val[2], vmean2);
-    float32x4_t vs0 = vmulq_f32(vsub0, vscale0);
-    float32x4_t vs1 = vmulq_f32(vsub1, vscale1);
-    float32x4_t vs2 = vmulq_f32(vsub2, vscale2);
-    vst1q_f32(dout_c0, vs0);
-    vst1q_f32(dout_c1, vs1);
-    vst1q_f32(dout_c2, vs2);
+/**
+ * 将旋转后坐标系中的 roi 映射回原图坐标系，并裁剪到图片范围内
+ * @param roi 旋转后坐标系中的区域，宽高均为 NO_ROI 时返回整图；
+ *            其余宽或高 <= 0 的区域返回空区域，由调用方按失败处理
+ * @param rotation 顺时针旋转角度 0/90/180/270
+ * @param width 原图宽度
+ * @param height 原图高度
+ * @param even 是否按偶数对齐（YUV 420 色度平面需要）
+ */
+cv::Rect source_roi(const cv::Rect &roi, int rotation, int width, int height,
+                    bool even) {
+  cv::Rect full(0, 0, width, height);
+  if (roi.width == NO_ROI && roi.height == NO_ROI) {
+    return full;
+  }
+  if (roi.width <= 0 || roi.height <= 0) {
+    return cv::Rect();
+  }
+  int x0 = roi.x, y0 = roi.y, x1 = roi.x + roi.width, y1 = roi.y + roi.height;
+  cv::Rect src;
+  switch (((rotation % 360) + 360) % 360) {
+  case 90:
+    src = cv::Rect(y0, height - x1, y1 - y0, x1 - x0);
+    break;
+  case 180:
+    src = cv::Rect(width - x1, height - y1, x1 - x0, y1 - y0);
+    break;
+  case 270:
+    src = cv::Rect(width - y1, x0, y1 - y0, x1 - x0);
+    break;
+  default:
+    src = roi;
+  }
+  src &= full;
+  if (even && !src.empty()) {
+    int sx1 = std::min(width, (src.x + src.width + 1) & ~1);
+    int sy1 = std::min(height, (src.y + src.height + 1) & ~1);
+    src.x &= ~1;
+    src.y &= ~1;
+    src.width = (sx1 - src.x) & ~1;
+    src.height = (sy1 - src.y) & ~1;
+  }
+  return src;
+}
 
-    din += 12;
-    dout_c0 += 4;
-    dout_c1 += 4;
-    dout_c2 += 4;
+/**
+ * 原图坐标系中的区域顺时针旋转 rotation 度后的位置
+ */
+cv::Rect rotate_rect(const cv::Rect &rect, int rotation, int width,
+                     int height) {
+  int x0 = rect.x, y0 = rect.y, x1 = rect.x + rect.width,
+      y1 = rect.y + rect.height;
+  switch (((rotation % 360) + 360) % 360) {
+  case 90:
+    return cv::Rect(height - y1, x0, y1 - y0, x1 - x0);
+  case 180:
+    return cv::Rect(width - x1, height - y1, x1 - x0, y1 - y0);
+  case 270:
+    return cv::Rect(y0, width - x1, y1 - y0, x1 - x0);
+  default:
+    return rect;
   }
-  for (; i < size; i++) {
-    *(dout_c0++) = (*(din++) - mean[0]) * scale[0];
-    *(dout_c1++) = (*(din++) - mean[1]) * scale[1];
-    *(dout_c2++) = (*(din++) - mean[2]) * scale[2];
+}
+
+cv::Mat resize_img(const cv::Mat &img, int height, int width) {
+  if (img.rows == height && img.cols == width) {
+    return img;
   }
-}
\ No newline at end of file
+  cv::Mat new_img;
+  cv::resize(img, new_img, cv::Size(height, width));
+  return new_img;
+}
@@ -1,12 +1,52 @@
 #pragma once
 
 #include "common.h"
+#include "normalize.h"
 #include <jni.h>
 #include <opencv2/opencv.hpp>
-cv::Mat bitmap_to_cv_mat(JNIEnv *env, jobject bitmap);
+cv::Mat bitmap_to_cv_mat(JNIEnv *env, jobject bitmap, cv::Rect &roi);
 
-cv::Mat resize_img(const cv::Mat &img, int height, int width);
+/**
+ * 64 位 dHash：缩小到 9x8 灰度图后逐行比较相邻像素。
+ * 先最近邻抽样到较小尺寸（只读取少量像素，对打包格式同样成立），再转灰度并按面积缩小
+ * @param src 任意打包格式的图像
+ * @param gray_code 转为灰度的 cv::COLOR_* 代码，src 已是灰度时为 -1
+ */
+uint64_t dhash(const cv::Mat &src, int gray_code);
+
+/**
+ * 直接在 bitmap 像素上计算 roi 区域的 dHash，不转换整图
+ * @return 是否成功
+ */
+bool bitmap_dhash(JNIEnv *env, jobject bitmap, cv::Rect roi, uint64_t &hash);
+
+// 与 android.graphics.PixelFormat / ImageFormat 取值一致
+enum IMAGE_FORMAT {
+  IMAGE_FORMAT_RGBA_8888 = 1,
+  IMAGE_FORMAT_RGB_888 = 3,
+  IMAGE_FORMAT_NV21 = 17,
+  IMAGE_FORMAT_Y8 = 0x20203859
+};
+
+size_t plane_bytes(int row_stride, int row_bytes, int height);
+
+cv::Mat yuv420_to_cv_mat(const uint8_t *y, const uint8_t *u, const uint8_t *v,
+                         int y_row_stride, int uv_row_stride,
+                         int uv_pixel_stride, int width, int height);
+
+cv::Mat buffer_to_cv_mat(const uint8_t *data, size_t capacity, int format,
+                         int width, int height, int row_stride,
+                         const cv::Rect &roi);
 
-void neon_mean_scale(const float *din, float *dout, int size,
-                     const std::vector<float> &mean,
-                     const std::vector<float> &scale);
+cv::Mat rotate_img(const cv::Mat &img, int rotation);
+
+// roi 宽高均为 NO_ROI 表示不限定区域（Java 层 roi 为 null），即整图
+const int NO_ROI = -1;
+
+cv::Rect source_roi(const cv::Rect &roi, int rotation, int width, int height,
+                    bool even);
+
+cv::Rect rotate_rect(const cv::Rect &rect, int rotation, int width,
+                     int height);
+
+cv::Mat resize_img(const cv::Mat &img, int height, int width);
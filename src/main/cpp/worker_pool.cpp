@@ -0,0 +1,70 @@
+//
+// Persistent worker threads for splitting one stage across predictors
+//
+
+#include "worker_pool.h"
+
+namespace ppredictor {
+
+WorkerPool::WorkerPool(int worker_num)
+    : _worker_num(worker_num > 1 ? worker_num : 1) {
+  for (int i = 1; i < _worker_num; i++) {
+    _threads.emplace_back(&WorkerPool::loop, this, i);
+  }
+}
+
+WorkerPool::~WorkerPool() {
+  {
+    std::lock_guard<std::mutex> lock(_mutex);
+    _stop = true;
+  }
+  _start_cv.notify_all();
+  for (std::thread &thread : _threads) {
+    thread.join();
+  }
+}
+
+void WorkerPool::run(const std::function<void(int)> &task) {
+  if (_threads.empty()) {
+    task(0);
+    return;
+  }
+  {
+    std::lock_guard<std::mutex> lock(_mutex);
+    _task = &task;
+    _running = _threads.size();
+    _generation++;
+  }
+  _start_cv.notify_all();
+
+  task(0);
+
+  std::unique_lock<std::mutex> lock(_mutex);
+  _done_cv.wait(lock, [this] { return _running == 0; });
+  _task = nullptr;
+}
+
+void WorkerPool::loop(int worker_id) {
+  int64_t generation = 0;
+  while (true) {
+    const std::function<void(int)> *task;
+    {
+      std::unique_lock<std::mutex> lock(_mutex);
+      _start_cv.wait(lock,
+                     [&] { return _stop || _generation != generation; });
+      if (_stop) {
+        return;
+      }
+      generation = _generation;
+      task = _task;
+    }
+
+    (*task)(worker_id);
+
+    std::lock_guard<std::mutex> lock(_mutex);
+    if (--_running == 0) {
+      _done_cv.notify_one();
+    }
+  }
+}
+}
@@ -0,0 +1,44 @@
+//
+// Persistent worker threads for splitting one stage across predictors
+//
+#pragma once
+
+#include <condition_variable>
+#include <cstdint>
+#include <functional>
+#include <mutex>
+#include <thread>
+#include <vector>
+
+namespace ppredictor {
+
+/**
+ * 常驻的工作线程组，避免每帧创建线程。
+ * run 在 worker_num - 1 个后台线程与调用线程上同时执行 task(worker_id)，
+ * 调用线程的 worker_id 为 0，全部返回后 run 才返回。
+ * run 不能并发调用，也不能在 task 中嵌套调用
+ */
+class WorkerPool {
+public:
+  explicit WorkerPool(int worker_num);
+
+  ~WorkerPool();
+
+  int worker_num() const { return _worker_num; }
+
+  void run(const std::function<void(int)> &task);
+
+private:
+  void loop(int worker_id);
+
+  int _worker_num;
+  std::vector<std::thread> _threads;
+  std::mutex _mutex;
+  std::condition_variable _start_cv;
+  std::condition_variable _done_cv;
+  const std::function<void(int)> *_task = nullptr;
+  int64_t _generation = 0;
+  int _running = 0;
+  bool _stop = false;
+};
+}
@@ -1,7 +1,10 @@
 package com.fsyang.paddleocr;
 
+import android.content.res.AssetManager;
 import android.graphics.Bitmap;
+import android.graphics.Rect;
 import android.util.Log;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
 
@@ -11,6 +14,32 @@ import java.util.concurrent.atomic.AtomicBoolean;
 public class OCRPredictorNative {
 
     private static final String TAG = "OCRPredictorNative";
+
+    /** runBuffer 支持的像素格式，取值与 android.graphics.PixelFormat / ImageFormat 一致 */
+    public static final int FORMAT_RGBA_8888 = 1;
+    public static final int FORMAT_RGB_888 = 3;
+    public static final int FORMAT_NV21 = 17;
+    public static final int FORMAT_Y8 = 0x20203859;
+
+    /** runCls 取值：不做方向分类 */
+    public static final int CLS_OFF = 0;
+    /** runCls 取值：每个文本行分别分类 */
+    public static final int CLS_PER_LINE = 1;
+    /** runCls 取值：对面积最大的几行投票，一致时整页采用同一方向，否则退回逐行分类 */
+    public static final int CLS_PAGE_VOTE = 2;
+    /** 仅出现在结果中：整页投票不一致，已退回逐行分类 */
+    public static final int CLS_PAGE_VOTE_FALLBACK = 3;
+    /** maxSizeLen 取值：先以 Config.detProbeSize 探测，再按文本高度自动选择检测尺寸 */
+    public static final int DET_SIZE_AUTO = 0;
+    /** DetConfig.scoreMode 取值：文本框多边形内概率的均值 */
+    public static final int DET_SCORE_POLYGON = 0;
+    /** DetConfig.scoreMode 取值：文本框外接矩形内概率的均值，由积分图计算，更快但对倾斜文本偏低 */
+    public static final int DET_SCORE_FAST = 1;
+    /** 模型所属阶段（可按位组合），用于 Config.preloadStages */
+    public static final int STAGE_DET = 1;
+    public static final int STAGE_REC = 2;
+    public static final int STAGE_CLS = 4;
+    public static final int STAGE_ALL = STAGE_DET | STAGE_REC | STAGE_CLS;
     private static final AtomicBoolean isSOLoaded = new AtomicBoolean();
 
     public static void loadLibrary() throws RuntimeException {
@@ -27,34 +56,363 @@ public class OCRPredictorNative {
 
     private Config config;
     private long nativePointer = 0;
+    private final OcrResultBuffer resultBuffer = new OcrResultBuffer();
 
     public OCRPredictorNative(Config config) {
         this.config = config;
         loadLibrary();
         nativePointer = init(
+            config.assetManager,
             config.detModelFilename, 
             config.recModelFilename, 
             config.clsModelFilename, 
+            config.labelFilename,
             config.useOpencl,
             config.cpuThreadNum, 
+            config.detThreadNum,
+            config.recThreadNum,
+            config.clsThreadNum,
+            config.recBatchNum,
+            config.recWorkerNum,
+            config.recWidthStep,
+            config.recMaxWidth,
+            config.recCacheBytes,
+            config.detWorkerNum,
+            config.detTileSize,
+            config.detTileOverlap,
+            config.detProbeSize,
+            config.detMinTextHeight,
+            config.detAutoMaxSize,
+            config.det.threshold,
+            config.det.boxThresh,
+            config.det.unclipRatio,
+            config.det.maxCandidates,
+            config.det.minSize,
+            config.det.scoreMode,
+            config.preloadStages,
             config.cpuPower
         );
+        if (nativePointer == 0) {
+            // preloadStages 中的模型或字典加载失败
+            throw new RuntimeException("Native init failed");
+        }
         Log.i(TAG, "Native init success, pointer: " + nativePointer);
     }
 
+    private OCRPredictorNative(Config config, long nativePointer) {
+        this.config = config;
+        this.nativePointer = nativePointer;
+    }
+
+    /**
+     * 以相同的模型与配置创建预测器：已加载的阶段由模型单独加载一份，不共享权重
+     * （所用 Paddle Lite 不支持 PaddlePredictor::Clone），内存随数量增长。
+     * 可在其他线程中并发使用，需单独 destroy
+     * @return 新的预测器
+     * @throws RuntimeException 模型加载失败
+     */
+    public synchronized OCRPredictorNative cloneFromSameModels() {
+        if (nativePointer == 0) {
+            throw new IllegalStateException("Predictor already destroyed");
+        }
+        long pointer = clonePredictor(nativePointer);
+        if (pointer == 0) {
+            throw new RuntimeException("Clone native predictor failed");
+        }
+        Log.i(TAG, "Native clone success, pointer: " + pointer);
+        return new OCRPredictorNative(config, pointer);
+    }
+
     /**
      * 运行 OCR 识别
      * @param originalImage 原始图片
      * @param maxSizeLen 最大边长
      * @param runDet 是否运行检测 1/0
-     * @param runCls 是否运行方向分类 1/0
+     * @param runCls 方向分类方式 CLS_OFF / CLS_PER_LINE / CLS_PAGE_VOTE
      * @param runRec 是否运行识别 1/0
      * @return 识别结果列表
      */
-    public ArrayList<OcrResultModel> runImage(Bitmap originalImage, int maxSizeLen, int runDet, int runCls, int runRec) {
+    public synchronized ArrayList<OcrResultModel> runImage(Bitmap originalImage, int maxSizeLen, int runDet, int runCls, int runRec) {
+        runImage(originalImage, maxSizeLen, runDet, runCls, runRec, resultBuffer);
+        return postprocess(resultBuffer);
+    }
+
+    /**
+     * 运行 OCR 识别，结果以列式存储写入 out
+     * @param originalImage 原始图片
+     * @param maxSizeLen 最大边长
+     * @param runDet 是否运行检测 1/0
+     * @param runCls 方向分类方式 CLS_OFF / CLS_PER_LINE / CLS_PAGE_VOTE
+     * @param runRec 是否运行识别 1/0
+     * @param out 列式结果
+     */
+    public synchronized void runImage(Bitmap originalImage, int maxSizeLen, int runDet, int runCls, int runRec,
+                                      OcrBatchResult out) {
+        runImage(originalImage, null, maxSizeLen, runDet, runCls, runRec, out);
+    }
+
+    /**
+     * 运行 OCR 识别，结果由 native 直接写入可复用的 out
+     * @param originalImage 原始图片
+     * @param maxSizeLen 最大边长
+     * @param runDet 是否运行检测 1/0
+     * @param runCls 方向分类方式 CLS_OFF / CLS_PER_LINE / CLS_PAGE_VOTE
+     * @param runRec 是否运行识别 1/0
+     * @param out 结果缓冲区，容量不足时自动扩容
+     */
+    public synchronized void runImage(Bitmap originalImage, int maxSizeLen, int runDet, int runCls, int runRec,
+                                      OcrResultBuffer out) {
+        runImage(originalImage, null, maxSizeLen, runDet, runCls, runRec, out);
+    }
+
+    /**
+     * 只识别图片中的 roi 区域，无需在 java 层裁剪，返回坐标仍为整图坐标
+     * @param originalImage 原始图片
+     * @param roi 识别区域，null 表示整图，空区域没有结果
+     * @param maxSizeLen 最大边长
+     * @param runDet 是否运行检测 1/0
+     * @param runCls 方向分类方式 CLS_OFF / CLS_PER_LINE / CLS_PAGE_VOTE
+     * @param runRec 是否运行识别 1/0
+     * @param out 列式结果
+     */
+    public synchronized void runImage(Bitmap originalImage, Rect roi, int maxSizeLen, int runDet, int runCls,
+                                      int runRec, OcrBatchResult out) {
+        runImage(originalImage, roi, maxSizeLen, runDet, runCls, runRec, resultBuffer);
+        out.fill(resultBuffer);
+    }
+
+    /**
+     * 只识别图片中的 roi 区域，结果由 native 直接写入可复用的 out
+     * @param originalImage 原始图片
+     * @param roi 识别区域，null 表示整图，空区域没有结果
+     * @param maxSizeLen 最大边长
+     * @param runDet 是否运行检测 1/0
+     * @param runCls 方向分类方式 CLS_OFF / CLS_PER_LINE / CLS_PAGE_VOTE
+     * @param runRec 是否运行识别 1/0
+     * @param out 结果缓冲区，容量不足时自动扩容
+     */
+    public synchronized void runImage(Bitmap originalImage, Rect roi, int maxSizeLen, int runDet, int runCls,
+                                      int runRec, OcrResultBuffer out) {
         Log.i(TAG, "Begin to run image, size: " + originalImage.getWidth() + "x" + originalImage.getHeight());
-        float[] rawResults = forward(nativePointer, originalImage, maxSizeLen, runDet, runCls, runRec);
-        return postprocess(rawResults);
+        int written = forwardBuffer(nativePointer, originalImage,
+                roiX(roi), roiY(roi), roiWidth(roi), roiHeight(roi),
+                maxSizeLen, runDet, runCls, runRec, out.buffer());
+        collect(written, out);
+    }
+
+    /**
+     * 直接识别 YUV_420_888 相机帧，native 从三个平面直接转换，无需先转成 Bitmap
+     * @param y Y 平面（direct ByteBuffer，从地址起点读取）
+     * @param u U 平面
+     * @param v V 平面
+     * @param yRowStride Y 平面行字节数
+     * @param uvRowStride U/V 平面行字节数
+     * @param uvPixelStride U/V 平面像素间隔，1 为 I420，2 为 NV21/NV12
+     * @param width 宽度
+     * @param height 高度
+     * @param rotation 顺时针旋转角度 0/90/180/270
+     * @param roi 识别区域（旋转后坐标），null 表示整帧
+     * @param maxSizeLen 最大边长
+     * @param runDet 是否运行检测 1/0
+     * @param runCls 方向分类方式 CLS_OFF / CLS_PER_LINE / CLS_PAGE_VOTE
+     * @param runRec 是否运行识别 1/0
+     * @param out 结果缓冲区
+     */
+    public synchronized void runYuv(ByteBuffer y, ByteBuffer u, ByteBuffer v,
+                                    int yRowStride, int uvRowStride, int uvPixelStride,
+                                    int width, int height, int rotation, Rect roi,
+                                    int maxSizeLen, int runDet, int runCls, int runRec,
+                                    OcrResultBuffer out) {
+        Log.i(TAG, "Begin to run yuv, size: " + width + "x" + height);
+        int written = forwardYuv(nativePointer, y, u, v, yRowStride, uvRowStride, uvPixelStride,
+                width, height, rotation, roiX(roi), roiY(roi), roiWidth(roi), roiHeight(roi),
+                maxSizeLen, runDet, runCls, runRec, out.buffer());
+        collect(written, out);
+    }
+
+    public synchronized void runYuv(ByteBuffer y, ByteBuffer u, ByteBuffer v,
+                                    int yRowStride, int uvRowStride, int uvPixelStride,
+                                    int width, int height, int rotation, Rect roi,
+                                    int maxSizeLen, int runDet, int runCls, int runRec,
+                                    OcrBatchResult out) {
+        runYuv(y, u, v, yRowStride, uvRowStride, uvPixelStride, width, height, rotation, roi,
+                maxSizeLen, runDet, runCls, runRec, resultBuffer);
+        out.fill(resultBuffer);
+    }
+
+    /**
+     * 识别连续内存中的图片
+     * @param data 像素数据（direct ByteBuffer，从地址起点读取）
+     * @param format FORMAT_RGBA_8888 / FORMAT_RGB_888 / FORMAT_NV21 / FORMAT_Y8
+     * @param width 宽度
+     * @param height 高度
+     * @param rowStride 行字节数，0 表示紧密排列
+     * @param rotation 顺时针旋转角度 0/90/180/270
+     * @param roi 识别区域（旋转后坐标），null 表示整图，空区域没有结果
+     * @param maxSizeLen 最大边长
+     * @param runDet 是否运行检测 1/0
+     * @param runCls 方向分类方式 CLS_OFF / CLS_PER_LINE / CLS_PAGE_VOTE
+     * @param runRec 是否运行识别 1/0
+     * @param out 结果缓冲区
+     */
+    public synchronized void runBuffer(ByteBuffer data, int format, int width, int height, int rowStride,
+                                       int rotation, Rect roi, int maxSizeLen, int runDet, int runCls, int runRec,
+                                       OcrResultBuffer out) {
+        Log.i(TAG, "Begin to run buffer, format: " + format + ", size: " + width + "x" + height);
+        int written = forwardPixels(nativePointer, data, format, width, height, rowStride, rotation,
+                roiX(roi), roiY(roi), roiWidth(roi), roiHeight(roi),
+                maxSizeLen, runDet, runCls, runRec, out.buffer());
+        collect(written, out);
+    }
+
+    public synchronized void runBuffer(ByteBuffer data, int format, int width, int height, int rowStride,
+                                       int rotation, Rect roi, int maxSizeLen, int runDet, int runCls, int runRec,
+                                       OcrBatchResult out) {
+        runBuffer(data, format, width, height, rowStride, rotation, roi, maxSizeLen, runDet, runCls, runRec,
+                resultBuffer);
+        out.fill(resultBuffer);
+    }
+
+    /**
+     * 计算 bitmap 中 roi 区域的 64 位 dHash（结果缓存用）
+     * @return 哈希值，格式不支持或失败时返回 0
+     */
+    static long hash(Bitmap bitmap, Rect roi) {
+        return hashBitmap(bitmap, roiX(roi), roiY(roi), roiWidth(roi), roiHeight(roi));
+    }
+
+    /**
+     * 只用相机帧的 Y 平面计算 dHash，哈希不随 rotation 变化，缓存键需另外包含 rotation
+     * @param roi 旋转后坐标，null 表示整帧
+     * @return 哈希值，失败时返回 0
+     */
+    static long hash(ByteBuffer y, int yRowStride, int width, int height, int rotation, Rect roi) {
+        return hashYuv(y, yRowStride, width, height, rotation,
+                roiX(roi), roiY(roi), roiWidth(roi), roiHeight(roi));
+    }
+
+    private static int roiX(Rect roi) {
+        return roi == null ? 0 : roi.left;
+    }
+
+    private static int roiY(Rect roi) {
+        return roi == null ? 0 : roi.top;
+    }
+
+    // roi 为 null 时宽高传 NO_ROI 表示整图；显式的空区域（含左右颠倒）传 0，native 不识别
+    private static final int NO_ROI = -1;
+
+    private static int roiWidth(Rect roi) {
+        return roi == null ? NO_ROI : Math.max(roi.width(), 0);
+    }
+
+    private static int roiHeight(Rect roi) {
+        return roi == null ? NO_ROI : Math.max(roi.height(), 0);
+    }
+
+    // 流水线接口（供 OcrPipeline 使用）：不加锁，det/cls/rec 三个阶段可在不同线程中同时执行，
+    // 但每个阶段只能在一个线程中调用，job 在阶段之间串行传递
+
+    long newJob() {
+        return createJob();
+    }
+
+    void freeJob(long job) {
+        releaseJob(job);
+    }
+
+    boolean setJobInput(long job, Bitmap image, Rect roi, int maxSizeLen, int runDet, int runCls, int runRec) {
+        return prepareJob(job, image, roiX(roi), roiY(roi), roiWidth(roi), roiHeight(roi),
+                maxSizeLen, runDet, runCls, runRec);
+    }
+
+    boolean setJobInput(long job, ByteBuffer y, ByteBuffer u, ByteBuffer v,
+                        int yRowStride, int uvRowStride, int uvPixelStride,
+                        int width, int height, int rotation, Rect roi,
+                        int maxSizeLen, int runDet, int runCls, int runRec) {
+        return prepareJobYuv(job, y, u, v, yRowStride, uvRowStride, uvPixelStride, width, height, rotation,
+                roiX(roi), roiY(roi), roiWidth(roi), roiHeight(roi), maxSizeLen, runDet, runCls, runRec);
+    }
+
+    boolean setJobInput(long job, ByteBuffer data, int format, int width, int height, int rowStride,
+                        int rotation, Rect roi, int maxSizeLen, int runDet, int runCls, int runRec) {
+        return prepareJobPixels(job, data, format, width, height, rowStride, rotation,
+                roiX(roi), roiY(roi), roiWidth(roi), roiHeight(roi), maxSizeLen, runDet, runCls, runRec);
+    }
+
+    void detStage(long job) {
+        runDetStage(nativePointer, job);
+    }
+
+    void clsStage(long job) {
+        runClsStage(nativePointer, job);
+    }
+
+    void recStage(long job, OcrResultBuffer out) {
+        int written = runRecStage(nativePointer, job, out.buffer());
+        if (written < 0) {
+            out.ensureCapacity(-written);
+            written = fetchJobPending(job, out.buffer());
+        }
+        out.reset(written);
+    }
+
+    // 跟踪接口（供 OcrTrackingSession 使用）：tracker 与本预测器由同一个会话独占，调用方负责串行
+
+    long newTracker(int detInterval, float minTrackRatio, float contentDiff) {
+        return createTracker(detInterval, minTrackRatio, contentDiff);
+    }
+
+    void freeTracker(long tracker) {
+        releaseTracker(tracker);
+    }
+
+    void clearTracker(long tracker) {
+        resetTracker(tracker);
+    }
+
+    void track(long tracker, Bitmap image, Rect roi, int maxSizeLen, int runCls, OcrResultBuffer out) {
+        int written = trackBuffer(nativePointer, tracker, image,
+                roiX(roi), roiY(roi), roiWidth(roi), roiHeight(roi), maxSizeLen, runCls, out.buffer());
+        collectTracker(tracker, written, out);
+    }
+
+    void track(long tracker, ByteBuffer y, ByteBuffer u, ByteBuffer v,
+               int yRowStride, int uvRowStride, int uvPixelStride,
+               int width, int height, int rotation, Rect roi, int maxSizeLen, int runCls,
+               OcrResultBuffer out) {
+        int written = trackYuv(nativePointer, tracker, y, u, v, yRowStride, uvRowStride, uvPixelStride,
+                width, height, rotation, roiX(roi), roiY(roi), roiWidth(roi), roiHeight(roi),
+                maxSizeLen, runCls, out.buffer());
+        collectTracker(tracker, written, out);
+    }
+
+    long[] rawTrackerStats(long tracker) {
+        return trackerStats(tracker);
+    }
+
+    private void collectTracker(long tracker, int written, OcrResultBuffer out) {
+        if (written < 0) {
+            out.ensureCapacity(-written);
+            written = checkFetched(fetchTrackerPending(tracker, out.buffer()));
+        }
+        out.reset(written);
+    }
+
+    private void collect(int written, OcrResultBuffer out) {
+        if (written < 0) {
+            out.ensureCapacity(-written);
+            written = checkFetched(fetchPending(nativePointer, out.buffer()));
+        }
+        out.reset(written);
+    }
+
+    // 扩容后仍为负数说明缓冲区依然不足，不能当作没有结果
+    private static int checkFetched(int written) {
+        if (written < 0) {
+            throw new IllegalStateException("Result buffer still too small, need " + -written + " bytes");
+        }
+        return written;
     }
 
     /**
@@ -63,13 +421,94 @@ public class OCRPredictorNative {
     public static class Config {
         public int useOpencl = 0;
         public int cpuThreadNum = 4;
+        /** 各阶段线程数，0 表示使用 cpuThreadNum */
+        public int detThreadNum = 0;
+        public int recThreadNum = 0;
+        public int clsThreadNum = 0;
+        /** 识别阶段每批的最大文本行数，1 表示逐行识别 */
+        public int recBatchNum = 8;
+        /** 识别阶段并行路数，各路独立加载一份识别模型（不共享权重）并平分 recThreadNum（或 cpuThreadNum） */
+        public int recWorkerNum = 1;
+        /** 识别输入宽度按此步长向上取整并右侧补齐，减少输入尺寸变化，1 表示不取整 */
+        public int recWidthStep = 32;
+        /** 识别输入的最大宽度，更宽的文本行被压缩到该宽度，0 表示不限制 */
+        public int recMaxWidth = 0;
+        /**
+         * 文本行识别缓存大小上限（字节，估算），0 表示不缓存。
+         * 启用后图像完全相同的文本行（固定表头、标签等）直接沿用上次的结果，
+         * 由 cloneFromSameModels 创建的预测器共用
+         */
+        public long recCacheBytes = 0;
+        /** 检测阶段并行路数，各路独立加载一份检测模型（不共享权重）并平分 detThreadNum（或 cpuThreadNum），用于分块检测 */
+        public int detWorkerNum = 1;
+        /**
+         * 分块检测的分块边长，0 表示不分块。图片长边超过该值时不再整体缩小到 maxSizeLen，
+         * 而是按原分辨率切块检测后合并跨块的文本框，适合大尺寸扫描件中的小字
+         */
+        public int detTileSize = 0;
+        /** 相邻分块的重叠像素数，应大于最高的文本行 */
+        public int detTileOverlap = 128;
+        /** 自动检测尺寸（maxSizeLen 为 DET_SIZE_AUTO）时探测用的尺寸 */
+        public int detProbeSize = 320;
+        /** 自动检测尺寸时，文本框短边在检测输入中至少应有的像素数 */
+        public int detMinTextHeight = 16;
+        /** 自动检测尺寸的上限 */
+        public int detAutoMaxSize = 1920;
+        /** 检测后处理参数 */
+        public DetConfig det = new DetConfig();
+        /**
+         * 创建时即加载的模型 STAGE_*，其余模型在首次用到该阶段时才加载，
+         * 只做检测或只做识别时不必加载其他模型。
+         * 其中任一模型加载失败时构造函数抛出 RuntimeException；延迟加载失败的模型在下次使用时重试
+         */
+        public int preloadStages = 0;
         public String cpuPower = "LITE_POWER_HIGH";
+        /**
+         * 设置后 detModelFilename 等为 assets 中的路径，模型由 native 直接从 APK 读取，
+         * 不经过文件系统；模型应以不压缩方式打包（noCompress 'nb'）
+         */
+        public AssetManager assetManager;
         public String detModelFilename;
         public String recModelFilename;
         public String clsModelFilename;
+        /** 字典文件，设置后由 native 完成解码；读取失败时构造预测器抛出异常 */
+        public String labelFilename;
     }
 
-    public void destroy() {
+    /**
+     * 检测（DB）后处理参数
+     */
+    public static class DetConfig {
+        /**
+         * 概率图二值化阈值，概率大于该值的像素视为文本。
+         * 默认 0.5 与早期版本的实际阈值相同（先转为 8 位整数再与 0.3 比较）；
+         * 设为 0.3（PaddleOCR 的 det_db_thresh）时检出的区域更大，文本框随之变化
+         */
+        public float threshold = 0.5f;
+        /** 文本框得分低于该值时丢弃 */
+        public float boxThresh = 0.5f;
+        /** 文本框扩张比例，越大框越宽松 */
+        public float unclipRatio = 2.0f;
+        /** 最多处理的轮廓数 */
+        public int maxCandidates = 1000;
+        /** 文本框短边小于该值（概率图像素）时丢弃 */
+        public int minSize = 3;
+        /** 文本框打分方式 DET_SCORE_POLYGON / DET_SCORE_FAST */
+        public int scoreMode = DET_SCORE_POLYGON;
+    }
+
+    /**
+     * 获取 native 运行时统计
+     */
+    public synchronized OcrNativeStats getStats() {
+        return new OcrNativeStats(rawStats());
+    }
+
+    synchronized long[] rawStats() {
+        return nativePointer == 0 ? null : stats(nativePointer);
+    }
+
+    public synchronized void destroy() {
         if (nativePointer != 0) {
             release(nativePointer);
             nativePointer = 0;
@@ -78,51 +517,87 @@ public class OCRPredictorNative {
     }
 
     // Native 方法
-    protected native long init(String detModelPath, String recModelPath, String clsModelPath, 
-                               int useOpencl, int threadNum, String cpuMode);
-    protected native float[] forward(long pointer, Bitmap originalImage, int maxSizeLen, 
-                                     int runDet, int runCls, int runRec);
+    protected native long init(AssetManager assetManager,
+                               String detModelPath, String recModelPath, String clsModelPath,
+                               String labelPath, int useOpencl, int threadNum,
+                               int detThreadNum, int recThreadNum, int clsThreadNum,
+                               int recBatchNum, int recWorkerNum, int recWidthStep, int recMaxWidth,
+                               long recCacheBytes, int detWorkerNum, int detTileSize, int detTileOverlap,
+                               int detProbeSize, int detMinTextHeight, int detAutoMaxSize,
+                               float detThreshold, float detBoxThresh, float detUnclipRatio,
+                               int detMaxCandidates, int detMinSize, int detScoreMode,
+                               int preloadStages, String cpuMode);
+    protected native int forwardBuffer(long pointer, Bitmap originalImage,
+                                       int roiX, int roiY, int roiWidth, int roiHeight, int maxSizeLen,
+                                       int runDet, int runCls, int runRec, ByteBuffer out);
+    protected native int forwardYuv(long pointer, ByteBuffer y, ByteBuffer u, ByteBuffer v,
+                                    int yRowStride, int uvRowStride, int uvPixelStride,
+                                    int width, int height, int rotation,
+                                    int roiX, int roiY, int roiWidth, int roiHeight,
+                                    int maxSizeLen, int runDet, int runCls, int runRec, ByteBuffer out);
+    protected native int forwardPixels(long pointer, ByteBuffer data, int format, int width, int height,
+                                       int rowStride, int rotation,
+                                       int roiX, int roiY, int roiWidth, int roiHeight,
+                                       int maxSizeLen, int runDet, int runCls, int runRec, ByteBuffer out);
+    protected native int fetchPending(long pointer, ByteBuffer out);
+    protected native long clonePredictor(long pointer);
+    protected native long[] stats(long pointer);
+    protected native long createJob();
+    protected native void releaseJob(long job);
+    protected native boolean prepareJob(long job, Bitmap originalImage,
+                                        int roiX, int roiY, int roiWidth, int roiHeight,
+                                        int maxSizeLen, int runDet, int runCls, int runRec);
+    protected native boolean prepareJobYuv(long job, ByteBuffer y, ByteBuffer u, ByteBuffer v,
+                                           int yRowStride, int uvRowStride, int uvPixelStride,
+                                           int width, int height, int rotation,
+                                           int roiX, int roiY, int roiWidth, int roiHeight,
+                                           int maxSizeLen, int runDet, int runCls, int runRec);
+    protected native boolean prepareJobPixels(long job, ByteBuffer data, int format, int width, int height,
+                                              int rowStride, int rotation,
+                                              int roiX, int roiY, int roiWidth, int roiHeight,
+                                              int maxSizeLen, int runDet, int runCls, int runRec);
+    protected native void runDetStage(long pointer, long job);
+    protected native void runClsStage(long pointer, long job);
+    protected native int runRecStage(long pointer, long job, ByteBuffer out);
+    protected native int fetchJobPending(long job, ByteBuffer out);
+    protected native long createTracker(int detInterval, float minTrackRatio, float contentDiff);
+    protected native void releaseTracker(long tracker);
+    protected native void resetTracker(long tracker);
+    protected native int trackBuffer(long pointer, long tracker, Bitmap originalImage,
+                                     int roiX, int roiY, int roiWidth, int roiHeight,
+                                     int maxSizeLen, int runCls, ByteBuffer out);
+    protected native int trackYuv(long pointer, long tracker, ByteBuffer y, ByteBuffer u, ByteBuffer v,
+                                  int yRowStride, int uvRowStride, int uvPixelStride,
+                                  int width, int height, int rotation,
+                                  int roiX, int roiY, int roiWidth, int roiHeight,
+                                  int maxSizeLen, int runCls, ByteBuffer out);
+    protected native int fetchTrackerPending(long tracker, ByteBuffer out);
+    protected native long[] trackerStats(long tracker);
     protected native void release(long pointer);
+    private static native long hashBitmap(Bitmap bitmap, int roiX, int roiY, int roiWidth, int roiHeight);
+    private static native long hashYuv(ByteBuffer y, int yRowStride, int width, int height, int rotation,
+                                       int roiX, int roiY, int roiWidth, int roiHeight);
 
     /**
-     * 后处理：解析 native 返回的 float 数组
+     * 后处理：将结果缓冲区转换为 OcrResultModel
      */
-    private ArrayList<OcrResultModel> postprocess(float[] raw) {
-        ArrayList<OcrResultModel> results = new ArrayList<>();
-        if (raw == null || raw.length == 0) {
-            return results;
-        }
-        
-        int begin = 0;
-        while (begin < raw.length) {
-            int pointNum = Math.round(raw[begin]);
-            int wordNum = Math.round(raw[begin + 1]);
-            OcrResultModel res = parse(raw, begin + 2, pointNum, wordNum);
-            begin += 2 + 1 + pointNum * 2 + wordNum + 2;
+    private ArrayList<OcrResultModel> postprocess(OcrResultBuffer raw) {
+        ArrayList<OcrResultModel> results = new ArrayList<>(raw.size());
+        for (int i = 0; i < raw.size(); i++) {
+            raw.moveTo(i);
+            OcrResultModel res = new OcrResultModel();
+            res.setConfidence(raw.score());
+            res.setLabel(raw.text());
+            for (int j = 0; j < raw.pointCount(); j++) {
+                res.addPoints(raw.pointX(j), raw.pointY(j));
+            }
+            for (int j = 0; j < raw.wordCount(); j++) {
+                res.addWordIndex(raw.wordIndex(j));
+            }
+            res.setClsIdx(raw.clsLabel());
+            res.setClsConfidence(raw.clsScore());
             results.add(res);
         }
         return results;
     }
-
-    private OcrResultModel parse(float[] raw, int begin, int pointNum, int wordNum) {
-        int current = begin;
-        OcrResultModel res = new OcrResultModel();
-        res.setConfidence(raw[current]);
-        current++;
-        
-        for (int i = 0; i < pointNum; i++) {
-            res.addPoints(Math.round(raw[current + i * 2]), Math.round(raw[current + i * 2 + 1]));
-        }
-        current += (pointNum * 2);
-        
-        for (int i = 0; i < wordNum; i++) {
-            int index = Math.round(raw[current + i]);
-            res.addWordIndex(index);
-        }
-        current += wordNum;
-        
-        res.setClsIdx(raw[current]);
-        res.setClsConfidence(raw[current + 1]);
-        return res;
-    }
 }
@@ -0,0 +1,225 @@
+package com.fsyang.paddleocr;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 单张图片的全部识别结果（列式存储）
+ *
+ * 所有文本框的数据保存在扁平的基本类型数组中，按下标访问，
+ * 只有调用 getResult / toList 时才会创建 OcrResult 对象。
+ */
+public final class OcrBatchResult {
+
+    /** 每个文本框的坐标数：4 个角点 x,y */
+    public static final int POINTS_PER_BOX = 8;
+
+    private int size;
+    private int[] points = new int[0];
+    private int[] wordOffsets = new int[]{0};
+    private int[] wordIndices = new int[0];
+    private float[] scores = new float[0];
+    private float[] clsScores = new float[0];
+    private int[] clsLabels = new int[0];
+    private int[] textOffsets = new int[]{0};
+    private byte[] textBytes = new byte[0];
+    private int clsPolicy;
+    private int clsRuns;
+    private int clsSkipped;
+    private int pageClsLabel = -1;
+    private int detSize;
+
+    /**
+     * 从 native 结果缓冲区复制数据
+     */
+    void fill(OcrResultBuffer raw) {
+        int count = raw.size();
+        int wordTotal = 0;
+        int textTotal = 0;
+        for (int i = 0; i < count; i++) {
+            raw.moveTo(i);
+            wordTotal += raw.wordCount();
+            textTotal += raw.textLength();
+        }
+
+        if (scores.length < count) {
+            points = new int[count * POINTS_PER_BOX];
+            wordOffsets = new int[count + 1];
+            scores = new float[count];
+            clsScores = new float[count];
+            clsLabels = new int[count];
+            textOffsets = new int[count + 1];
+        }
+        if (wordIndices.length < wordTotal) {
+            wordIndices = new int[wordTotal];
+        }
+        if (textBytes.length < textTotal) {
+            textBytes = new byte[textTotal];
+        }
+
+        int word = 0;
+        int text = 0;
+        for (int i = 0; i < count; i++) {
+            raw.moveTo(i);
+            int base = i * POINTS_PER_BOX;
+            int pointNum = Math.min(POINTS_PER_BOX / 2, raw.pointCount());
+            for (int j = 0; j < POINTS_PER_BOX / 2; j++) {
+                points[base + j * 2] = j < pointNum ? raw.pointX(j) : 0;
+                points[base + j * 2 + 1] = j < pointNum ? raw.pointY(j) : 0;
+            }
+            wordOffsets[i] = word;
+            for (int j = 0; j < raw.wordCount(); j++) {
+                wordIndices[word++] = raw.wordIndex(j);
+            }
+            textOffsets[i] = text;
+            raw.readText(textBytes, text);
+            text += raw.textLength();
+            scores[i] = raw.score();
+            clsScores[i] = raw.clsScore();
+            clsLabels[i] = raw.clsLabel();
+        }
+        wordOffsets[count] = word;
+        textOffsets[count] = text;
+        size = count;
+        clsPolicy = raw.clsPolicy();
+        clsRuns = raw.clsRuns();
+        clsSkipped = raw.clsSkipped();
+        pageClsLabel = raw.pageClsLabel();
+        detSize = raw.detSize();
+    }
+
+    /**
+     * 文本框数量
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * 实际采用的方向分类方式，OCRPredictorNative.CLS_*
+     */
+    public int getClsPolicy() {
+        return clsPolicy;
+    }
+
+    /**
+     * 经过方向分类模型的图像数
+     */
+    public int getClsRuns() {
+        return clsRuns;
+    }
+
+    /**
+     * 因整页投票而节省的方向分类次数
+     */
+    public int getClsSkipped() {
+        return clsSkipped;
+    }
+
+    /**
+     * 整页投票得出的方向，未投票或投票不一致时为 -1
+     */
+    public int getPageClsLabel() {
+        return pageClsLabel;
+    }
+
+    /**
+     * 实际使用的检测尺寸（自动选择时为选定的值，分块检测时为分块边长），未检测时为 0
+     */
+    public int getDetSize() {
+        return detSize;
+    }
+
+    public float getScore(int i) {
+        checkIndex(i);
+        return scores[i];
+    }
+
+    public float getClsScore(int i) {
+        checkIndex(i);
+        return clsScores[i];
+    }
+
+    public int getClsLabel(int i) {
+        checkIndex(i);
+        return clsLabels[i];
+    }
+
+    /**
+     * 第 i 个文本框第 k 个角点的 x 坐标
+     */
+    public int getPointX(int i, int k) {
+        checkPoint(i, k);
+        return points[i * POINTS_PER_BOX + k * 2];
+    }
+
+    /**
+     * 第 i 个文本框第 k 个角点的 y 坐标
+     */
+    public int getPointY(int i, int k) {
+        checkPoint(i, k);
+        return points[i * POINTS_PER_BOX + k * 2 + 1];
+    }
+
+    public int getWordCount(int i) {
+        checkIndex(i);
+        return wordOffsets[i + 1] - wordOffsets[i];
+    }
+
+    /**
+     * 第 i 个文本框第 k 个字符在字典中的索引
+     */
+    public int getWordIndex(int i, int k) {
+        int count = getWordCount(i);
+        if (k < 0 || k >= count) {
+            throw new IndexOutOfBoundsException("word: " + k + ", count: " + count);
+        }
+        return wordIndices[wordOffsets[i] + k];
+    }
+
+    /**
+     * 第 i 个文本框的文本（native 已完成字典解码）
+     */
+    public String getText(int i) {
+        checkIndex(i);
+        return new String(textBytes, textOffsets[i], textOffsets[i + 1] - textOffsets[i], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 第 i 个文本框的坐标 [x1,y1, x2,y2, x3,y3, x4,y4]
+     */
+    public float[] getBox(int i) {
+        checkIndex(i);
+        float[] box = new float[POINTS_PER_BOX];
+        for (int k = 0; k < POINTS_PER_BOX; k++) {
+            box[k] = points[i * POINTS_PER_BOX + k];
+        }
+        return box;
+    }
+
+    public OcrResult getResult(int i) {
+        return new OcrResult(getText(i), getScore(i), getBox(i));
+    }
+
+    public List<OcrResult> toList() {
+        List<OcrResult> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(getResult(i));
+        }
+        return results;
+    }
+
+    private void checkIndex(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("index: " + i + ", size: " + size);
+        }
+    }
+
+    private void checkPoint(int i, int k) {
+        checkIndex(i);
+        if (k < 0 || k >= POINTS_PER_BOX / 2) {
+            throw new IndexOutOfBoundsException("point: " + k + ", count: " + POINTS_PER_BOX / 2);
+        }
+    }
+}
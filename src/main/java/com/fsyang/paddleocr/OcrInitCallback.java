@@ -0,0 +1,20 @@
+package com.fsyang.paddleocr;
+
+/**
+ * 异步初始化回调接口，在初始化线程中回调
+ */
+public interface OcrInitCallback {
+
+    /**
+     * 初始化成功
+     * @param stats 初始化耗时与各模型的加载耗时
+     */
+    void onSuccess(PaddleOcrEngine.InitStats stats);
+
+    /**
+     * 初始化失败
+     * @param errorCode 错误码
+     * @param errorMsg 错误信息
+     */
+    void onError(int errorCode, String errorMsg);
+}
@@ -0,0 +1,143 @@
+package com.fsyang.paddleocr;
+
+/**
+ * native 运行时统计（快照）
+ */
+public class OcrNativeStats {
+
+    // 下标与 native.cpp 中 NATIVE_STATS 保持一致
+    static final int ARENA_BYTES = 0;
+    static final int ARENA_REALLOCS = 1;
+    static final int REC_WORKERS = 2;
+    static final int REC_WALL_NS = 3;
+    static final int REC_BUSY_NS = 4;
+    static final int REC_CAPACITY_NS = 5;
+    static final int REC_LINES = 6;
+    static final int REC_BATCHES = 7;
+    static final int REC_SHAPE_CHANGES = 8;
+    static final int REC_CACHE_HITS = 9;
+    static final int REC_CACHE_SAVED_NS = 10;
+    static final int DET_LOAD_NS = 11;
+    static final int REC_LOAD_NS = 12;
+    static final int CLS_LOAD_NS = 13;
+    static final int FIRST_DET_NS = 14;
+
+    /** 各阶段临时缓冲区占用的总字节数 */
+    public final long arenaBytes;
+
+    /** 临时缓冲区累计扩容次数，预热后应保持不变 */
+    public final long arenaReallocs;
+
+    /** 识别阶段并行路数（预测器池中为各预测器之和） */
+    public final long recWorkers;
+
+    /** 识别阶段累计耗时（毫秒） */
+    public final double recWallMs;
+
+    /** 识别阶段各路累计处理时间之和（毫秒） */
+    public final double recBusyMs;
+
+    /** 识别阶段累计耗时 × 路数（毫秒） */
+    public final double recCapacityMs;
+
+    /** 累计识别的文本行数 */
+    public final long recLines;
+
+    /** 识别模型累计推理次数 */
+    public final long recBatches;
+
+    /** 识别模型输入尺寸变化次数，占 recBatches 的比例越低，运行时重新分配越少 */
+    public final long recShapeChanges;
+
+    /** 命中识别缓存的文本行数（计入 recLines） */
+    public final long recCacheHits;
+
+    /** 命中识别缓存节省的识别时间（毫秒，按未命中行的平均处理时间估算） */
+    public final double recCacheSavedMs;
+
+    /** 创建检测模型实例的耗时（毫秒，含首次加载模型），预测器池中为各预测器之和 */
+    public final double detLoadMs;
+
+    /** 创建识别模型实例的耗时（毫秒，含首次加载模型） */
+    public final double recLoadMs;
+
+    /** 创建方向分类模型实例的耗时（毫秒，含首次加载模型） */
+    public final double clsLoadMs;
+
+    /** 冷启动：第一次检测的耗时（毫秒，含延迟加载），尚未检测时为 0，预测器池中取最大值 */
+    public final double firstDetMs;
+
+    OcrNativeStats(long[] values) {
+        this.arenaBytes = get(values, ARENA_BYTES);
+        this.arenaReallocs = get(values, ARENA_REALLOCS);
+        this.recWorkers = get(values, REC_WORKERS);
+        this.recWallMs = get(values, REC_WALL_NS) / 1e6;
+        this.recBusyMs = get(values, REC_BUSY_NS) / 1e6;
+        this.recCapacityMs = get(values, REC_CAPACITY_NS) / 1e6;
+        this.recLines = get(values, REC_LINES);
+        this.recBatches = get(values, REC_BATCHES);
+        this.recShapeChanges = get(values, REC_SHAPE_CHANGES);
+        this.recCacheHits = get(values, REC_CACHE_HITS);
+        this.recCacheSavedMs = get(values, REC_CACHE_SAVED_NS) / 1e6;
+        this.detLoadMs = get(values, DET_LOAD_NS) / 1e6;
+        this.recLoadMs = get(values, REC_LOAD_NS) / 1e6;
+        this.clsLoadMs = get(values, CLS_LOAD_NS) / 1e6;
+        this.firstDetMs = get(values, FIRST_DET_NS) / 1e6;
+    }
+
+    /**
+     * 识别阶段的并行加速比：各路处理时间之和 / 实际耗时，单路时约为 1
+     */
+    public double recSpeedup() {
+        return recWallMs == 0 ? 0 : recBusyMs / recWallMs;
+    }
+
+    /**
+     * 识别阶段的并行效率（0~1）：各路处理时间之和 / (实际耗时 × 路数)，
+     * 明显低于 1 说明文本行太少或批次不均，增加路数已无收益
+     */
+    public double recEfficiency() {
+        return recCapacityMs == 0 ? 0 : recBusyMs / recCapacityMs;
+    }
+
+    /**
+     * 识别缓存命中率（0~1）
+     */
+    public double recCacheHitRatio() {
+        return recLines == 0 ? 0 : (double) recCacheHits / recLines;
+    }
+
+    /**
+     * 把一个预测器的统计累加到 total（预测器池用），冷启动耗时取最大值
+     */
+    static void merge(long[] total, long[] values) {
+        for (int i = 0; i < Math.min(total.length, values.length); i++) {
+            total[i] = i == FIRST_DET_NS ? Math.max(total[i], values[i]) : total[i] + values[i];
+        }
+    }
+
+    private static long get(long[] values, int index) {
+        return values != null && index < values.length ? values[index] : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "OcrNativeStats{" +
+                "arenaBytes=" + arenaBytes +
+                ", arenaReallocs=" + arenaReallocs +
+                ", recWorkers=" + recWorkers +
+                ", recWallMs=" + recWallMs +
+                ", recLines=" + recLines +
+                ", recBatches=" + recBatches +
+                ", recShapeChanges=" + recShapeChanges +
+                ", recCacheHits=" + recCacheHits +
+                ", recCacheSavedMs=" + recCacheSavedMs +
+                ", detLoadMs=" + detLoadMs +
+                ", recLoadMs=" + recLoadMs +
+                ", clsLoadMs=" + clsLoadMs +
+                ", firstDetMs=" + firstDetMs +
+                ", recSpeedup=" + recSpeedup() +
+                ", recEfficiency=" + recEfficiency() +
+                '}';
+    }
+}
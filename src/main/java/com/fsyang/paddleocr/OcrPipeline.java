@@ -0,0 +1,304 @@
+package com.fsyang.paddleocr;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.media.Image;
+import android.util.Log;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 流水线识别
+ *
+ * det、cls、rec 三个阶段各自在一个线程中执行，阶段之间通过有界队列传递，
+ * 第 N+1 帧的检测与第 N 帧的识别同时进行，连续输入时吞吐取决于最慢的阶段。
+ * 输入在 submit 的调用线程中转换，之后即可复用输入缓冲区；结果按提交顺序回调。
+ *
+ * 通过 PaddleOcrEngine.openStream 创建，使用完毕后调用 close。
+ */
+public final class OcrPipeline {
+
+    private static final String TAG = "OcrPipeline";
+
+    private final OCRPredictorNative predictor;
+    private final OcrStreamCallback callback;
+    private final int maxSizeLen;
+    private final int runDet;
+    private final int runCls;
+    private final int runRec;
+    private final boolean blockWhenFull;
+
+    private final Frame[] frames;
+    private final ArrayBlockingQueue<Frame> idleFrames;
+    private final ExecutorService detExecutor;
+    private final ExecutorService clsExecutor;
+    private final ExecutorService recExecutor;
+    // 只在 rec 线程中使用
+    private final OcrResultBuffer resultBuffer = new OcrResultBuffer();
+
+    private final AtomicLong nextFrameId = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private volatile boolean closed = false;
+
+    /**
+     * @param predictor 由流水线独占，close 时释放
+     * @param depth 同时在流水线中的最大帧数
+     * @param runCls 方向分类方式 OCRPredictorNative.CLS_*
+     */
+    OcrPipeline(OCRPredictorNative predictor, int depth, int maxSizeLen,
+                boolean runDet, int runCls, boolean runRec,
+                boolean blockWhenFull, OcrStreamCallback callback) {
+        this.predictor = predictor;
+        this.callback = callback;
+        this.maxSizeLen = maxSizeLen;
+        this.runDet = runDet ? 1 : 0;
+        this.runCls = runCls;
+        this.runRec = runRec ? 1 : 0;
+        this.blockWhenFull = blockWhenFull;
+
+        int size = Math.max(1, depth);
+        frames = new Frame[size];
+        idleFrames = new ArrayBlockingQueue<>(size);
+        for (int i = 0; i < size; i++) {
+            frames[i] = new Frame(predictor.newJob());
+            idleFrames.add(frames[i]);
+        }
+        detExecutor = newStageExecutor("ocr-det", size);
+        clsExecutor = newStageExecutor("ocr-cls", size);
+        recExecutor = newStageExecutor("ocr-rec", size);
+    }
+
+    private static ExecutorService newStageExecutor(String name, int capacity) {
+        // 在途帧数不超过 capacity，队列不会溢出
+        return new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(capacity), r -> new Thread(r, name));
+    }
+
+    /**
+     * 提交一张图片
+     * @param bitmap 输入图片，返回后即可复用或回收
+     * @param roi 识别区域，null 表示整图，空区域没有结果
+     * @return 帧序号；流水线已满且不阻塞时丢弃该帧并返回 -1
+     */
+    public long submit(Bitmap bitmap, Rect roi) {
+        Frame frame = acquire();
+        if (frame == null) {
+            return -1;
+        }
+        boolean ok = false;
+        try {
+            ok = predictor.setJobInput(frame.job, bitmap, roi, maxSizeLen, runDet, runCls, runRec);
+        } catch (RuntimeException e) {
+            idleFrames.offer(frame);
+            throw e;
+        }
+        return dispatch(frame, ok);
+    }
+
+    /**
+     * 提交一帧相机图像（YUV_420_888）
+     * @param image 相机帧，返回后即可 close
+     * @param rotationDegrees 顺时针旋转角度 0/90/180/270
+     * @param roi 识别区域（旋转后坐标），null 表示整帧
+     * @return 帧序号；流水线已满且不阻塞时丢弃该帧并返回 -1
+     */
+    public long submit(Image image, int rotationDegrees, Rect roi) {
+        if (image == null || image.getFormat() != ImageFormat.YUV_420_888) {
+            throw new IllegalArgumentException("Image must be YUV_420_888");
+        }
+        Frame frame = acquire();
+        if (frame == null) {
+            return -1;
+        }
+        boolean ok = false;
+        try {
+            Image.Plane[] planes = image.getPlanes();
+            ok = predictor.setJobInput(frame.job,
+                    planes[0].getBuffer(), planes[1].getBuffer(), planes[2].getBuffer(),
+                    planes[0].getRowStride(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                    image.getWidth(), image.getHeight(), rotationDegrees, roi,
+                    maxSizeLen, runDet, runCls, runRec);
+        } catch (RuntimeException e) {
+            idleFrames.offer(frame);
+            throw e;
+        }
+        return dispatch(frame, ok);
+    }
+
+    /**
+     * 提交 direct ByteBuffer 中的像素数据
+     * @param data 像素数据，返回后即可复用
+     * @param format OCRPredictorNative.FORMAT_*
+     * @param width 宽度
+     * @param height 高度
+     * @param rowStride 行字节数，0 表示紧密排列
+     * @param rotationDegrees 顺时针旋转角度 0/90/180/270
+     * @param roi 识别区域（旋转后坐标），null 表示整图，空区域没有结果
+     * @return 帧序号；流水线已满且不阻塞时丢弃该帧并返回 -1
+     */
+    public long submit(ByteBuffer data, int format, int width, int height, int rowStride,
+                       int rotationDegrees, Rect roi) {
+        if (data == null || !data.isDirect()) {
+            throw new IllegalArgumentException("Data must be a direct ByteBuffer");
+        }
+        Frame frame = acquire();
+        if (frame == null) {
+            return -1;
+        }
+        boolean ok = false;
+        try {
+            ok = predictor.setJobInput(frame.job, data, format, width, height, rowStride,
+                    rotationDegrees, roi, maxSizeLen, runDet, runCls, runRec);
+        } catch (RuntimeException e) {
+            idleFrames.offer(frame);
+            throw e;
+        }
+        return dispatch(frame, ok);
+    }
+
+    /**
+     * 因流水线已满被丢弃的帧数
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    /**
+     * 当前在流水线中的帧数
+     */
+    public int getInFlight() {
+        return frames.length - idleFrames.size();
+    }
+
+    /**
+     * 等待在途帧处理完毕后释放资源，之后不能再 submit。不能在回调中调用
+     */
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        // 收回全部帧即表示在途帧已处理完毕
+        boolean interrupted = false;
+        for (int i = 0; i < frames.length; i++) {
+            try {
+                idleFrames.take();
+            } catch (InterruptedException e) {
+                interrupted = true;
+                i--;
+            }
+        }
+        detExecutor.shutdown();
+        clsExecutor.shutdown();
+        recExecutor.shutdown();
+        for (Frame frame : frames) {
+            predictor.freeJob(frame.job);
+        }
+        predictor.destroy();
+        Log.i(TAG, "Pipeline closed, dropped frames: " + droppedFrames.get());
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Frame acquire() {
+        if (closed) {
+            throw new IllegalStateException("Pipeline already closed");
+        }
+        Frame frame = idleFrames.poll();
+        if (frame == null && blockWhenFull) {
+            try {
+                frame = idleFrames.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (frame == null) {
+            droppedFrames.incrementAndGet();
+        }
+        return frame;
+    }
+
+    private long dispatch(Frame frame, boolean ok) {
+        // frame 回调后可能立即被其他线程复用，序号需在分发前取出
+        long id = nextFrameId.getAndIncrement();
+        frame.id = id;
+        // 失败的帧也依次经过各阶段（跳过计算），保证回调在 rec 线程中按提交顺序执行
+        frame.error = ok ? null : "Invalid input image";
+        detExecutor.execute(() -> runDet(frame));
+        return id;
+    }
+
+    private void runDet(Frame frame) {
+        if (frame.error == null) {
+            try {
+                predictor.detStage(frame.job);
+            } catch (Exception e) {
+                Log.e(TAG, "Det stage failed: " + e.getMessage(), e);
+                frame.error = errorMessage(e);
+            }
+        }
+        clsExecutor.execute(() -> runCls(frame));
+    }
+
+    private void runCls(Frame frame) {
+        if (frame.error == null) {
+            try {
+                predictor.clsStage(frame.job);
+            } catch (Exception e) {
+                Log.e(TAG, "Cls stage failed: " + e.getMessage(), e);
+                frame.error = errorMessage(e);
+            }
+        }
+        recExecutor.execute(() -> runRec(frame));
+    }
+
+    private void runRec(Frame frame) {
+        long id = frame.id;
+        String error = frame.error;
+        OcrBatchResult result = new OcrBatchResult();
+        if (error == null) {
+            try {
+                predictor.recStage(frame.job, resultBuffer);
+                result.fill(resultBuffer);
+            } catch (Exception e) {
+                Log.e(TAG, "Rec stage failed: " + e.getMessage(), e);
+                error = errorMessage(e);
+            }
+        }
+        // 先归还再回调，回调中可以继续 submit
+        idleFrames.offer(frame);
+        if (callback == null) {
+            return;
+        }
+        if (error != null) {
+            callback.onError(id, -1, error);
+        } else {
+            callback.onResult(id, result);
+        }
+    }
+
+    private static String errorMessage(Exception e) {
+        // 非 null 才表示失败
+        return e.getMessage() != null ? e.getMessage() : e.toString();
+    }
+
+    private static final class Frame {
+        final long job;
+        long id;
+        // 之前阶段的失败原因，非 null 时后续阶段不再计算
+        String error;
+
+        Frame(long job) {
+            this.job = job;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.fsyang.paddleocr;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * OCR 预测器池
+ *
+ * 第一个预测器从模型文件加载，其余通过 OCRPredictorNative.cloneFromSameModels
+ * 各自加载同一份模型，不共享权重，内存随预测器数量增长。
+ * 任一预测器加载失败时销毁已创建的预测器并抛出异常。
+ * 使用时 acquire 取出一个空闲预测器，用完后 release 归还；
+ * 全部被占用时 acquire 阻塞等待。线程安全。
+ */
+public final class OcrPredictorPool {
+
+    private static final String TAG = "OcrPredictorPool";
+
+    private final List<OCRPredictorNative> predictors;
+    private final ArrayBlockingQueue<OCRPredictorNative> idle;
+    private volatile boolean closed = false;
+
+    // 统计
+    private final AtomicLong acquireCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+
+    /**
+     * @param config 预测器配置
+     * @param size 预测器数量，至少为 1
+     */
+    public OcrPredictorPool(OCRPredictorNative.Config config, int size) {
+        int poolSize = Math.max(1, size);
+        predictors = new ArrayList<>(poolSize);
+        idle = new ArrayBlockingQueue<>(poolSize);
+
+        OCRPredictorNative first = new OCRPredictorNative(config);
+        predictors.add(first);
+        try {
+            for (int i = 1; i < poolSize; i++) {
+                predictors.add(first.cloneFromSameModels());
+            }
+        } catch (RuntimeException e) {
+            Log.e(TAG, "Pool create failed after " + predictors.size() + " predictors", e);
+            for (OCRPredictorNative predictor : predictors) {
+                predictor.destroy();
+            }
+            throw e;
+        }
+        idle.addAll(predictors);
+        Log.i(TAG, "Pool created, size: " + poolSize);
+    }
+
+    /**
+     * 取出一个空闲预测器，全部被占用时阻塞等待
+     * @return 预测器，用完后必须调用 release 归还
+     */
+    public OCRPredictorNative acquire() throws InterruptedException {
+        checkOpen();
+        long start = System.nanoTime();
+        OCRPredictorNative predictor = idle.poll();
+        if (predictor == null) {
+            predictor = idle.take();
+        }
+        recordWait(System.nanoTime() - start);
+        return predictor;
+    }
+
+    /**
+     * 在超时时间内取出一个空闲预测器
+     * @return 预测器，超时返回 null
+     */
+    public OCRPredictorNative acquire(long timeout, TimeUnit unit) throws InterruptedException {
+        checkOpen();
+        long start = System.nanoTime();
+        OCRPredictorNative predictor = idle.poll(timeout, unit);
+        if (predictor != null) {
+            recordWait(System.nanoTime() - start);
+        }
+        return predictor;
+    }
+
+    /**
+     * 归还预测器；池已关闭时直接释放
+     */
+    public void release(OCRPredictorNative predictor) {
+        if (predictor == null) {
+            return;
+        }
+        // 与 close 互斥：检查 closed 与放回队列之间不能被 close 清空队列，否则归还的预测器不会被释放
+        synchronized (this) {
+            if (!closed) {
+                if (!idle.offer(predictor)) {
+                    Log.w(TAG, "Release a predictor not owned by this pool");
+                }
+                return;
+            }
+        }
+        predictor.destroy();
+    }
+
+    /**
+     * 关闭预测器池：空闲的预测器立即释放，使用中的在归还时释放
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        OCRPredictorNative predictor;
+        while ((predictor = idle.poll()) != null) {
+            predictor.destroy();
+        }
+        Log.i(TAG, "Pool closed");
+    }
+
+    public int size() {
+        return predictors.size();
+    }
+
+    public int idleCount() {
+        return idle.size();
+    }
+
+    /**
+     * 获取统计快照
+     */
+    public Metrics getMetrics() {
+        return new Metrics(size(), idleCount(), acquireCount.get(),
+                totalWaitNanos.get(), maxWaitNanos.get());
+    }
+
+    /**
+     * 汇总所有预测器的 native 统计
+     */
+    public OcrNativeStats getNativeStats() {
+        long[] total = null;
+        for (OCRPredictorNative predictor : predictors) {
+            long[] values = predictor.rawStats();
+            if (values == null) {
+                continue;
+            }
+            if (total == null) {
+                total = new long[values.length];
+            }
+            OcrNativeStats.merge(total, values);
+        }
+        return new OcrNativeStats(total);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("Pool already closed");
+        }
+    }
+
+    private void recordWait(long nanos) {
+        acquireCount.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        long max;
+        while (nanos > (max = maxWaitNanos.get())) {
+            if (maxWaitNanos.compareAndSet(max, nanos)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * 预测器池统计（快照）
+     */
+    public static class Metrics {
+
+        /** 预测器总数 */
+        public final int poolSize;
+
+        /** 当前空闲数量 */
+        public final int idleCount;
+
+        /** 累计 acquire 次数 */
+        public final long acquireCount;
+
+        /** 累计等待时间（毫秒） */
+        public final double totalWaitMs;
+
+        /** 单次最长等待时间（毫秒） */
+        public final double maxWaitMs;
+
+        Metrics(int poolSize, int idleCount, long acquireCount, long totalWaitNanos, long maxWaitNanos) {
+            this.poolSize = poolSize;
+            this.idleCount = idleCount;
+            this.acquireCount = acquireCount;
+            this.totalWaitMs = totalWaitNanos / 1e6;
+            this.maxWaitMs = maxWaitNanos / 1e6;
+        }
+
+        /** 平均等待时间（毫秒） */
+        public double averageWaitMs() {
+            return acquireCount == 0 ? 0 : totalWaitMs / acquireCount;
+        }
+
+        @Override
+        public String toString() {
+            return "Metrics{" +
+                    "poolSize=" + poolSize +
+                    ", idleCount=" + idleCount +
+                    ", acquireCount=" + acquireCount +
+                    ", averageWaitMs=" + averageWaitMs() +
+                    ", maxWaitMs=" + maxWaitMs +
+                    '}';
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package com.fsyang.paddleocr;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * native 识别结果的二进制视图
+ *
+ * 结果由 native 直接写入可复用的 direct ByteBuffer，布局（本机字节序）：
+ * header: int32 version, int32 headerBytes, int32 byteLength, int32 boxCount,
+ *         int32 clsPolicy, int32 clsRuns, int32 clsSkipped, int32 pageClsLabel,
+ *         int32 detSize
+ *         （headerBytes 之后为追加字段，旧版本 native 可能没有）
+ * record: int32 pointNum, int32 wordNum, int32 textBytes, float32 score,
+ *         int32 clsLabel, float32 clsScore, int32 points[pointNum * 2],
+ *         int32 words[wordNum], uint8 text[textBytes]（UTF-8，补齐到 4 字节）
+ *
+ * 读取采用 flyweight 方式：moveTo(i) 定位到第 i 个文本框后通过 getter 读取，
+ * 不会为每个文本框分配对象。非线程安全。
+ */
+public final class OcrResultBuffer {
+
+    static final int VERSION = 2;
+    static final int RECORD_BYTES = 24;
+    private static final int PAGE_INFO_OFFSET = 16;
+    private static final int PAGE_INFO_END = 32;
+    private static final int DET_INFO_OFFSET = 32;
+    private static final int DET_INFO_END = 36;
+
+    private static final int DEFAULT_CAPACITY = 16 * 1024;
+
+    private ByteBuffer buffer;
+    private int[] offsets = new int[64];
+    private int boxCount;
+    private int record;
+    private int clsPolicy;
+    private int clsRuns;
+    private int clsSkipped;
+    private int pageClsLabel = -1;
+    private int detSize;
+
+    public OcrResultBuffer() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity 初始容量（字节），必须大于 0
+     */
+    public OcrResultBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        buffer = allocate(capacity);
+    }
+
+    private static ByteBuffer allocate(int capacity) {
+        return ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    /**
+     * 扩容（不保留原有内容），至少翻倍，不超过 Integer.MAX_VALUE
+     */
+    void ensureCapacity(int bytes) {
+        if (buffer.capacity() < bytes) {
+            long capacity = Math.max(bytes, buffer.capacity() * 2L);
+            buffer = allocate((int) Math.min(capacity, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * native 写入完成后解析头部并建立文本框偏移索引
+     * @param length native 写入的字节数
+     */
+    void reset(int length) {
+        boxCount = 0;
+        record = -1;
+        clsPolicy = 0;
+        clsRuns = 0;
+        clsSkipped = 0;
+        pageClsLabel = -1;
+        detSize = 0;
+        if (length <= 0) {
+            return;
+        }
+        int version = buffer.getInt(0);
+        if (version != VERSION) {
+            throw new IllegalStateException("Unsupported result buffer version: " + version);
+        }
+        int headerBytes = buffer.getInt(4);
+        int byteLength = buffer.getInt(8);
+        if (byteLength != length) {
+            throw new IllegalStateException("Result buffer length mismatch: " + byteLength + " != " + length);
+        }
+        int count = buffer.getInt(12);
+        if (headerBytes >= PAGE_INFO_END) {
+            clsPolicy = buffer.getInt(PAGE_INFO_OFFSET);
+            clsRuns = buffer.getInt(PAGE_INFO_OFFSET + 4);
+            clsSkipped = buffer.getInt(PAGE_INFO_OFFSET + 8);
+            pageClsLabel = buffer.getInt(PAGE_INFO_OFFSET + 12);
+        }
+        if (headerBytes >= DET_INFO_END) {
+            detSize = buffer.getInt(DET_INFO_OFFSET);
+        }
+        if (offsets.length < count) {
+            offsets = new int[Math.max(count, offsets.length * 2)];
+        }
+        int current = headerBytes;
+        for (int i = 0; i < count; i++) {
+            offsets[i] = current;
+            int pointNum = buffer.getInt(current);
+            int wordNum = buffer.getInt(current + 4);
+            int textBytes = buffer.getInt(current + 8);
+            current += RECORD_BYTES + (pointNum * 2 + wordNum) * 4 + ((textBytes + 3) & ~3);
+        }
+        boxCount = count;
+    }
+
+    /**
+     * 文本框数量
+     */
+    public int size() {
+        return boxCount;
+    }
+
+    /**
+     * 实际采用的方向分类方式，OCRPredictorNative.CLS_*
+     */
+    public int clsPolicy() {
+        return clsPolicy;
+    }
+
+    /**
+     * 经过方向分类模型的图像数
+     */
+    public int clsRuns() {
+        return clsRuns;
+    }
+
+    /**
+     * 因整页投票而跳过方向分类的文本行数
+     */
+    public int clsSkipped() {
+        return clsSkipped;
+    }
+
+    /**
+     * 整页投票得出的方向，未投票或投票不一致时为 -1
+     */
+    public int pageClsLabel() {
+        return pageClsLabel;
+    }
+
+    /**
+     * 实际使用的检测尺寸（自动选择时为选定的值，分块检测时为分块边长），未检测时为 0
+     */
+    public int detSize() {
+        return detSize;
+    }
+
+    /**
+     * 定位到第 index 个文本框
+     */
+    public OcrResultBuffer moveTo(int index) {
+        if (index < 0 || index >= boxCount) {
+            throw new IndexOutOfBoundsException("index: " + index + ", size: " + boxCount);
+        }
+        record = offsets[index];
+        return this;
+    }
+
+    public int pointCount() {
+        return buffer.getInt(record);
+    }
+
+    public int wordCount() {
+        return buffer.getInt(record + 4);
+    }
+
+    /**
+     * 文本的 UTF-8 字节数
+     */
+    public int textLength() {
+        return buffer.getInt(record + 8);
+    }
+
+    public float score() {
+        return buffer.getFloat(record + 12);
+    }
+
+    public int clsLabel() {
+        return buffer.getInt(record + 16);
+    }
+
+    public float clsScore() {
+        return buffer.getFloat(record + 20);
+    }
+
+    public int pointX(int i) {
+        return buffer.getInt(record + RECORD_BYTES + i * 8);
+    }
+
+    public int pointY(int i) {
+        return buffer.getInt(record + RECORD_BYTES + i * 8 + 4);
+    }
+
+    public int wordIndex(int i) {
+        return buffer.getInt(record + RECORD_BYTES + pointCount() * 8 + i * 4);
+    }
+
+    /**
+     * 将文本的 UTF-8 字节复制到 dst[offset]，长度为 textLength()
+     */
+    public void readText(byte[] dst, int offset) {
+        int position = record + RECORD_BYTES + pointCount() * 8 + wordCount() * 4;
+        for (int i = 0, n = textLength(); i < n; i++) {
+            dst[offset + i] = buffer.get(position + i);
+        }
+    }
+
+    /**
+     * 文本（每次调用创建新的 String）
+     */
+    public String text() {
+        byte[] bytes = new byte[textLength()];
+        readText(bytes, 0);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
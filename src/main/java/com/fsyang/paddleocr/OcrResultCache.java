@@ -0,0 +1,292 @@
+package com.fsyang.paddleocr;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 识别结果缓存
+ *
+ * 以 native 计算的 64 位 dHash（9x8 灰度缩略图的相邻像素比较）为键，汉明距离不超过
+ * maxDistance 的图片视为同一画面，直接返回上次的识别结果，不占用预测器。
+ * 尺寸、识别区域、旋转角度与识别参数不同的请求互不命中；近似查找只比较参数相同的
+ * 最近 NEAR_CANDIDATES 次写入，未命中的开销不随缓存条目数增长。
+ * 按最近使用顺序淘汰，总大小（估算）不超过 maxBytes。线程安全。
+ *
+ * 缓存保存结果的副本，每次命中返回新的副本，调用方可以随意修改返回的列表与 OcrResult.box。
+ * 由 PaddleOcrEngine 按 Options.resultCacheBytes 创建。
+ */
+public final class OcrResultCache {
+
+    // 估算大小用：每条缓存、每个结果的固定开销（字节）
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final int RESULT_OVERHEAD = 64;
+    // 近似查找时比较的最近写入条数（每组参数）
+    private static final int NEAR_CANDIDATES = 16;
+
+    private final long maxBytes;
+    private final int maxDistance;
+    private final LinkedHashMap<Key, List<OcrResult>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // 按参数分组（分组键的 hash 为 0）的最近写入，队首为最新
+    private final HashMap<Key, ArrayDeque<Key>> recent = new HashMap<>();
+    private long bytes = 0;
+
+    // 统计
+    private long hits = 0;
+    private long nearHits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxBytes 缓存结果的总大小上限（估算）
+     * @param maxDistance 命中允许的最大汉明距离（0~64），0 表示只命中完全相同的哈希
+     */
+    OcrResultCache(long maxBytes, int maxDistance) {
+        this.maxBytes = maxBytes;
+        this.maxDistance = Math.max(0, Math.min(64, maxDistance));
+    }
+
+    /**
+     * 生成缓存键
+     * @param hash dHash，0 表示不缓存（哈希失败或纯色图片）
+     * @param params 影响识别结果的其余参数（尺寸、区域、旋转、识别参数等）
+     * @return 缓存键，hash 为 0 时返回 null
+     */
+    static Key key(long hash, int... params) {
+        return hash == 0 ? null : new Key(hash, params);
+    }
+
+    /**
+     * 查找缓存，先按哈希精确查找，再在参数相同的最近写入中按汉明距离查找最近的一条
+     * @return 缓存结果的副本，未命中返回 null
+     */
+    List<OcrResult> get(Key key) {
+        if (key == null) {
+            return null;
+        }
+        List<OcrResult> results;
+        synchronized (this) {
+            results = find(key);
+        }
+        // 缓存的结果不再修改，复制无需持锁
+        return results == null ? null : copyOf(results);
+    }
+
+    private List<OcrResult> find(Key key) {
+        List<OcrResult> results = entries.get(key);
+        if (results != null) {
+            hits++;
+            return results;
+        }
+        Key nearest = null;
+        if (maxDistance > 0) {
+            ArrayDeque<Key> candidates = recent.get(key.group());
+            int nearestDistance = maxDistance + 1;
+            if (candidates != null) {
+                for (Key candidate : candidates) {
+                    int distance = Long.bitCount(candidate.hash ^ key.hash);
+                    if (distance < nearestDistance) {
+                        nearest = candidate;
+                        nearestDistance = distance;
+                    }
+                }
+            }
+        }
+        if (nearest == null) {
+            misses++;
+            return null;
+        }
+        nearHits++;
+        // get 同时更新最近使用顺序
+        return entries.get(nearest);
+    }
+
+    /**
+     * 保存识别结果的副本，超过大小上限时淘汰最久未使用的条目。
+     * 识别失败时也返回空列表，因此空结果不缓存
+     * @return 原样返回 results，之后修改 results 不影响缓存
+     */
+    List<OcrResult> put(Key key, List<OcrResult> results) {
+        if (key == null || results.isEmpty()) {
+            return results;
+        }
+        int size = estimateBytes(results);
+        if (size > maxBytes) {
+            return results;
+        }
+        List<OcrResult> cached = copyOf(results);
+        synchronized (this) {
+            List<OcrResult> previous = entries.put(key, cached);
+            if (previous != null) {
+                bytes -= estimateBytes(previous);
+            }
+            bytes += size;
+            addRecent(key);
+            Iterator<Map.Entry<Key, List<OcrResult>>> it = entries.entrySet().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                Map.Entry<Key, List<OcrResult>> eldest = it.next();
+                bytes -= estimateBytes(eldest.getValue());
+                removeRecent(eldest.getKey());
+                it.remove();
+                evictions++;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 清空缓存（统计保留）
+     */
+    synchronized void clear() {
+        entries.clear();
+        recent.clear();
+        bytes = 0;
+    }
+
+    private void addRecent(Key key) {
+        Key group = key.group();
+        ArrayDeque<Key> keys = recent.get(group);
+        if (keys == null) {
+            keys = new ArrayDeque<>(NEAR_CANDIDATES);
+            recent.put(group, keys);
+        }
+        keys.remove(key);
+        keys.addFirst(key);
+        if (keys.size() > NEAR_CANDIDATES) {
+            keys.removeLast();
+        }
+    }
+
+    private void removeRecent(Key key) {
+        Key group = key.group();
+        ArrayDeque<Key> keys = recent.get(group);
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            recent.remove(group);
+        }
+    }
+
+    private static List<OcrResult> copyOf(List<OcrResult> results) {
+        List<OcrResult> copy = new ArrayList<>(results.size());
+        for (OcrResult result : results) {
+            copy.add(new OcrResult(result.text, result.confidence,
+                    result.box == null ? null : result.box.clone()));
+        }
+        return copy;
+    }
+
+    synchronized Stats getStats() {
+        return new Stats(entries.size(), bytes, maxBytes, hits, nearHits, misses, evictions);
+    }
+
+    private static int estimateBytes(List<OcrResult> results) {
+        int size = ENTRY_OVERHEAD;
+        for (OcrResult result : results) {
+            size += RESULT_OVERHEAD;
+            if (result.text != null) {
+                size += result.text.length() * 2;
+            }
+            if (result.box != null) {
+                size += result.box.length * 4;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * 缓存键：哈希与识别参数
+     */
+    static final class Key {
+        final long hash;
+        final int[] params;
+
+        private Key(long hash, int[] params) {
+            this.hash = hash;
+            this.params = params;
+        }
+
+        /**
+         * 只含参数的分组键，参数相同的缓存键属于同一组
+         */
+        Key group() {
+            return new Key(0, params);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return hash == other.hash && Arrays.equals(params, other.params);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (int) (hash ^ (hash >>> 32)) + Arrays.hashCode(params);
+        }
+    }
+
+    /**
+     * 缓存统计（快照）
+     */
+    public static final class Stats {
+
+        /** 当前条目数 */
+        public final int entryCount;
+
+        /** 当前估算大小（字节） */
+        public final long bytes;
+
+        /** 大小上限（字节） */
+        public final long maxBytes;
+
+        /** 哈希完全相同的命中次数 */
+        public final long hits;
+
+        /** 汉明距离在容差内的近似命中次数 */
+        public final long nearHits;
+
+        /** 未命中次数 */
+        public final long misses;
+
+        /** 因超过大小上限淘汰的条目数 */
+        public final long evictions;
+
+        Stats(int entryCount, long bytes, long maxBytes, long hits, long nearHits, long misses, long evictions) {
+            this.entryCount = entryCount;
+            this.bytes = bytes;
+            this.maxBytes = maxBytes;
+            this.hits = hits;
+            this.nearHits = nearHits;
+            this.misses = misses;
+            this.evictions = evictions;
+        }
+
+        /** 命中率（含近似命中） */
+        public double hitRatio() {
+            long total = hits + nearHits + misses;
+            return total == 0 ? 0 : (double) (hits + nearHits) / total;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats{" +
+                    "entryCount=" + entryCount +
+                    ", bytes=" + bytes +
+                    ", hits=" + hits +
+                    ", nearHits=" + nearHits +
+                    ", misses=" + misses +
+                    ", evictions=" + evictions +
+                    ", hitRatio=" + hitRatio() +
+                    '}';
+        }
+    }
+}
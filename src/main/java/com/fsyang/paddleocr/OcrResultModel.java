@@ -2,14 +2,17 @@ package com.fsyang.paddleocr;
 
 import android.graphics.Point;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * OCR 识别结果模型
  */
 public class OcrResultModel {
-    private List<Point> points;
-    private List<Integer> wordIndex;
+    private int[] points;
+    private int pointCount;
+    private int[] wordIndex;
+    private int wordCount;
     private String label;
     private float confidence;
     private float clsIdx;
@@ -18,25 +21,66 @@ public class OcrResultModel {
 
     public OcrResultModel() {
         super();
-        points = new ArrayList<>();
-        wordIndex = new ArrayList<>();
+        points = new int[8];
+        wordIndex = new int[16];
     }
 
     public void addPoints(int x, int y) {
-        Point point = new Point(x, y);
-        points.add(point);
+        if (points.length < (pointCount + 1) * 2) {
+            points = Arrays.copyOf(points, points.length * 2);
+        }
+        points[pointCount * 2] = x;
+        points[pointCount * 2 + 1] = y;
+        pointCount++;
     }
 
     public void addWordIndex(int index) {
-        wordIndex.add(index);
+        if (wordIndex.length == wordCount) {
+            wordIndex = Arrays.copyOf(wordIndex, wordIndex.length * 2);
+        }
+        wordIndex[wordCount++] = index;
+    }
+
+    public int getPointCount() {
+        return pointCount;
+    }
+
+    public int getPointX(int i) {
+        return points[i * 2];
+    }
+
+    public int getPointY(int i) {
+        return points[i * 2 + 1];
+    }
+
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    public int getWordIndex(int i) {
+        return wordIndex[i];
     }
 
+    /**
+     * 角点列表，每次调用都会创建新的 Point 对象，热路径请使用 getPointX / getPointY
+     */
     public List<Point> getPoints() {
-        return points;
+        List<Point> list = new ArrayList<>(pointCount);
+        for (int i = 0; i < pointCount; i++) {
+            list.add(new Point(points[i * 2], points[i * 2 + 1]));
+        }
+        return list;
     }
 
+    /**
+     * 字符索引列表，每次调用都会装箱，热路径请使用 getWordIndex(int)
+     */
     public List<Integer> getWordIndex() {
-        return wordIndex;
+        List<Integer> list = new ArrayList<>(wordCount);
+        for (int i = 0; i < wordCount; i++) {
+            list.add(wordIndex[i]);
+        }
+        return list;
     }
 
     public String getLabel() {
@@ -84,16 +128,16 @@ public class OcrResultModel {
      * @return [minX, minY, maxX, maxY]
      */
     public int[] getBounds() {
-        if (points.isEmpty()) {
+        if (pointCount == 0) {
             return new int[]{0, 0, 0, 0};
         }
         int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
         int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
-        for (Point p : points) {
-            minX = Math.min(minX, p.x);
-            minY = Math.min(minY, p.y);
-            maxX = Math.max(maxX, p.x);
-            maxY = Math.max(maxY, p.y);
+        for (int i = 0; i < pointCount; i++) {
+            minX = Math.min(minX, points[i * 2]);
+            minY = Math.min(minY, points[i * 2 + 1]);
+            maxX = Math.max(maxX, points[i * 2]);
+            maxY = Math.max(maxY, points[i * 2 + 1]);
         }
         return new int[]{minX, minY, maxX, maxY};
     }
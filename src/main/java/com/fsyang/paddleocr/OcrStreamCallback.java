@@ -0,0 +1,22 @@
+package com.fsyang.paddleocr;
+
+/**
+ * 流水线识别回调接口，在识别线程中按提交顺序回调
+ */
+public interface OcrStreamCallback {
+
+    /**
+     * 识别完成
+     * @param frameId submit 返回的帧序号
+     * @param result 识别结果
+     */
+    void onResult(long frameId, OcrBatchResult result);
+
+    /**
+     * 识别失败
+     * @param frameId submit 返回的帧序号
+     * @param errorCode 错误码
+     * @param errorMsg 错误信息
+     */
+    void onError(long frameId, int errorCode, String errorMsg);
+}
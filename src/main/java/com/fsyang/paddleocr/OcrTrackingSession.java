@@ -0,0 +1,143 @@
+package com.fsyang.paddleocr;
+
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.media.Image;
+import android.util.Log;
+
+/**
+ * 相机连续帧的跟踪识别
+ *
+ * native 用稀疏光流（金字塔 LK）跟踪上一帧的文本行，每隔 detInterval 帧或跟踪质量下降时
+ * 才重新检测，并且只对新出现或内容发生变化的文本行重新识别。画面稳定时每帧只需光流与
+ * 少量缩略图比较，结果沿用之前的识别文本、坐标随画面移动。
+ *
+ * 使用独立的预测器，通过 PaddleOcrEngine.openTracking 创建，使用完毕后调用 close。
+ */
+public final class OcrTrackingSession {
+
+    private static final String TAG = "OcrTrackingSession";
+
+    private final OCRPredictorNative predictor;
+    private final int maxSizeLen;
+    private final int runCls;
+    private final OcrResultBuffer resultBuffer = new OcrResultBuffer();
+    private long tracker;
+
+    /**
+     * @param predictor 由会话独占，close 时释放
+     * @param runCls 方向分类方式 OCRPredictorNative.CLS_*
+     */
+    OcrTrackingSession(OCRPredictorNative predictor, int maxSizeLen, int runCls,
+                       int detInterval, float minTrackRatio, float contentDiff) {
+        this.predictor = predictor;
+        this.maxSizeLen = maxSizeLen;
+        this.runCls = runCls;
+        this.tracker = predictor.newTracker(detInterval, minTrackRatio, contentDiff);
+    }
+
+    /**
+     * 处理一帧图片
+     * @param bitmap 输入图片
+     * @param roi 识别区域，null 表示整图，空区域没有结果；区域大小变化时重新检测
+     * @param out 当前帧的全部文本行
+     */
+    public synchronized void track(Bitmap bitmap, Rect roi, OcrBatchResult out) {
+        checkOpen();
+        predictor.track(tracker, bitmap, roi, maxSizeLen, runCls, resultBuffer);
+        out.fill(resultBuffer);
+    }
+
+    /**
+     * 处理一帧相机图像（YUV_420_888）
+     * @param image 相机帧，返回后即可 close
+     * @param rotationDegrees 顺时针旋转角度 0/90/180/270
+     * @param roi 识别区域（旋转后坐标），null 表示整帧
+     * @param out 当前帧的全部文本行
+     */
+    public synchronized void track(Image image, int rotationDegrees, Rect roi, OcrBatchResult out) {
+        if (image == null || image.getFormat() != ImageFormat.YUV_420_888) {
+            throw new IllegalArgumentException("Image must be YUV_420_888");
+        }
+        checkOpen();
+        Image.Plane[] planes = image.getPlanes();
+        predictor.track(tracker,
+                planes[0].getBuffer(), planes[1].getBuffer(), planes[2].getBuffer(),
+                planes[0].getRowStride(), planes[1].getRowStride(), planes[1].getPixelStride(),
+                image.getWidth(), image.getHeight(), rotationDegrees, roi,
+                maxSizeLen, runCls, resultBuffer);
+        out.fill(resultBuffer);
+    }
+
+    /**
+     * 丢弃已跟踪的文本行，下一帧重新检测与识别（例如切换镜头或场景突变后）
+     */
+    public synchronized void reset() {
+        checkOpen();
+        predictor.clearTracker(tracker);
+    }
+
+    public synchronized Stats getStats() {
+        checkOpen();
+        return new Stats(predictor.rawTrackerStats(tracker));
+    }
+
+    /**
+     * 释放 tracker 与预测器，之后不能再调用 track
+     */
+    public synchronized void close() {
+        if (tracker == 0) {
+            return;
+        }
+        predictor.freeTracker(tracker);
+        tracker = 0;
+        predictor.destroy();
+        Log.i(TAG, "Tracking session closed");
+    }
+
+    private void checkOpen() {
+        if (tracker == 0) {
+            throw new IllegalStateException("Tracking session already closed");
+        }
+    }
+
+    /**
+     * 跟踪统计（快照）
+     */
+    public static final class Stats {
+
+        // 下标与 native.cpp 中 TRACKER_STATS 保持一致
+        static final int FRAMES = 0;
+        static final int DET_FRAMES = 1;
+        static final int REC_LINES = 2;
+        static final int REUSED_LINES = 3;
+
+        /** 处理的帧数 */
+        public final long frames;
+
+        /** 其中运行了检测的帧数 */
+        public final long detFrames;
+
+        /** 经过识别的文本行数 */
+        public final long recLines;
+
+        /** 沿用之前识别结果的文本行数 */
+        public final long reusedLines;
+
+        Stats(long[] values) {
+            this.frames = values[FRAMES];
+            this.detFrames = values[DET_FRAMES];
+            this.recLines = values[REC_LINES];
+            this.reusedLines = values[REUSED_LINES];
+        }
+
+        /**
+         * 沿用识别结果的文本行占比，越高每帧开销越低
+         */
+        public double reuseRatio() {
+            long total = recLines + reusedLines;
+            return total == 0 ? 0 : (double) reusedLines / total;
+        }
+    }
+}
@@ -2,14 +2,21 @@ package com.fsyang.paddleocr;
 
 import android.content.Context;
 import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.graphics.Rect;
+import android.media.Image;
 import android.util.Log;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.List;
-import java.util.Vector;
+import java.util.Properties;
+import java.util.zip.CRC32;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -17,9 +24,16 @@ import java.util.concurrent.Executors;
  * 飞桨 OCR 引擎
  * 
  * 使用方法：
- * 1. 初始化：PaddleOcrEngine.init(context)
+ * 1. 初始化：PaddleOcrEngine.init(context)，或在后台线程中初始化 PaddleOcrEngine.initAsync(context, callback)
  * 2. 识别：PaddleOcrEngine.recognize(bitmap) 或 PaddleOcrEngine.recognizeAsync(bitmap, callback)
+ *    相机帧可直接调用 PaddleOcrEngine.recognize(image, rotationDegrees)
  * 3. 释放：PaddleOcrEngine.release()
+ *
+ * 识别方法线程安全：请求分发到预测器池，并发数由 Options.poolSize 决定。
+ * 连续输入（相机帧、多页批量）可使用 PaddleOcrEngine.openStream 流水线识别。
+ *
+ * 模型默认由 native 直接从 APK 的 assets 读取。应用的 build.gradle 中应设置
+ * androidResources { noCompress 'nb' }，模型不压缩存放时可直接映射，无需先解压。
  */
 public class PaddleOcrEngine {
 
@@ -33,16 +47,25 @@ public class PaddleOcrEngine {
 
     // 模型目录（assets 中）
     private static final String MODEL_DIR = "models";
+    private static final String[] MODEL_FILES = {DET_MODEL, REC_MODEL, CLS_MODEL, KEYS_FILE};
+
+    // 复制到缓存目录时的校验文件：应用安装（更新）时间与各文件的 CRC32/长度
+    private static final String STAMP_FILE = "models.stamp";
+    private static final String STAMP_INSTALL_TIME = "installTime";
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
 
     private static Context appContext;
-    private static OCRPredictorNative predictor;
-    private static Vector<String> wordLabels = new Vector<>();
-    private static boolean isInitialized = false;
-    private static ExecutorService executor = Executors.newSingleThreadExecutor();
+    private static volatile OcrPredictorPool pool;
+    private static OCRPredictorNative.Config modelConfig;
+    private static volatile boolean isInitialized = false;
+    private static ExecutorService executor;
+    private static volatile OcrResultCache resultCache;
 
     // 配置参数
-    private static int detLongSize = 960;
+    private static volatile int detLongSize = 960;
     private static int cpuThreadNum = 4;
+    private static int poolSize = 1;
+    private static volatile int clsPolicy = OCRPredictorNative.CLS_PER_LINE;
 
     private PaddleOcrEngine() {}
 
@@ -63,40 +86,72 @@ public class PaddleOcrEngine {
      * @return 是否初始化成功
      */
     public static synchronized boolean init(Context context, int threadNum, int longSize) {
+        Options options = new Options();
+        options.cpuThreadNum = threadNum;
+        options.detLongSize = longSize;
+        return init(context, options);
+    }
+
+    /**
+     * 初始化 OCR 引擎
+     * @param context Android Context
+     * @param options 初始化参数
+     * @return 是否初始化成功
+     */
+    public static synchronized boolean init(Context context, Options options) {
         if (isInitialized) {
             Log.w(TAG, "Already initialized");
             return true;
         }
 
         appContext = context.getApplicationContext();
-        cpuThreadNum = threadNum;
-        detLongSize = longSize;
+        cpuThreadNum = options.cpuThreadNum;
+        detLongSize = options.detLongSize;
+        poolSize = Math.max(1, options.poolSize);
+        clsPolicy = options.clsPolicy;
 
         try {
-            // 复制模型文件到私有目录
-            String modelPath = copyModelsToCache();
-            if (modelPath == null) {
-                Log.e(TAG, "Copy models failed");
-                return false;
-            }
-
-            // 加载字典
-            if (!loadLabels()) {
-                Log.e(TAG, "Load labels failed");
-                return false;
+            OCRPredictorNative.Config config = new OCRPredictorNative.Config();
+            String modelPath;
+            if (options.loadModelsFromAssets) {
+                config.assetManager = appContext.getAssets();
+                modelPath = MODEL_DIR;
+            } else {
+                // 复制模型文件到私有目录
+                modelPath = copyModelsToCache();
+                if (modelPath == null) {
+                    Log.e(TAG, "Copy models failed");
+                    return false;
+                }
             }
 
             // 初始化原生预测器
-            OCRPredictorNative.Config config = new OCRPredictorNative.Config();
             config.useOpencl = 0;
             config.cpuThreadNum = cpuThreadNum;
             config.cpuPower = "LITE_POWER_HIGH";
+            config.recBatchNum = options.recBatchNum;
+            config.recWorkerNum = options.recWorkerNum;
+            config.recWidthStep = options.recWidthStep;
+            config.recMaxWidth = options.recMaxWidth;
+            config.recCacheBytes = options.recCacheBytes;
+            config.detWorkerNum = options.detWorkerNum;
+            config.detTileSize = options.detTileSize;
+            config.detTileOverlap = options.detTileOverlap;
+            config.detMinTextHeight = options.detMinTextHeight;
+            config.detAutoMaxSize = options.detAutoMaxSize;
+            config.det = options.det;
+            config.preloadStages = options.preloadStages;
             config.detModelFilename = modelPath + "/" + DET_MODEL;
             config.recModelFilename = modelPath + "/" + REC_MODEL;
             config.clsModelFilename = modelPath + "/" + CLS_MODEL;
+            config.labelFilename = modelPath + "/" + KEYS_FILE;
 
             Log.i(TAG, "Model paths: det=" + config.detModelFilename);
-            predictor = new OCRPredictorNative(config);
+            pool = new OcrPredictorPool(config, poolSize);
+            modelConfig = config;
+            executor = Executors.newFixedThreadPool(poolSize);
+            resultCache = options.resultCacheBytes > 0
+                    ? new OcrResultCache(options.resultCacheBytes, options.resultCacheDistance) : null;
             isInitialized = true;
             Log.i(TAG, "Init success");
             return true;
@@ -107,6 +162,50 @@ public class PaddleOcrEngine {
         }
     }
 
+    /**
+     * 在后台线程中初始化，不阻塞调用线程，并预加载全部模型（各模型同时加载）
+     * @param context Android Context
+     * @param callback 在初始化线程中回调，可为 null
+     */
+    public static void initAsync(Context context, OcrInitCallback callback) {
+        Options options = new Options();
+        options.preloadStages = OCRPredictorNative.STAGE_ALL;
+        initAsync(context, options, callback);
+    }
+
+    /**
+     * 在后台线程中初始化，不阻塞调用线程。
+     * Options.preloadStages 中的模型在初始化时同时加载，其余模型首次使用时加载；
+     * 预加载的模型加载失败时回调 onError
+     * @param context Android Context
+     * @param options 初始化参数
+     * @param callback 在初始化线程中回调，可为 null
+     */
+    public static void initAsync(Context context, final Options options, final OcrInitCallback callback) {
+        final Context applicationContext = context.getApplicationContext();
+        Thread thread = new Thread(() -> {
+            long start = System.nanoTime();
+            boolean success;
+            try {
+                success = init(applicationContext, options);
+            } catch (Exception e) {
+                Log.e(TAG, "Init failed: " + e.getMessage(), e);
+                success = false;
+            }
+            if (callback == null) {
+                return;
+            }
+            if (success) {
+                InitStats stats = new InitStats(System.nanoTime() - start, getNativeStats());
+                Log.i(TAG, "Init async finished: " + stats);
+                callback.onSuccess(stats);
+            } else {
+                callback.onError(-1, "Init failed");
+            }
+        }, "PaddleOcrInit");
+        thread.start();
+    }
+
     /**
      * 同步识别
      * @param bitmap 输入图片
@@ -125,9 +224,62 @@ public class PaddleOcrEngine {
      * @return 识别结果列表
      */
     public static List<OcrResult> recognize(Bitmap bitmap, boolean runDet, boolean runCls, boolean runRec) {
-        List<OcrResult> results = new ArrayList<>();
-        
-        if (!isInitialized || predictor == null) {
+        List<OcrResult> results = recognize(bitmap, null, runDet, runCls, runRec);
+        Log.i(TAG, "Recognized " + results.size() + " texts");
+        return results;
+    }
+
+    /**
+     * 同步识别，返回列式结果，OcrResult 仅在调用方需要时创建
+     * @param bitmap 输入图片
+     * @param runDet 是否运行检测
+     * @param runCls 是否运行方向分类
+     * @param runRec 是否运行识别
+     * @return 列式识别结果
+     */
+    public static OcrBatchResult recognizeBatch(Bitmap bitmap, boolean runDet, boolean runCls, boolean runRec) {
+        return recognizeBatch(bitmap, null, runDet, runCls, runRec);
+    }
+
+    /**
+     * 只识别图片中的指定区域，无需先裁剪 Bitmap，返回坐标为整图坐标。
+     * 启用结果缓存（Options.resultCacheBytes）时，相同或近似的图片直接返回缓存的结果
+     * @param bitmap 输入图片
+     * @param roi 识别区域，null 表示整图，空区域没有结果
+     * @param runDet 是否运行检测
+     * @param runCls 是否运行方向分类
+     * @param runRec 是否运行识别
+     * @return 识别结果列表
+     */
+    public static List<OcrResult> recognize(Bitmap bitmap, Rect roi, boolean runDet, boolean runCls, boolean runRec) {
+        OcrResultCache cache = resultCache;
+        if (cache == null || bitmap == null) {
+            return recognizeBatch(bitmap, roi, runDet, runCls, runRec).toList();
+        }
+        OcrResultCache.Key key = OcrResultCache.key(OCRPredictorNative.hash(bitmap, roi),
+                cacheParams(bitmap.getWidth(), bitmap.getHeight(), 0, roi, runDet, runCls, runRec));
+        List<OcrResult> cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return cache.put(key, recognizeBatch(bitmap, roi, runDet, runCls, runRec).toList());
+    }
+
+    /**
+     * 只识别图片中的指定区域，返回列式结果
+     * @param bitmap 输入图片
+     * @param roi 识别区域，null 表示整图，空区域没有结果
+     * @param runDet 是否运行检测
+     * @param runCls 是否运行方向分类
+     * @param runRec 是否运行识别
+     * @return 列式识别结果
+     */
+    public static OcrBatchResult recognizeBatch(Bitmap bitmap, Rect roi,
+                                                boolean runDet, boolean runCls, boolean runRec) {
+        OcrBatchResult results = new OcrBatchResult();
+
+        OcrPredictorPool currentPool = pool;
+        if (!isInitialized || currentPool == null) {
             Log.e(TAG, "Not initialized");
             return results;
         }
@@ -137,43 +289,230 @@ public class PaddleOcrEngine {
             return results;
         }
 
+        Bitmap inputBitmap = null;
+        OCRPredictorNative predictor = null;
         try {
-            Bitmap inputBitmap = bitmap.copy(Bitmap.Config.ARGB_8888, true);
-            ArrayList<OcrResultModel> rawResults = predictor.runImage(
-                inputBitmap, 
-                detLongSize, 
+            inputBitmap = toNativeBitmap(bitmap);
+            predictor = currentPool.acquire();
+            predictor.runImage(
+                inputBitmap,
+                roi,
+                detLongSize,
                 runDet ? 1 : 0,
-                runCls ? 1 : 0,
-                runRec ? 1 : 0
+                runCls ? clsPolicy : OCRPredictorNative.CLS_OFF,
+                runRec ? 1 : 0,
+                results
             );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.w(TAG, "Recognize interrupted");
+        } catch (Exception e) {
+            Log.e(TAG, "Recognize failed: " + e.getMessage(), e);
+        } finally {
+            currentPool.release(predictor);
+            if (inputBitmap != null && inputBitmap != bitmap) {
+                inputBitmap.recycle();
+            }
+        }
 
-            // 转换结果
-            for (OcrResultModel raw : rawResults) {
-                // 解析文字
-                StringBuilder word = new StringBuilder();
-                for (int index : raw.getWordIndex()) {
-                    if (index >= 0 && index < wordLabels.size()) {
-                        word.append(wordLabels.get(index));
-                    }
-                }
-                raw.setLabel(word.toString());
-                raw.setClsLabel(raw.getClsIdx() == 1 ? "180" : "0");
-
-                // 转换坐标
-                float[] box = new float[8];
-                List<android.graphics.Point> points = raw.getPoints();
-                for (int i = 0; i < Math.min(4, points.size()); i++) {
-                    box[i * 2] = points.get(i).x;
-                    box[i * 2 + 1] = points.get(i).y;
-                }
+        return results;
+    }
 
-                results.add(new OcrResult(raw.getLabel(), raw.getConfidence(), box));
-            }
+    /**
+     * native 可直接读取 ARGB_8888、RGB_565、ALPHA_8，其余格式（HARDWARE、RGBA_F16 等）才复制一份
+     */
+    private static Bitmap toNativeBitmap(Bitmap bitmap) {
+        Bitmap.Config config = bitmap.getConfig();
+        if (config == Bitmap.Config.ARGB_8888
+                || config == Bitmap.Config.RGB_565
+                || config == Bitmap.Config.ALPHA_8) {
+            return bitmap;
+        }
+        Log.d(TAG, "Copying bitmap with config " + config + " to ARGB_8888");
+        return bitmap.copy(Bitmap.Config.ARGB_8888, false);
+    }
+
+    /**
+     * 识别相机帧（YUV_420_888），native 直接从 YUV 平面转换，无需先转成 Bitmap
+     * @param image ImageReader 获取的相机帧
+     * @param rotationDegrees 顺时针旋转角度 0/90/180/270
+     * @return 识别结果列表
+     */
+    public static List<OcrResult> recognize(Image image, int rotationDegrees) {
+        OcrResultCache cache = resultCache;
+        if (cache == null || image == null || image.getFormat() != ImageFormat.YUV_420_888) {
+            return recognizeBatch(image, rotationDegrees, true, true, true).toList();
+        }
+        Image.Plane y = image.getPlanes()[0];
+        OcrResultCache.Key key = OcrResultCache.key(
+                OCRPredictorNative.hash(y.getBuffer(), y.getRowStride(),
+                        image.getWidth(), image.getHeight(), rotationDegrees, null),
+                cacheParams(image.getWidth(), image.getHeight(), rotationDegrees, null, true, true, true));
+        List<OcrResult> cached = cache.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        return cache.put(key, recognizeBatch(image, rotationDegrees, true, true, true).toList());
+    }
+
+    /**
+     * 结果缓存键中除哈希外影响识别结果的参数
+     */
+    private static int[] cacheParams(int width, int height, int rotation, Rect roi,
+                                     boolean runDet, boolean runCls, boolean runRec) {
+        return new int[] {
+                width, height, rotation,
+                roi == null ? 0 : roi.left, roi == null ? 0 : roi.top,
+                roi == null ? 0 : roi.right, roi == null ? 0 : roi.bottom,
+                (runDet ? 1 : 0) | (runCls ? 2 : 0) | (runRec ? 4 : 0),
+                detLongSize, clsPolicy
+        };
+    }
+
+    /**
+     * 识别相机帧（YUV_420_888），返回列式结果
+     * @param image ImageReader 获取的相机帧
+     * @param rotationDegrees 顺时针旋转角度 0/90/180/270
+     * @param runDet 是否运行检测
+     * @param runCls 是否运行方向分类
+     * @param runRec 是否运行识别
+     * @return 列式识别结果
+     */
+    public static OcrBatchResult recognizeBatch(Image image, int rotationDegrees,
+                                                boolean runDet, boolean runCls, boolean runRec) {
+        return recognizeBatch(image, rotationDegrees, null, runDet, runCls, runRec);
+    }
+
+    /**
+     * 只识别相机帧中的指定区域（如取景框），只转换该区域的像素
+     * @param image ImageReader 获取的相机帧
+     * @param rotationDegrees 顺时针旋转角度 0/90/180/270
+     * @param roi 识别区域（旋转后坐标），null 表示整帧
+     * @param runDet 是否运行检测
+     * @param runCls 是否运行方向分类
+     * @param runRec 是否运行识别
+     * @return 列式识别结果
+     */
+    public static OcrBatchResult recognizeBatch(Image image, int rotationDegrees, Rect roi,
+                                                boolean runDet, boolean runCls, boolean runRec) {
+        OcrBatchResult results = new OcrBatchResult();
+
+        OcrPredictorPool currentPool = pool;
+        if (!isInitialized || currentPool == null) {
+            Log.e(TAG, "Not initialized");
+            return results;
+        }
+
+        if (image == null || image.getFormat() != ImageFormat.YUV_420_888) {
+            Log.e(TAG, "Image must be YUV_420_888");
+            return results;
+        }
+
+        OCRPredictorNative predictor = null;
+        try {
+            Image.Plane[] planes = image.getPlanes();
+            predictor = currentPool.acquire();
+            predictor.runYuv(
+                planes[0].getBuffer(),
+                planes[1].getBuffer(),
+                planes[2].getBuffer(),
+                planes[0].getRowStride(),
+                planes[1].getRowStride(),
+                planes[1].getPixelStride(),
+                image.getWidth(),
+                image.getHeight(),
+                rotationDegrees,
+                roi,
+                detLongSize,
+                runDet ? 1 : 0,
+                runCls ? clsPolicy : OCRPredictorNative.CLS_OFF,
+                runRec ? 1 : 0,
+                results
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.w(TAG, "Recognize interrupted");
+        } catch (Exception e) {
+            Log.e(TAG, "Recognize failed: " + e.getMessage(), e);
+        } finally {
+            currentPool.release(predictor);
+        }
+
+        return results;
+    }
+
+    /**
+     * 识别 direct ByteBuffer 中的像素数据，返回列式结果
+     * @param data 像素数据
+     * @param format OCRPredictorNative.FORMAT_*
+     * @param width 宽度
+     * @param height 高度
+     * @param rowStride 行字节数，0 表示紧密排列
+     * @param rotationDegrees 顺时针旋转角度 0/90/180/270
+     * @param runDet 是否运行检测
+     * @param runCls 是否运行方向分类
+     * @param runRec 是否运行识别
+     * @return 列式识别结果
+     */
+    public static OcrBatchResult recognizeBatch(ByteBuffer data, int format, int width, int height, int rowStride,
+                                                int rotationDegrees, boolean runDet, boolean runCls, boolean runRec) {
+        return recognizeBatch(data, format, width, height, rowStride, rotationDegrees, null, runDet, runCls, runRec);
+    }
+
+    /**
+     * 只识别 direct ByteBuffer 中的指定区域，返回列式结果
+     * @param data 像素数据
+     * @param format OCRPredictorNative.FORMAT_*
+     * @param width 宽度
+     * @param height 高度
+     * @param rowStride 行字节数，0 表示紧密排列
+     * @param rotationDegrees 顺时针旋转角度 0/90/180/270
+     * @param roi 识别区域（旋转后坐标），null 表示整图，空区域没有结果
+     * @param runDet 是否运行检测
+     * @param runCls 是否运行方向分类
+     * @param runRec 是否运行识别
+     * @return 列式识别结果
+     */
+    public static OcrBatchResult recognizeBatch(ByteBuffer data, int format, int width, int height, int rowStride,
+                                                int rotationDegrees, Rect roi,
+                                                boolean runDet, boolean runCls, boolean runRec) {
+        OcrBatchResult results = new OcrBatchResult();
 
-            Log.i(TAG, "Recognized " + results.size() + " texts");
+        OcrPredictorPool currentPool = pool;
+        if (!isInitialized || currentPool == null) {
+            Log.e(TAG, "Not initialized");
+            return results;
+        }
+
+        if (data == null || !data.isDirect()) {
+            Log.e(TAG, "Data must be a direct ByteBuffer");
+            return results;
+        }
 
+        OCRPredictorNative predictor = null;
+        try {
+            predictor = currentPool.acquire();
+            predictor.runBuffer(
+                data,
+                format,
+                width,
+                height,
+                rowStride,
+                rotationDegrees,
+                roi,
+                detLongSize,
+                runDet ? 1 : 0,
+                runCls ? clsPolicy : OCRPredictorNative.CLS_OFF,
+                runRec ? 1 : 0,
+                results
+            );
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            Log.w(TAG, "Recognize interrupted");
         } catch (Exception e) {
             Log.e(TAG, "Recognize failed: " + e.getMessage(), e);
+        } finally {
+            currentPool.release(predictor);
         }
 
         return results;
@@ -185,7 +524,14 @@ public class PaddleOcrEngine {
      * @param callback 回调
      */
     public static void recognizeAsync(final Bitmap bitmap, final OcrCallback callback) {
-        executor.execute(() -> {
+        ExecutorService currentExecutor = executor;
+        if (!isInitialized || currentExecutor == null) {
+            if (callback != null) {
+                callback.onError(-1, "Not initialized");
+            }
+            return;
+        }
+        currentExecutor.execute(() -> {
             try {
                 List<OcrResult> results = recognize(bitmap);
                 if (callback != null) {
@@ -200,15 +546,96 @@ public class PaddleOcrEngine {
     }
 
     /**
-     * 释放资源
+     * 打开流水线识别：det、cls、rec 分别在独立线程中执行，适合连续的相机帧或多页批量识别。
+     * 流水线使用独立的预测器（按 threadBudget 为各阶段分配线程），不占用预测器池，
+     * 需在使用完毕后调用 OcrPipeline.close
+     * @param options 流水线参数
+     * @param callback 结果回调，在 rec 线程中按提交顺序调用
+     * @return 流水线，未初始化时返回 null
      */
-    public static synchronized void release() {
-        if (predictor != null) {
-            predictor.destroy();
-            predictor = null;
+    public static synchronized OcrPipeline openStream(StreamOptions options, OcrStreamCallback callback) {
+        if (!isInitialized || modelConfig == null) {
+            Log.e(TAG, "Not initialized");
+            return null;
+        }
+        // cls 模型很小，固定 1 个线程，其余线程 det 与 rec 平分，det 多分一个
+        int budget = Math.max(3, options.threadBudget);
+        int detThreads = budget / 2;
+        int recThreads = budget - 1 - detThreads;
+
+        OCRPredictorNative.Config config = copyModelConfig();
+        config.detThreadNum = detThreads;
+        config.recThreadNum = recThreads;
+        config.clsThreadNum = 1;
+        Log.i(TAG, "Open stream, threads det/cls/rec: " + detThreads + "/1/" + recThreads);
+
+        return new OcrPipeline(new OCRPredictorNative(config), options.depth, detLongSize,
+                options.runDet, options.runCls ? clsPolicy : OCRPredictorNative.CLS_OFF, options.runRec,
+                options.blockWhenFull, callback);
+    }
+
+    /**
+     * 打开跟踪识别会话：适合连续的相机帧，用光流跟踪已识别的文本行，
+     * 只在间隔帧或跟踪丢失时重新检测，只对新出现或内容变化的文本行重新识别。
+     * 会话使用独立的预测器（与初始化时的线程数相同），不占用预测器池，需在使用完毕后 close
+     * @param options 跟踪参数
+     * @return 会话，未初始化时返回 null
+     */
+    public static synchronized OcrTrackingSession openTracking(TrackingOptions options) {
+        if (!isInitialized || modelConfig == null) {
+            Log.e(TAG, "Not initialized");
+            return null;
         }
-        wordLabels.clear();
+        return new OcrTrackingSession(new OCRPredictorNative(copyModelConfig()), detLongSize,
+                options.runCls ? clsPolicy : OCRPredictorNative.CLS_OFF,
+                options.detInterval, options.minTrackRatio, options.contentDiff);
+    }
+
+    /**
+     * 以初始化时的模型与参数创建新的预测器配置
+     */
+    private static OCRPredictorNative.Config copyModelConfig() {
+        OCRPredictorNative.Config config = new OCRPredictorNative.Config();
+        config.useOpencl = modelConfig.useOpencl;
+        config.cpuThreadNum = modelConfig.cpuThreadNum;
+        config.cpuPower = modelConfig.cpuPower;
+        config.recBatchNum = modelConfig.recBatchNum;
+        config.recWorkerNum = modelConfig.recWorkerNum;
+        config.recWidthStep = modelConfig.recWidthStep;
+        config.recMaxWidth = modelConfig.recMaxWidth;
+        config.recCacheBytes = modelConfig.recCacheBytes;
+        config.detWorkerNum = modelConfig.detWorkerNum;
+        config.detTileSize = modelConfig.detTileSize;
+        config.detTileOverlap = modelConfig.detTileOverlap;
+        config.detProbeSize = modelConfig.detProbeSize;
+        config.detMinTextHeight = modelConfig.detMinTextHeight;
+        config.detAutoMaxSize = modelConfig.detAutoMaxSize;
+        config.det = modelConfig.det;
+        config.assetManager = modelConfig.assetManager;
+        config.preloadStages = modelConfig.preloadStages;
+        config.detModelFilename = modelConfig.detModelFilename;
+        config.recModelFilename = modelConfig.recModelFilename;
+        config.clsModelFilename = modelConfig.clsModelFilename;
+        config.labelFilename = modelConfig.labelFilename;
+        return config;
+    }
+
+    /**
+     * 释放资源（已打开的流水线与跟踪会话需各自 close）
+     */
+    public static synchronized void release() {
         isInitialized = false;
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+        if (pool != null) {
+            // 正在使用的预测器在归还时释放
+            pool.close();
+            pool = null;
+        }
+        resultCache = null;
+        modelConfig = null;
         Log.i(TAG, "Released");
     }
 
@@ -220,82 +647,288 @@ public class PaddleOcrEngine {
     }
 
     /**
-     * 设置检测长边尺寸
+     * 获取 native 运行时统计（临时缓冲区大小、扩容次数等）
+     */
+    public static OcrNativeStats getNativeStats() {
+        OcrPredictorPool currentPool = pool;
+        if (currentPool == null) {
+            return new OcrNativeStats(null);
+        }
+        return currentPool.getNativeStats();
+    }
+
+    /**
+     * 获取预测器池统计（池大小、空闲数、等待时间）
+     * @return 未初始化时返回 null
+     */
+    public static OcrPredictorPool.Metrics getPoolMetrics() {
+        OcrPredictorPool currentPool = pool;
+        return currentPool == null ? null : currentPool.getMetrics();
+    }
+
+    /**
+     * 获取结果缓存统计（条目数、大小、命中次数）
+     * @return 未启用缓存时返回 null
+     */
+    public static OcrResultCache.Stats getCacheStats() {
+        OcrResultCache cache = resultCache;
+        return cache == null ? null : cache.getStats();
+    }
+
+    /**
+     * 清空结果缓存，例如切换模型参数或画面内容已知变化时
+     */
+    public static void clearResultCache() {
+        OcrResultCache cache = resultCache;
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
+    /**
+     * 设置检测长边尺寸，OCRPredictorNative.DET_SIZE_AUTO 表示按每张图片的文本高度自动选择
      */
     public static void setDetLongSize(int size) {
         detLongSize = size;
     }
 
     /**
-     * 复制模型文件到缓存目录
+     * 初始化参数
+     */
+    public static class Options {
+        /** 每个预测器的 CPU 线程数 */
+        public int cpuThreadNum = 4;
+        /** 检测长边尺寸，OCRPredictorNative.DET_SIZE_AUTO 表示自动选择 */
+        public int detLongSize = 960;
+        /**
+         * 预测器数量，可并发识别多张图片。每个预测器各自加载一份模型，不共享权重，
+         * 内存随数量增长。建议 poolSize * cpuThreadNum 不超过 CPU 核数
+         */
+        public int poolSize = 1;
+        /** 识别阶段每批的最大文本行数，1 表示逐行识别 */
+        public int recBatchNum = 8;
+        /**
+         * 识别阶段并行路数，各路各自加载一份识别模型并平分 cpuThreadNum 个线程。
+         * 小尺寸的识别输入多线程加速有限，拆成多路通常更快；
+         * 可根据 getNativeStats 中的 recSpeedup 选择合适的值
+         */
+        public int recWorkerNum = 1;
+        /** 识别输入宽度的取整步长，见 OCRPredictorNative.Config.recWidthStep */
+        public int recWidthStep = 32;
+        /** 识别输入的最大宽度，0 表示不限制 */
+        public int recMaxWidth = 0;
+        /**
+         * 文本行识别缓存大小上限（字节，估算），0 表示不缓存，池中的预测器共用。
+         * 画面整体变化但多数文本行不变时（表头、标签）可减少识别次数，见 getNativeStats 中的 recCacheHits
+         */
+        public long recCacheBytes = 0;
+        /**
+         * 方向分类方式：OCRPredictorNative.CLS_PER_LINE 或 CLS_PAGE_VOTE。
+         * 扫描件、证件等整页方向一致时用 CLS_PAGE_VOTE，只对少数文本行分类
+         */
+        public int clsPolicy = OCRPredictorNative.CLS_PER_LINE;
+        /** 检测阶段并行路数，各路各自加载一份检测模型并平分 cpuThreadNum 个线程，分块检测时按分块并行 */
+        public int detWorkerNum = 1;
+        /** 分块检测的分块边长，0 表示不分块，见 OCRPredictorNative.Config.detTileSize */
+        public int detTileSize = 0;
+        /** 相邻分块的重叠像素数 */
+        public int detTileOverlap = 128;
+        /** 自动检测尺寸时文本框短边在检测输入中的最小像素数，见 OCRPredictorNative.Config.detMinTextHeight */
+        public int detMinTextHeight = 16;
+        /** 自动检测尺寸的上限 */
+        public int detAutoMaxSize = 1920;
+        /** 检测后处理参数，见 OCRPredictorNative.DetConfig */
+        public OCRPredictorNative.DetConfig det = new OCRPredictorNative.DetConfig();
+        /**
+         * 结果缓存大小上限（字节，估算），0 表示不缓存。
+         * 启用后返回 List 的 recognize 方法对相同或近似的画面直接返回上次的结果
+         */
+        public long resultCacheBytes = 0;
+        /** 结果缓存命中允许的 dHash 汉明距离（0~64），越大越容易把不同画面视为相同 */
+        public int resultCacheDistance = 3;
+        /**
+         * 初始化时即加载的模型 OCRPredictorNative.STAGE_*（多个模型同时加载），默认都在首次使用时加载。
+         * 只检测（runCls、runRec 为 false）时不会加载识别与方向分类模型；
+         * 需要首次识别也无加载延迟时设为 STAGE_ALL，冷启动耗时见 getNativeStats 中的 firstDetMs
+         */
+        public int preloadStages = 0;
+        /**
+         * 是否直接从 assets 读取模型（默认）。为 false 时先复制到缓存目录再按文件加载，
+         * 应用更新后按内容校验，只重新复制有变化的文件
+         */
+        public boolean loadModelsFromAssets = true;
+    }
+
+    /**
+     * 异步初始化的耗时（毫秒）。模型加载耗时为预测器池中各预测器创建该模型实例的耗时之和，
+     * 未预加载的模型为 0
+     */
+    public static class InitStats {
+
+        /** 初始化总耗时 */
+        public final double totalMs;
+
+        /** 检测模型加载耗时 */
+        public final double detLoadMs;
+
+        /** 识别模型加载耗时 */
+        public final double recLoadMs;
+
+        /** 方向分类模型加载耗时 */
+        public final double clsLoadMs;
+
+        InitStats(long totalNanos, OcrNativeStats nativeStats) {
+            this.totalMs = totalNanos / 1e6;
+            this.detLoadMs = nativeStats.detLoadMs;
+            this.recLoadMs = nativeStats.recLoadMs;
+            this.clsLoadMs = nativeStats.clsLoadMs;
+        }
+
+        @Override
+        public String toString() {
+            return "InitStats{" +
+                    "totalMs=" + totalMs +
+                    ", detLoadMs=" + detLoadMs +
+                    ", recLoadMs=" + recLoadMs +
+                    ", clsLoadMs=" + clsLoadMs +
+                    '}';
+        }
+    }
+
+    /**
+     * 流水线识别参数
+     */
+    public static class StreamOptions {
+        /** det、cls、rec 三个阶段共用的线程预算，至少为 3 */
+        public int threadBudget = Math.max(3, Math.min(8, Runtime.getRuntime().availableProcessors()));
+        /** 同时在流水线中的最大帧数 */
+        public int depth = 3;
+        /** 流水线已满时 submit 是否阻塞；为 false 时直接丢弃该帧，适合相机预览 */
+        public boolean blockWhenFull = true;
+        public boolean runDet = true;
+        public boolean runCls = true;
+        public boolean runRec = true;
+    }
+
+    /**
+     * 跟踪识别参数
+     */
+    public static class TrackingOptions {
+        /** 每隔多少帧重新检测一次，1 表示每帧检测（仍只识别变化的文本行） */
+        public int detInterval = 10;
+        /** 成功跟踪的文本行比例低于该值时立即重新检测 */
+        public float minTrackRatio = 0.7f;
+        /** 文本行灰度缩略图与上次识别时的平均差值（0~255）超过该值时重新识别 */
+        public float contentDiff = 12f;
+        public boolean runCls = true;
+    }
+
+    /**
+     * 复制模型文件到缓存目录。
+     * 应用未更新且文件长度与校验文件一致时直接使用；更新后重新计算 assets 的 CRC32，
+     * 只复制内容有变化的文件，避免更新后仍使用旧模型
      */
     private static String copyModelsToCache() {
         try {
-            String cachePath = appContext.getCacheDir() + File.separator + MODEL_DIR;
-            File cacheDir = new File(cachePath);
-            if (!cacheDir.exists()) {
-                cacheDir.mkdirs();
+            File cacheDir = new File(appContext.getCacheDir(), MODEL_DIR);
+            if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+                Log.e(TAG, "Create " + cacheDir + " failed");
+                return null;
             }
-
-            String[] files = {DET_MODEL, REC_MODEL, CLS_MODEL, KEYS_FILE};
-            for (String fileName : files) {
-                File destFile = new File(cachePath, fileName);
-                if (!destFile.exists() || destFile.length() == 0) {
-                    // Android assets 路径分隔符必须是 /
-                    Log.d(TAG, "Copying " + fileName + " to " + destFile.getAbsolutePath());
-                    copyAssetFile(MODEL_DIR + "/" + fileName, destFile);
-                    Log.d(TAG, "Copied " + fileName + ", size: " + destFile.length());
+            String installTime = String.valueOf(appContext.getPackageManager()
+                    .getPackageInfo(appContext.getPackageName(), 0).lastUpdateTime);
+            File stampFile = new File(cacheDir, STAMP_FILE);
+            Properties stamp = readStamp(stampFile);
+            boolean updated = !installTime.equals(stamp.getProperty(STAMP_INSTALL_TIME));
+
+            Properties newStamp = new Properties();
+            newStamp.setProperty(STAMP_INSTALL_TIME, installTime);
+            for (String fileName : MODEL_FILES) {
+                // Android assets 路径分隔符必须是 /
+                String assetPath = MODEL_DIR + "/" + fileName;
+                File destFile = new File(cacheDir, fileName);
+                String stamped = stamp.getProperty(fileName);
+                boolean copied = stamped != null && destFile.exists()
+                        && stamped.endsWith("/" + destFile.length());
+                String current = stamped;
+                if (copied && updated) {
+                    current = assetStamp(assetPath);
+                }
+                if (copied && current.equals(stamped)) {
+                    Log.d(TAG, "Skipped " + fileName + ", unchanged, size: " + destFile.length());
                 } else {
-                    Log.d(TAG, "Skipped " + fileName + ", exists, size: " + destFile.length());
+                    Log.d(TAG, "Copying " + fileName + " to " + destFile.getAbsolutePath());
+                    current = copyAssetFile(assetPath, destFile);
                 }
+                newStamp.setProperty(fileName, current);
             }
-
-            return cachePath;
+            writeStamp(newStamp, stampFile);
+            return cacheDir.getAbsolutePath();
         } catch (Exception e) {
             Log.e(TAG, "Copy models failed: " + e.getMessage());
             return null;
         }
     }
 
-    private static void copyAssetFile(String assetPath, File destFile) throws Exception {
-        InputStream in = appContext.getAssets().open(assetPath);
-        FileOutputStream out = new FileOutputStream(destFile);
-        byte[] buffer = new byte[4096];
-        int read;
-        while ((read = in.read(buffer)) != -1) {
-            out.write(buffer, 0, read);
+    /**
+     * 复制 asset 到 destFile（先写临时文件再重命名），同时计算校验值
+     * @return CRC32/长度
+     */
+    private static String copyAssetFile(String assetPath, File destFile) throws IOException {
+        File tmpFile = new File(destFile.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        long length = 0;
+        try (InputStream in = appContext.getAssets().open(assetPath);
+             OutputStream out = new FileOutputStream(tmpFile)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+                crc.update(buffer, 0, read);
+                length += read;
+            }
+        }
+        if (!tmpFile.renameTo(destFile)) {
+            tmpFile.delete();
+            throw new IOException("Rename " + tmpFile + " failed");
         }
-        out.flush();
-        out.close();
-        in.close();
-        Log.d(TAG, "Copied: " + assetPath);
+        Log.d(TAG, "Copied: " + assetPath + ", size: " + length);
+        return Long.toHexString(crc.getValue()) + "/" + length;
     }
 
     /**
-     * 加载字典文件
+     * 计算 asset 的校验值
+     * @return CRC32/长度
      */
-    private static boolean loadLabels() {
-        wordLabels.clear();
-        wordLabels.add("black"); // 占位符
-        try {
-            InputStream in = appContext.getAssets().open(MODEL_DIR + "/" + KEYS_FILE);
-            int available = in.available();
-            byte[] bytes = new byte[available];
-            in.read(bytes);
-            in.close();
-            
-            String content = new String(bytes, "UTF-8");
-            String[] lines = content.split("\n");
-            for (String line : lines) {
-                wordLabels.add(line);
+    private static String assetStamp(String assetPath) throws IOException {
+        CRC32 crc = new CRC32();
+        long length = 0;
+        try (InputStream in = appContext.getAssets().open(assetPath)) {
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                crc.update(buffer, 0, read);
+                length += read;
             }
-            wordLabels.add(" "); // 空格
-            
-            Log.i(TAG, "Loaded " + wordLabels.size() + " labels");
-            return true;
-        } catch (Exception e) {
-            Log.e(TAG, "Load labels failed: " + e.getMessage());
-            return false;
+        }
+        return Long.toHexString(crc.getValue()) + "/" + length;
+    }
+
+    private static Properties readStamp(File stampFile) {
+        Properties stamp = new Properties();
+        if (stampFile.exists()) {
+            try (InputStream in = new FileInputStream(stampFile)) {
+                stamp.load(in);
+            } catch (IOException e) {
+                Log.w(TAG, "Read " + stampFile + " failed: " + e.getMessage());
+            }
+        }
+        return stamp;
+    }
+
+    private static void writeStamp(Properties stamp, File stampFile) throws IOException {
+        try (OutputStream out = new FileOutputStream(stampFile)) {
+            stamp.store(out, null);
         }
     }
 }
@@ -0,0 +1,532 @@
+//
+// DBPostProcess must produce the same boxes as the original post-processing
+//
+
+#include "ocr_clipper.hpp"
+#include "ocr_db_post_process.h"
+#include <chrono>
+#include <cstdio>
+#include <math.h>
+#include <string>
+#include <vector>
+
+/**
+ * 改写前的后处理（boxes_from_bitmap + filter_tag_det_res），仅作对照。
+ * 除参数改为取自 DetConfig、原图改为只传尺寸外与原实现逐行相同，
+ * 包括 Mat2Vec 分配后不释放的内存
+ */
+namespace legacy {
+
+static long leaked_arrays = 0;
+
+static void getcontourarea(float **box, float unclip_ratio, float &distance) {
+  int pts_num = 4;
+  float area = 0.0f;
+  float dist = 0.0f;
+  for (int i = 0; i < pts_num; i++) {
+    area += box[i][0] * box[(i + 1) % pts_num][1] -
+            box[i][1] * box[(i + 1) % pts_num][0];
+    dist += sqrtf((box[i][0] - box[(i + 1) % pts_num][0]) *
+                      (box[i][0] - box[(i + 1) % pts_num][0]) +
+                  (box[i][1] - box[(i + 1) % pts_num][1]) *
+                      (box[i][1] - box[(i + 1) % pts_num][1]));
+  }
+  area = fabs(float(area / 2.0));
+
+  distance = area * unclip_ratio / dist;
+}
+
+static cv::RotatedRect unclip(float **box, float unclip_ratio) {
+  float distance = 1.0;
+
+  getcontourarea(box, unclip_ratio, distance);
+
+  ClipperLib::ClipperOffset offset;
+  ClipperLib::Path p;
+  p << ClipperLib::IntPoint(int(box[0][0]), int(box[0][1]))
+    << ClipperLib::IntPoint(int(box[1][0]), int(box[1][1]))
+    << ClipperLib::IntPoint(int(box[2][0]), int(box[2][1]))
+    << ClipperLib::IntPoint(int(box[3][0]), int(box[3][1]));
+  offset.AddPath(p, ClipperLib::jtRound, ClipperLib::etClosedPolygon);
+
+  ClipperLib::Paths soln;
+  offset.Execute(soln, distance);
+  std::vector<cv::Point2f> points;
+
+  for (size_t j = 0; j < soln.size(); j++) {
+    for (size_t i = 0; i < soln[soln.size() - 1].size(); i++) {
+      points.emplace_back(soln[j][i].X, soln[j][i].Y);
+    }
+  }
+  cv::RotatedRect res = cv::minAreaRect(points);
+
+  return res;
+}
+
+static float **Mat2Vec(cv::Mat mat) {
+  auto **array = new float *[mat.rows];
+  for (int i = 0; i < mat.rows; ++i) {
+    array[i] = new float[mat.cols];
+  }
+  for (int i = 0; i < mat.rows; ++i) {
+    for (int j = 0; j < mat.cols; ++j) {
+      array[i][j] = mat.at<float>(i, j);
+    }
+  }
+  leaked_arrays += mat.rows + 1;
+  return array;
+}
+
+static void quickSort(float **s, int l, int r) {
+  if (l < r) {
+    int i = l, j = r;
+    float x = s[l][0];
+    float *xp = s[l];
+    while (i < j) {
+      while (i < j && s[j][0] >= x) {
+        j--;
+      }
+      if (i < j) {
+        std::swap(s[i++], s[j]);
+      }
+      while (i < j && s[i][0] < x) {
+        i++;
+      }
+      if (i < j) {
+        std::swap(s[j--], s[i]);
+      }
+    }
+    s[i] = xp;
+    quickSort(s, l, i - 1);
+    quickSort(s, i + 1, r);
+  }
+}
+
+static void quickSort_vector(std::vector<std::vector<int>> &box, int l, int r,
+                             int axis) {
+  if (l < r) {
+    int i = l, j = r;
+    int x = box[l][axis];
+    std::vector<int> xp(box[l]);
+    while (i < j) {
+      while (i < j && box[j][axis] >= x) {
+        j--;
+      }
+      if (i < j) {
+        std::swap(box[i++], box[j]);
+      }
+      while (i < j && box[i][axis] < x) {
+        i++;
+      }
+      if (i < j) {
+        std::swap(box[j--], box[i]);
+      }
+    }
+    box[i] = xp;
+    quickSort_vector(box, l, i - 1, axis);
+    quickSort_vector(box, i + 1, r, axis);
+  }
+}
+
+static std::vector<std::vector<int>>
+order_points_clockwise(std::vector<std::vector<int>> pts) {
+  std::vector<std::vector<int>> box = pts;
+  quickSort_vector(box, 0, int(box.size() - 1), 0);
+  std::vector<std::vector<int>> leftmost = {box[0], box[1]};
+  std::vector<std::vector<int>> rightmost = {box[2], box[3]};
+
+  if (leftmost[0][1] > leftmost[1][1]) {
+    std::swap(leftmost[0], leftmost[1]);
+  }
+
+  if (rightmost[0][1] > rightmost[1][1]) {
+    std::swap(rightmost[0], rightmost[1]);
+  }
+
+  std::vector<std::vector<int>> rect = {leftmost[0], rightmost[0], rightmost[1],
+                                        leftmost[1]};
+  return rect;
+}
+
+static float **get_mini_boxes(cv::RotatedRect box, float &ssid) {
+  ssid = box.size.width >= box.size.height ? box.size.height : box.size.width;
+
+  cv::Mat points;
+  cv::boxPoints(box, points);
+  // sorted box points
+  auto array = Mat2Vec(points);
+  quickSort(array, 0, 3);
+
+  float *idx1 = array[0], *idx2 = array[1], *idx3 = array[2], *idx4 = array[3];
+  if (array[3][1] <= array[2][1]) {
+    idx2 = array[3];
+    idx3 = array[2];
+  } else {
+    idx2 = array[2];
+    idx3 = array[3];
+  }
+  if (array[1][1] <= array[0][1]) {
+    idx1 = array[1];
+    idx4 = array[0];
+  } else {
+    idx1 = array[0];
+    idx4 = array[1];
+  }
+
+  array[0] = idx1;
+  array[1] = idx2;
+  array[2] = idx3;
+  array[3] = idx4;
+
+  return array;
+}
+
+template <class T> T clamp(T x, T min, T max) {
+  if (x > max) {
+    return max;
+  }
+  if (x < min) {
+    return min;
+  }
+  return x;
+}
+
+static float clampf(float x, float min, float max) {
+  if (x > max)
+    return max;
+  if (x < min)
+    return min;
+  return x;
+}
+
+static float box_score_fast(float **box_array, cv::Mat pred) {
+  auto array = box_array;
+  int width = pred.cols;
+  int height = pred.rows;
+
+  float box_x[4] = {array[0][0], array[1][0], array[2][0], array[3][0]};
+  float box_y[4] = {array[0][1], array[1][1], array[2][1], array[3][1]};
+
+  int xmin = clamp(int(floorf(*(std::min_element(box_x, box_x + 4)))), 0,
+                   width - 1);
+  int xmax = clamp(int(ceilf(*(std::max_element(box_x, box_x + 4)))), 0,
+                   width - 1);
+  int ymin = clamp(int(floorf(*(std::min_element(box_y, box_y + 4)))), 0,
+                   height - 1);
+  int ymax = clamp(int(ceilf(*(std::max_element(box_y, box_y + 4)))), 0,
+                   height - 1);
+
+  cv::Mat mask;
+  mask = cv::Mat::zeros(ymax - ymin + 1, xmax - xmin + 1, CV_8UC1);
+
+  cv::Point root_point[4];
+  root_point[0] = cv::Point(int(array[0][0]) - xmin, int(array[0][1]) - ymin);
+  root_point[1] = cv::Point(int(array[1][0]) - xmin, int(array[1][1]) - ymin);
+  root_point[2] = cv::Point(int(array[2][0]) - xmin, int(array[2][1]) - ymin);
+  root_point[3] = cv::Point(int(array[3][0]) - xmin, int(array[3][1]) - ymin);
+  const cv::Point *ppt[1] = {root_point};
+  int npt[] = {4};
+  cv::fillPoly(mask, ppt, npt, 1, cv::Scalar(1));
+
+  cv::Mat croppedImg;
+  pred(cv::Rect(xmin, ymin, xmax - xmin + 1, ymax - ymin + 1))
+      .copyTo(croppedImg);
+
+  auto score = cv::mean(croppedImg, mask)[0];
+  return score;
+}
+
+static std::vector<std::vector<std::vector<int>>>
+boxes_from_bitmap(const cv::Mat &pred, const cv::Mat &bitmap,
+                  const ppredictor::DetConfig &config) {
+  const int min_size = config.min_size;
+  const int max_candidates = config.max_candidates;
+  const float box_thresh = config.box_thresh;
+
+  int width = bitmap.cols;
+  int height = bitmap.rows;
+
+  std::vector<std::vector<cv::Point>> contours;
+  std::vector<cv::Vec4i> hierarchy;
+
+  cv::findContours(bitmap, contours, hierarchy, cv::RETR_LIST,
+                   cv::CHAIN_APPROX_SIMPLE);
+
+  int num_contours = contours.size() >= size_t(max_candidates)
+                         ? max_candidates
+                         : int(contours.size());
+
+  std::vector<std::vector<std::vector<int>>> boxes;
+
+  for (int _i = 0; _i < num_contours; _i++) {
+    float ssid;
+    cv::RotatedRect box = cv::minAreaRect(contours[_i]);
+    auto array = get_mini_boxes(box, ssid);
+
+    auto box_for_unclip = array;
+    // end get_mini_box
+
+    if (ssid < min_size) {
+      continue;
+    }
+
+    float score;
+    score = box_score_fast(array, pred);
+    // end box_score_fast
+    if (score < box_thresh) {
+      continue;
+    }
+
+    // start for unclip
+    cv::RotatedRect points = unclip(box_for_unclip, config.unclip_ratio);
+    // end for unclip
+
+    cv::RotatedRect clipbox = points;
+    auto cliparray = get_mini_boxes(clipbox, ssid);
+
+    if (ssid < min_size + 2)
+      continue;
+
+    int dest_width = pred.cols;
+    int dest_height = pred.rows;
+    std::vector<std::vector<int>> intcliparray;
+
+    for (int num_pt = 0; num_pt < 4; num_pt++) {
+      std::vector<int> a{int(clampf(roundf(cliparray[num_pt][0] / float(width) *
+                                           float(dest_width)),
+                                    0, float(dest_width))),
+                         int(clampf(roundf(cliparray[num_pt][1] /
+                                           float(height) * float(dest_height)),
+                                    0, float(dest_height)))};
+      intcliparray.emplace_back(std::move(a));
+    }
+    boxes.emplace_back(std::move(intcliparray));
+
+  } // end for
+  return boxes;
+}
+
+static int _max(int a, int b) { return a >= b ? a : b; }
+
+static int _min(int a, int b) { return a >= b ? b : a; }
+
+static std::vector<std::vector<std::vector<int>>>
+filter_tag_det_res(const std::vector<std::vector<std::vector<int>>> &o_boxes,
+                   float ratio_h, float ratio_w, cv::Size src_size) {
+  int oriimg_h = src_size.height;
+  int oriimg_w = src_size.width;
+  std::vector<std::vector<std::vector<int>>> boxes{o_boxes};
+  std::vector<std::vector<std::vector<int>>> root_points;
+  for (size_t n = 0; n < boxes.size(); n++) {
+    boxes[n] = order_points_clockwise(boxes[n]);
+    for (size_t m = 0; m < boxes[0].size(); m++) {
+      boxes[n][m][0] /= ratio_w;
+      boxes[n][m][1] /= ratio_h;
+
+      boxes[n][m][0] = int(_min(_max(boxes[n][m][0], 0), oriimg_w - 1));
+      boxes[n][m][1] = int(_min(_max(boxes[n][m][1], 0), oriimg_h - 1));
+    }
+  }
+
+  for (size_t n = 0; n < boxes.size(); n++) {
+    int rect_width, rect_height;
+    rect_width = int(sqrt(pow(boxes[n][0][0] - boxes[n][1][0], 2) +
+                          pow(boxes[n][0][1] - boxes[n][1][1], 2)));
+    rect_height = int(sqrt(pow(boxes[n][0][0] - boxes[n][3][0], 2) +
+                           pow(boxes[n][0][1] - boxes[n][3][1], 2)));
+    if (rect_width <= 10 || rect_height <= 10)
+      continue;
+    root_points.push_back(boxes[n]);
+  }
+  return root_points;
+}
+} // namespace legacy
+
+static int failures = 0;
+
+/**
+ * 模拟 det 输出：若干旋转的文本行，概率各不相同，边缘模糊并叠加噪声
+ */
+static cv::Mat synthetic_pred(cv::RNG &rng, int width, int height, int lines) {
+  cv::Mat pred(height, width, CV_32F, cv::Scalar(0));
+  for (int i = 0; i < lines; i++) {
+    cv::RotatedRect line(
+        cv::Point2f(rng.uniform(0.f, float(width)),
+                    rng.uniform(0.f, float(height))),
+        cv::Size2f(rng.uniform(4.f, width / 2.f), rng.uniform(3.f, 40.f)),
+        rng.uniform(-30.f, 30.f));
+    cv::Point2f corners[4];
+    line.points(corners);
+    cv::Point points[4];
+    for (int k = 0; k < 4; k++) {
+      points[k] = corners[k];
+    }
+    cv::fillConvexPoly(pred, points, 4, cv::Scalar(rng.uniform(0.2, 1.0)));
+  }
+  cv::GaussianBlur(pred, pred, cv::Size(5, 5), 0);
+  cv::Mat noise(height, width, CV_32F);
+  rng.fill(noise, cv::RNG::UNIFORM, -0.05, 0.05);
+  pred += noise;
+  return pred;
+}
+
+static bool same_boxes(
+    const std::vector<std::vector<std::vector<int>>> &expected,
+    const std::vector<ppredictor::TextQuad> &actual) {
+  if (expected.size() != actual.size()) {
+    fprintf(stderr, "FAIL box count: expected %zu actual %zu\n",
+            expected.size(), actual.size());
+    return false;
+  }
+  for (size_t n = 0; n < expected.size(); n++) {
+    for (int m = 0; m < 4; m++) {
+      const cv::Point &p = actual[n].points[m];
+      if (expected[n][m][0] != p.x || expected[n][m][1] != p.y) {
+        fprintf(stderr, "FAIL box %zu point %d: expected (%d, %d) "
+                        "actual (%d, %d)\n",
+                n, m, expected[n][m][0], expected[n][m][1], p.x, p.y);
+        return false;
+      }
+    }
+  }
+  return true;
+}
+
+struct Timing {
+  double legacy_ms = 0;
+  double current_ms = 0;
+  int boxes = 0;
+};
+
+/**
+ * 以同一张概率图分别运行原后处理与 DBPostProcess，比较结果并累计耗时
+ */
+static void compare(ppredictor::DBPostProcess &post_process,
+                    const ppredictor::DetConfig &config, const cv::Mat &pred,
+                    const cv::Size &src_size, const std::string &name,
+                    Timing &timing) {
+  std::vector<ppredictor::TextQuad> boxes;
+  cv::Mat bitmap;
+  cv::compare(pred, config.threshold, bitmap, cv::CMP_GT);
+  float ratio_h = pred.rows * 1.0f / src_size.height;
+  float ratio_w = pred.cols * 1.0f / src_size.width;
+
+  auto t0 = std::chrono::steady_clock::now();
+  std::vector<std::vector<std::vector<int>>> expected =
+      legacy::filter_tag_det_res(
+          legacy::boxes_from_bitmap(pred, bitmap, config), ratio_h, ratio_w,
+          src_size);
+  auto t1 = std::chrono::steady_clock::now();
+  post_process.run(config, pred, bitmap, ratio_h, ratio_w, src_size, boxes);
+  auto t2 = std::chrono::steady_clock::now();
+  timing.legacy_ms += std::chrono::duration<double, std::milli>(t1 - t0).count();
+  timing.current_ms +=
+      std::chrono::duration<double, std::milli>(t2 - t1).count();
+  timing.boxes += int(expected.size());
+
+  if (!same_boxes(expected, boxes)) {
+    fprintf(stderr, "  in %s\n", name.c_str());
+    failures++;
+  }
+  // 单线程时各轮廓串行处理，结果应相同
+  int threads = cv::getNumThreads();
+  cv::setNumThreads(1);
+  post_process.run(config, pred, bitmap, ratio_h, ratio_w, src_size, boxes);
+  cv::setNumThreads(threads);
+  if (!same_boxes(expected, boxes)) {
+    fprintf(stderr, "  in %s, single thread\n", name.c_str());
+    failures++;
+  }
+}
+
+static void print_timing(const char *label, const Timing &timing) {
+  printf("%s: %d boxes, legacy %.3f ms, DBPostProcess %.3f ms (%d threads)\n",
+         label, timing.boxes, timing.legacy_ms, timing.current_ms,
+         cv::getNumThreads());
+}
+
+/**
+ * 真实模型输出的概率图：以 -DOCR_DET_MAP_DUMP_DIR 编译 native 库后在设备上
+ * 运行得到的 det_map_*.yml.gz（pred 为概率图，src_width/src_height 为原图尺寸）
+ * @return 读取到的概率图数量
+ */
+static int compare_recorded(ppredictor::DBPostProcess &post_process,
+                            const std::string &dir, Timing &timing) {
+  std::vector<cv::String> files;
+  try {
+    cv::glob(dir + "/det_map_*.yml.gz", files, false);
+  } catch (const cv::Exception &) {
+    // 目录不存在
+    return 0;
+  }
+  const float box_threshes[] = {0.3f, 0.5f, 0.7f};
+  for (const cv::String &file : files) {
+    cv::FileStorage fs(file, cv::FileStorage::READ);
+    cv::Mat pred;
+    int src_width = 0;
+    int src_height = 0;
+    fs["pred"] >> pred;
+    fs["src_width"] >> src_width;
+    fs["src_height"] >> src_height;
+    if (pred.empty() || pred.type() != CV_32F || src_width <= 0 ||
+        src_height <= 0) {
+      fprintf(stderr, "FAIL invalid recorded map %s\n", file.c_str());
+      failures++;
+      continue;
+    }
+    for (float box_thresh : box_threshes) {
+      ppredictor::DetConfig config;
+      config.box_thresh = box_thresh;
+      compare(post_process, config, pred, cv::Size(src_width, src_height),
+              file, timing);
+    }
+  }
+  return int(files.size());
+}
+
+/**
+ * @param argv[1] 可选，存放真实概率图的目录
+ */
+int main(int argc, char **argv) {
+  cv::RNG rng(20201017);
+  ppredictor::DBPostProcess post_process;
+  Timing synthetic;
+
+  const int sizes[][2] = {{320, 320}, {640, 480}, {960, 736}, {1280, 1280}};
+  const float box_threshes[] = {0.3f, 0.5f, 0.7f};
+  const float unclip_ratios[] = {1.5f, 2.0f};
+  for (const int *size : sizes) {
+    for (int round = 0; round < 5; round++) {
+      cv::Mat pred = synthetic_pred(rng, size[0], size[1], 10 + round * 40);
+      ppredictor::DetConfig config;
+      config.box_thresh = box_threshes[round % 3];
+      config.unclip_ratio = unclip_ratios[round % 2];
+      // 原图为概率图的 1.5 倍
+      cv::Size src_size(size[0] * 3 / 2, size[1] * 3 / 2);
+      char name[64];
+      snprintf(name, sizeof(name), "synthetic %dx%d round %d", size[0],
+               size[1], round);
+      compare(post_process, config, pred, src_size, name, synthetic);
+    }
+  }
+  print_timing("synthetic", synthetic);
+
+  if (argc > 1) {
+    Timing recorded;
+    int count = compare_recorded(post_process, argv[1], recorded);
+    if (count > 0) {
+      printf("%d recorded maps from %s\n", count, argv[1]);
+      print_timing("recorded", recorded);
+    } else {
+      printf("no recorded maps in %s\n", argv[1]);
+    }
+  }
+
+  printf("legacy post-processing leaked %ld arrays\n", legacy::leaked_arrays);
+  if (failures > 0) {
+    fprintf(stderr, "%d cases failed\n", failures);
+    return 1;
+  }
+  printf("all cases passed\n");
+  return 0;
+}
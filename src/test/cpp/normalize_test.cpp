@@ -0,0 +1,120 @@
+//
+// normalize_to_chw must match convertTo + mean/scale bit for bit
+//
+
+#include "normalize.h"
+#include <chrono>
+#include <cstdint>
+#include <cstdio>
+#include <cstring>
+#include <vector>
+
+static const std::vector<float> DET_MEAN = {0.485f, 0.456f, 0.406f};
+static const std::vector<float> DET_SCALE = {1 / 0.229f, 1 / 0.224f,
+                                             1 / 0.225f};
+static const std::vector<float> REC_MEAN = {0.5f, 0.5f, 0.5f};
+static const std::vector<float> REC_SCALE = {1 / 0.5f, 1 / 0.5f, 1 / 0.5f};
+
+// 未写入位置的哨兵值
+static const uint32_t SENTINEL = 0x7fc0beef;
+
+static int failures = 0;
+
+// 没有 NEON 时的退出码，CMakeLists.txt 中作为 SKIP_RETURN_CODE
+static const int NEON_NOT_CHECKED = 77;
+
+static bool check(const cv::Mat &img, int dout_width, int dout_height,
+                  const std::vector<float> &mean,
+                  const std::vector<float> &scale) {
+  const size_t count = size_t(3) * dout_width * dout_height;
+  std::vector<uint32_t> expected(count, SENTINEL);
+  std::vector<uint32_t> actual(count, SENTINEL);
+  normalize_to_chw_ref(img, reinterpret_cast<float *>(expected.data()),
+                       dout_width, dout_height, mean, scale);
+  normalize_to_chw(img, reinterpret_cast<float *>(actual.data()), dout_width,
+                   dout_height, mean, scale);
+  for (size_t i = 0; i < count; i++) {
+    if (expected[i] != actual[i]) {
+      float e, a;
+      std::memcpy(&e, &expected[i], 4);
+      std::memcpy(&a, &actual[i], 4);
+      fprintf(stderr,
+              "FAIL %dx%d in %dx%d: index %zu expected %.9g (0x%08x) "
+              "actual %.9g (0x%08x)\n",
+              img.cols, img.rows, dout_width, dout_height, i, e, expected[i],
+              a, actual[i]);
+      failures++;
+      return false;
+    }
+  }
+  return true;
+}
+
+static cv::Mat random_image(cv::RNG &rng, int width, int height) {
+  cv::Mat img(height, width, CV_8UC3);
+  rng.fill(img, cv::RNG::UNIFORM, 0, 256);
+  return img;
+}
+
+int main() {
+  cv::RNG rng(20201017);
+
+  // 全部 256 个取值，每个通道都覆盖
+  cv::Mat ramp(1, 256, CV_8UC3);
+  for (int x = 0; x < 256; x++) {
+    ramp.at<cv::Vec3b>(0, x) = cv::Vec3b(x, 255 - x, (x * 7) & 255);
+  }
+  check(ramp, 256, 1, DET_MEAN, DET_SCALE);
+  check(ramp, 256, 1, REC_MEAN, REC_SCALE);
+
+  // 宽度 1~40 覆盖只有尾部、向量主体 + 各种长度的尾部；奇数高度
+  for (int width = 1; width <= 40; width++) {
+    for (int height : {1, 3, 7}) {
+      cv::Mat img = random_image(rng, width, height);
+      check(img, width, height, DET_MEAN, DET_SCALE);
+      check(img, width, height, REC_MEAN, REC_SCALE);
+      // 输出平面大于图片（rec 批量补齐、det 补齐到 32 的倍数），其余位置不写
+      check(img, width + 5, height + 2, DET_MEAN, DET_SCALE);
+    }
+  }
+
+  // 非连续的 roi 子图，起点为奇数列
+  cv::Mat big = random_image(rng, 333, 61);
+  check(big(cv::Rect(3, 5, 201, 33)), 201, 33, DET_MEAN, DET_SCALE);
+  check(big(cv::Rect(1, 0, 331, 61)), 336, 64, REC_MEAN, REC_SCALE);
+
+  // 典型 det 输入尺寸
+  cv::Mat det = random_image(rng, 957, 719);
+  check(det, 960, 736, DET_MEAN, DET_SCALE);
+
+  // 与原流程的耗时对比
+  std::vector<float> dout(size_t(3) * det.cols * det.rows);
+  const int rounds = 20;
+  auto t0 = std::chrono::steady_clock::now();
+  for (int i = 0; i < rounds; i++) {
+    normalize_to_chw_ref(det, dout.data(), det.cols, det.rows, DET_MEAN,
+                         DET_SCALE);
+  }
+  auto t1 = std::chrono::steady_clock::now();
+  for (int i = 0; i < rounds; i++) {
+    normalize_to_chw(det, dout.data(), DET_MEAN, DET_SCALE);
+  }
+  auto t2 = std::chrono::steady_clock::now();
+  printf("%dx%d reference %.3f ms, normalize_to_chw %.3f ms\n", det.cols,
+         det.rows,
+         std::chrono::duration<double, std::milli>(t1 - t0).count() / rounds,
+         std::chrono::duration<double, std::milli>(t2 - t1).count() / rounds);
+
+  if (failures > 0) {
+    fprintf(stderr, "%d cases failed\n", failures);
+    return 1;
+  }
+#if defined(__ARM_NEON) || defined(__ARM_NEON__)
+  printf("all cases passed, checked NEON path and scalar tail\n");
+  return 0;
+#else
+  // 生产代码走 NEON 路径，只验证了标量路径时不算通过，ctest 中显示为跳过
+  printf("scalar path passed, NEON path not checked (no NEON on this host)\n");
+  return NEON_NOT_CHECKED;
+#endif
+}